@@ -0,0 +1,178 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import com.chriswk.gradle.plugins.jetty9.internal.JettyPluginServerEclipse;
+import org.eclipse.jetty.server.Server;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Benchmarks the paths a developer waits on when starting jetty9Run and on every restart, against a synthetic webapp
+ * with a varying number of classpath entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({"10", "100", "1000"})
+    private int classpathEntries;
+
+    private File workDir;
+    private Jetty9Run task;
+
+    /**
+     * A second task whose server has the webapp started, for the restart benchmark.
+     */
+    private Jetty9Run runningTask;
+
+    @Setup(Level.Trial)
+    public void createWebApp() throws Exception {
+        workDir = File.createTempFile("jetty9-startup-benchmark", "");
+        workDir.delete();
+        File projectDir = new File(workDir, "project");
+        File webAppDir = new File(projectDir, "src/main/webapp");
+        new File(webAppDir, "WEB-INF").mkdirs();
+        write(new File(webAppDir, "WEB-INF/web.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<web-app xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"3.0\"/>\n");
+        write(new File(webAppDir, "index.html"), "<html><body>benchmark</body></html>\n");
+
+        // dependency jars live outside the project like those in the Gradle cache, the class directories inside it
+        List<File> classpath = new ArrayList<File>();
+        File libDir = new File(workDir, "lib");
+        libDir.mkdirs();
+        for (int i = 0; i < classpathEntries; i++) {
+            if (i % 10 == 0) {
+                File classesDir = new File(projectDir, "build/classes/module" + i);
+                write(new File(classesDir, "module" + i + "/resource.properties"), "index=" + i + "\n");
+                classpath.add(classesDir);
+            } else {
+                classpath.add(createJar(new File(libDir, "lib" + i + ".jar"), i));
+            }
+        }
+
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+        project.getPlugins().apply(Jetty9Plugin.class);
+        task = (Jetty9Run) project.getTasks().getByName(Jetty9Plugin.JETTY9_RUN);
+        task.setWebAppSourceDirectory(webAppDir);
+        task.setClasspath(project.files(classpath));
+
+        runningTask = project.getTasks().add("benchmarkRestart", Jetty9Run.class);
+        runningTask.setWebAppSourceDirectory(webAppDir);
+        runningTask.setClasspath(project.files(classpath));
+        // only the restart is measured, not writing its startup report
+        runningTask.setStartupReportDir(null);
+        startServer(runningTask);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws Exception {
+        ((Server) runningTask.getServer().getProxiedObject()).stop();
+        delete(workDir);
+    }
+
+    @Benchmark
+    public Object createServer() throws Exception {
+        return task.createServer();
+    }
+
+    @Benchmark
+    public Object configureHandlers() throws Exception {
+        JettyPluginServerEclipse server = task.createServer();
+        server.configureHandlers();
+        return server;
+    }
+
+    @Benchmark
+    public Object configureWebApplication() throws Exception {
+        task.validateConfiguration();
+        task.configureWebApplication();
+        return task.getWebAppConfig();
+    }
+
+    @Benchmark
+    public Object restartWebApp() throws Exception {
+        runningTask.restartWebApp(false);
+        return runningTask.getWebAppConfig();
+    }
+
+    /**
+     * Starts the server the way startJetty9Internal() does, without blocking and without the Gradle progress logging.
+     */
+    private static void startServer(Jetty9Run task) throws Exception {
+        task.validateConfiguration();
+        JettyPluginServerEclipse server = task.createServer();
+        task.setServer(server);
+        server.setConnectors(new Object[]{server.createDefaultConnector(0)});
+        server.configureHandlers();
+        task.configureWebApplication();
+        server.addWebApplication(task.getWebAppConfig());
+        task.finishConfigurationBeforeStart();
+        server.start();
+    }
+
+    private static File createJar(File jar, int index) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (int i = 0; i < 20; i++) {
+                out.putNextEntry(new JarEntry("lib" + index + "/Class" + i + ".class"));
+                out.write(new byte[512]);
+                out.closeEntry();
+            }
+            if (index % 25 == 1) {
+                out.putNextEntry(new JarEntry("META-INF/lib" + index + ".tld"));
+                out.write(("<taglib><tlib-version>1.0</tlib-version><short-name>lib" + index + "</short-name>"
+                        + "<uri>http://example.com/lib" + index + "</uri></taglib>").getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -1,15 +1,29 @@
 package com.chriswk.gradle.plugins.jetty9;
 
+import com.chriswk.gradle.plugins.jetty9.internal.AsyncRequestLog;
+import com.chriswk.gradle.plugins.jetty9.internal.ChangeBatcher;
+import com.chriswk.gradle.plugins.jetty9.internal.ClassLoaderLeakDetector;
+import com.chriswk.gradle.plugins.jetty9.internal.ClasspathSnapshot;
 import com.chriswk.gradle.plugins.jetty9.internal.ConsoleScanner;
+import com.chriswk.gradle.plugins.jetty9.internal.FileWatcher;
+import com.chriswk.gradle.plugins.jetty9.internal.ForkedServer;
+import com.chriswk.gradle.plugins.jetty9.internal.JarScanCache;
 import com.chriswk.gradle.plugins.jetty9.internal.Jetty9PluginWebAppContext;
 import com.chriswk.gradle.plugins.jetty9.internal.JettyPluginServerEclipse;
 import com.chriswk.gradle.plugins.jetty9.internal.Monitor;
+import com.chriswk.gradle.plugins.jetty9.internal.MonitorClient;
+import com.chriswk.gradle.plugins.jetty9.internal.StartupTimer;
+import com.chriswk.gradle.plugins.jetty9.internal.StopResult;
+import com.chriswk.gradle.plugins.jetty9.internal.ThreadPools;
+import groovy.lang.Closure;
 import org.eclipse.jetty.security.LoginService;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.RequestLog;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.util.Scanner;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.internal.ConventionTask;
 import org.gradle.api.plugins.jetty.AbstractJettyRunTask;
 import org.gradle.api.tasks.InputFile;
@@ -19,17 +33,29 @@ import org.gradle.api.tasks.TaskAction;
 import org.gradle.internal.classpath.DefaultClassPath;
 import org.gradle.logging.ProgressLogger;
 import org.gradle.logging.ProgressLoggerFactory;
+import org.gradle.util.ConfigureUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 /**
  * Base class for all tasks which deploy a web application to an embedded Jetty9 web container.
  */
-public abstract class AbstractJetty9RunTask extends ConventionTask {
+public abstract class AbstractJetty9RunTask extends ConventionTask implements Monitor.Target {
     private static Logger logger = LoggerFactory.getLogger(AbstractJetty9RunTask.class);
 
     private Iterable<File> additionalRuntimeJars = new ArrayList<File>();
@@ -64,6 +90,21 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
      */
     private int scanIntervalSeconds;
 
+    /**
+     * scanMode can be set to either 'poll' or 'watch' <p/> if 'poll' then the scan targets are polled every scanIntervalSeconds, if 'watch' then changes
+     * are picked up from file system events as they happen and scanIntervalSeconds is only used when falling back to polling.
+     */
+    private String scanMode;
+
+    /**
+     * The time in milliseconds without further changes after which a burst of changes restarts the webapp.
+     */
+    private int scanQuietPeriodMillis;
+
+    /**
+     * The maximum time in milliseconds a restart is delayed after the first change while changes keep arriving.
+     */
+    private int scanMaxWaitMillis;
 
     /**
      * reload can be set to either 'automatic' or 'manual' <p/> if 'manual' then the context can be reloaded by a linefeed in the console if 'automatic' then traditional reloading on changed files is
@@ -95,6 +136,51 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
 
     private Integer httpPort;
 
+    /**
+     * Collect request counts, bytes, status classes and latency percentiles per context and servlet. The statistics
+     * are logged when the server stops. Disabled by default.
+     */
+    private boolean requestStatistics;
+
+    /**
+     * How long a stop waits for the requests in flight to finish after the connectors have stopped accepting. 0 stops
+     * the server immediately.
+     */
+    private int gracefulStopTimeoutSeconds;
+
+    /**
+     * Whether the server is kept running after the build for later runs to reuse. A later run that finds a server on the
+     * stop port hands it the webapp's classpath and descriptors, and the server redeploys the webapp in place instead of
+     * a new server being started. Needs the Gradle daemon, a stopPort and a stopKey. Disabled by default.
+     */
+    private boolean warm;
+
+    /**
+     * Settings for running the server in a JVM of its own, with its own heap and garbage collector, instead of inside
+     * the Gradle daemon. The server runs in the build's JVM unless this is set.
+     */
+    private Jetty9Fork fork;
+
+    /**
+     * The forked JVM running the server, while this task waits for it.
+     */
+    private Process forkedProcess;
+
+    /**
+     * Settings for the server's thread pool. Jetty's default pool is used unless any are set.
+     */
+    private Jetty9ThreadPool threadPool;
+
+    /**
+     * Settings for the connector created at httpPort when neither connectors nor httpConnectors are configured.
+     */
+    private Jetty9Connector connector;
+
+    /**
+     * Named connectors to create instead of the default connector, for example separate admin and traffic ports.
+     */
+    private Collection<Jetty9Connector> httpConnectors;
+
     /**
      * List of connectors to use. If none are configured then we use a single SelectChannelConnector at port 8080
      */
@@ -110,16 +196,84 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
      */
     private RequestLog requestLog;
 
+    /**
+     * Settings for the bundled asynchronous request log, used when no requestLog is set. Optional.
+     */
+    private Jetty9AsyncRequestLog asyncRequestLog;
+
+    /**
+     * Settings for gzip compression of responses. Responses are not compressed unless this is set.
+     */
+    private Jetty9Compression compression;
+
     /**
      * A scanner to check for changes to the webapp.
      */
     private Scanner scanner = new Scanner();
 
+    /**
+     * A file system watcher used instead of the scanner in 'watch' scan mode.
+     */
+    private FileWatcher fileWatcher;
+
+    /**
+     * The batchers put in front of the scanner listeners, which run until change detection is stopped.
+     */
+    private final List<ChangeBatcher> changeBatchers = new ArrayList<ChangeBatcher>();
+
+    /**
+     * Content index of the scan targets, kept in the temporary dir across runs, used to ignore changes that leave the content as it was.
+     */
+    private ClasspathSnapshot classpathSnapshot;
+
+    /**
+     * Whether the results of scanning jars for web fragments, resources and TLDs are cached in the temporary dir.
+     */
+    private boolean cacheJarScans;
+
+    private JarScanCache jarScanCache;
+
+    /**
+     * Whether jars are scanned for web fragments, resources and TLDs on all available cores. Disabled by default.
+     */
+    private boolean parallelJarScanning;
+
+    /**
+     * Whether load-on-startup servlets sharing a load-on-startup value are initialized concurrently, on up to one thread
+     * per core. Servlets with different values are still initialized in order. Disabled by default.
+     */
+    private boolean parallelServletInit;
+
     /**
      * List of Listeners for the scanner.
      */
     protected List<Scanner.Listener> scannerListeners;
 
+    /**
+     * How many restarts a class loader discarded by a restart may stay reachable before it is reported as leaked, with
+     * the threads, thread locals, JDBC drivers, shutdown hooks or MBeans found to retain it. 0 disables the check; the
+     * metaspace and class counts are logged on every restart regardless.
+     */
+    private int classLoaderLeakRestarts;
+
+    /**
+     * Request a full garbage collection before reporting leaked class loaders, so loaders that are merely not collected
+     * yet are not reported. Pauses the server for the collection.
+     */
+    private boolean classLoaderLeakGc;
+
+    private ClassLoaderLeakDetector classLoaderLeakDetector;
+
+    /**
+     * Directory the timings of the last start or restart and the history of all of them are written to.
+     */
+    private File startupReportDir;
+
+    /**
+     * Times the start that is in progress.
+     */
+    private StartupTimer startupTimer;
+
     /**
      * A scanner to check ENTER hits on the console.
      */
@@ -127,12 +281,24 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
 
     public static final String PORT_SYSPROPERTY = "jetty.port";
 
+    private static final String VALIDATE_PHASE = "Validate configuration";
+    private static final String WARM_DEPLOYMENT_FILE = "warm-deployment.properties";
+    private static final int WARM_DEPLOY_TIMEOUT_MILLIS = 300000;
+    private static final String CONFIGURE_WEBAPP_PHASE = "Configure web application";
+    private static final String JETTY_LOG_CLASS = "org.eclipse.jetty.util.log.class";
+    private static final String FORKED_SERVER_FILE = "forked-server.properties";
+    private static final String FORKED_DEPLOYMENT_FILE = "forked-deployment.properties";
+
     public abstract void validateConfiguration();
 
     public abstract void configureScanner();
 
     public abstract void applyJettyXml() throws Exception;
 
+    /**
+     * Restarts the webapp. Called from the scanner, the console and the monitor, so implementations synchronize on the
+     * task to run one restart at a time, as do warm deployments and {@link #stopServer()}.
+     */
     public abstract void restartWebApp(boolean reconfigureScanner) throws Exception;
 
     /**
@@ -146,6 +312,13 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
 
     @TaskAction
     protected void start() {
+        if (isWarm() && redeployToWarmServer()) {
+            return;
+        }
+        if (getFork() != null) {
+            startForked();
+            return;
+        }
         ClassLoader originalClassLoader = Server.class.getClassLoader();
         List<File> additionalClasspath = new ArrayList<File>();
         for (File additionalRuntimeJar : getAdditionalRuntimeJars()) {
@@ -160,6 +333,302 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
         }
     }
 
+    /**
+     * Hands the webapp to a warm server already listening on the stop port. Returns false if there is none, so a server
+     * is started by this task and kept running for later runs.
+     */
+    private boolean redeployToWarmServer() {
+        if (getStopPort() == null || getStopPort() <= 0 || getStopKey() == null) {
+            throw new InvalidUserDataException("A warm server is reached through its stop port, please specify the stopPort and stopKey");
+        }
+        long start = System.nanoTime();
+        try {
+            Properties deployment = getWarmDeployment();
+            if (deployment == null) {
+                logger.warn(getName() + " cannot hand its webapp to a warm server, starting a new server");
+                return false;
+            }
+            File file = new File(getTemporaryDir(), WARM_DEPLOYMENT_FILE);
+            store(deployment, file, "Webapp for the warm server");
+            String reply = new MonitorClient(getStopPort(), getStopKey(), WARM_DEPLOY_TIMEOUT_MILLIS)
+                    .send(Monitor.DEPLOY_COMMAND + " " + file.getCanonicalPath());
+            if (!MonitorClient.isOk(reply)) {
+                throw new GradleException("The warm server on port " + getStopPort() + " could not redeploy the webapp: " + reply);
+            }
+        } catch (ConnectException e) {
+            logger.info("No warm server listening on port " + getStopPort() + ", starting one");
+            return false;
+        } catch (IOException e) {
+            throw new GradleException("Could not redeploy the webapp into the warm server on port " + getStopPort(), e);
+        }
+        getLogger().lifecycle("Redeployed " + getContextPath() + " into the warm server on port " + getStopPort() + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return true;
+    }
+
+    /**
+     * Runs the server in a JVM of its own, with the classpath of the plugin and Jetty plus the additionalRuntimeJars.
+     * The output of the server is copied to the build's output. Unless the server is a daemon, this task waits until it
+     * stops and forwards restarts of the webapp to it.
+     */
+    private void startForked() {
+        validateConfiguration();
+        validateAsyncRequestLog();
+        validateCompression();
+        if ((daemon || isWarm()) && (getStopPort() == null || getStopPort() <= 0 || getStopKey() == null)) {
+            throw new InvalidUserDataException("A forked daemon server is stopped through its stop port, please specify the stopPort and stopKey");
+        }
+        if (getRequestLog() != null || getConnectors() != null || getLoginServices() != null) {
+            logger.warn("requestLog, connectors and loginServices are objects of the build's JVM and are not used by the forked server");
+        }
+        try {
+            File settingsFile = new File(getTemporaryDir(), FORKED_SERVER_FILE);
+            store(getForkedServerSettings(), settingsFile, "Server forked by " + getPath());
+
+            List<String> command = getForkCommand();
+            command.add(ForkedServer.class.getName());
+            command.add(settingsFile.getCanonicalPath());
+            logger.info("Forking the server: " + command);
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.directory(getProject().getProjectDir());
+            long start = System.nanoTime();
+            Process process = builder.start();
+            CountDownLatch started = new CountDownLatch(1);
+            Thread out = copy(process.getInputStream(), System.out, started);
+            Thread err = copy(process.getErrorStream(), System.err, null);
+            awaitForkedStart(process, started);
+            getLogger().lifecycle("Forked server of " + getContextPath() + " started in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+            if (daemon || isWarm()) {
+                return;
+            }
+            forkedProcess = process;
+            try {
+                startChangeDetection();
+                startConsoleScanner();
+                int exitValue = process.waitFor();
+                out.join(1000);
+                err.join(1000);
+                if (exitValue != 0) {
+                    throw new GradleException("The forked server exited with " + exitValue);
+                }
+            } catch (InterruptedException e) {
+                sendToForked("stop");
+                process.destroy();
+                Thread.currentThread().interrupt();
+            } finally {
+                forkedProcess = null;
+            }
+        } catch (GradleException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GradleException("Could not start the forked Jetty 9 server.", e);
+        }
+    }
+
+    private List<String> getForkCommand() {
+        Jetty9Fork settings = getFork();
+        List<String> command = new ArrayList<String>();
+        command.add(settings.getExecutable() != null ? settings.getExecutable()
+                : new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (settings.getMinHeapSize() != null) {
+            command.add("-Xms" + settings.getMinHeapSize());
+        }
+        if (settings.getMaxHeapSize() != null) {
+            command.add("-Xmx" + settings.getMaxHeapSize());
+        }
+        if (settings.getGarbageCollector() != null) {
+            command.add("-XX:+Use" + settings.getGarbageCollector() + "GC");
+        }
+        command.addAll(settings.getJvmArgs());
+        for (Map.Entry<String, Object> property : settings.getSystemProperties().entrySet()) {
+            command.add("-D" + property.getKey() + "=" + property.getValue());
+        }
+        if (!settings.getSystemProperties().containsKey(JETTY_LOG_CLASS)) {
+            // the forked JVM has no slf4j binding unless one is added, Jetty logs to the standard error instead
+            command.add("-D" + JETTY_LOG_CLASS + "=org.eclipse.jetty.util.log.StdErrLog");
+        }
+        List<File> classpath = ForkedServer.getClasspath();
+        for (File additionalRuntimeJar : getAdditionalRuntimeJars()) {
+            classpath.add(additionalRuntimeJar);
+        }
+        command.add("-cp");
+        command.add(join(classpath));
+        return command;
+    }
+
+    private static String join(List<File> files) {
+        StringBuilder joined = new StringBuilder();
+        for (File file : files) {
+            joined.append(joined.length() == 0 ? "" : File.pathSeparator).append(file.getAbsolutePath());
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Returns the server settings and the webapp deployment for the forked server.
+     */
+    private Properties getForkedServerSettings() throws Exception {
+        Properties settings = getWarmDeployment();
+        if (settings == null) {
+            throw new InvalidUserDataException(getName() + " cannot run its webapp in a forked JVM");
+        }
+        settings.setProperty(ForkedServer.ATTACHED, String.valueOf(!(daemon || isWarm())));
+        if (getStopPort() != null && getStopPort() > 0 && getStopKey() != null) {
+            settings.setProperty(ForkedServer.STOP_PORT, getStopPort().toString());
+            settings.setProperty(ForkedServer.STOP_KEY, getStopKey());
+        }
+        settings.setProperty(ForkedServer.REQUEST_STATISTICS, String.valueOf(isRequestStatistics()));
+        settings.setProperty(ForkedServer.GRACEFUL_STOP_TIMEOUT_SECONDS, String.valueOf(getGracefulStopTimeoutSeconds()));
+        settings.setProperty(ForkedServer.PARALLEL_JAR_SCANNING, String.valueOf(isParallelJarScanning()));
+        settings.setProperty(ForkedServer.PARALLEL_SERVLET_INIT, String.valueOf(isParallelServletInit()));
+        settings.setProperty(ForkedServer.CACHE_JAR_SCANS, String.valueOf(isCacheJarScans()));
+        settings.setProperty(ForkedServer.TEMP_DIRECTORY, getTemporaryDir().getCanonicalPath());
+        if (getJettyConfig() != null) {
+            settings.setProperty(ForkedServer.JETTY_CONFIG, getJettyConfig().getCanonicalPath());
+        }
+        if (getWebDefaultXml() != null) {
+            settings.setProperty(ForkedServer.WEB_DEFAULT_XML, getWebDefaultXml().getCanonicalPath());
+        }
+        if (getOverrideWebXml() != null) {
+            settings.setProperty(ForkedServer.OVERRIDE_WEB_XML, getOverrideWebXml().getCanonicalPath());
+        }
+        ForkedServer.storeSettings(settings, ForkedServer.THREAD_POOL, getThreadPool());
+        ForkedServer.storeSettings(settings, ForkedServer.COMPRESSION, getCompression());
+        if (getRequestLog() == null && getAsyncRequestLog() != null) {
+            ForkedServer.storeSettings(settings, ForkedServer.ASYNC_REQUEST_LOG, getAsyncRequestLog());
+            settings.setProperty(ForkedServer.ASYNC_REQUEST_LOG + "file", getAsyncRequestLogFile().getCanonicalPath());
+        }
+        addForkedServerSettings(settings);
+
+        // the same connectors createConnectors sets up
+        List<Jetty9Connector> connectorSettings = new ArrayList<Jetty9Connector>();
+        if (getHttpConnectors() == null || getHttpConnectors().isEmpty()) {
+            Jetty9Connector defaultConnector = new Jetty9Connector(ForkedServer.DEFAULT_CONNECTOR);
+            defaultConnector.copyFrom(getConnector());
+            if (defaultConnector.getPort() == null) {
+                defaultConnector.setPort(getHttpPort());
+            }
+            connectorSettings.add(defaultConnector);
+        } else {
+            connectorSettings.addAll(getHttpConnectors());
+        }
+        settings.setProperty(ForkedServer.CONNECTOR_COUNT, String.valueOf(connectorSettings.size()));
+        for (int i = 0; i < connectorSettings.size(); i++) {
+            Jetty9Connector connectorSetting = connectorSettings.get(i);
+            if (connectorSetting.getPort() == null) {
+                throw new InvalidUserDataException("No port set for connector " + connectorSetting.getName());
+            }
+            settings.setProperty(ForkedServer.CONNECTOR + i + ".name", connectorSetting.getName());
+            ForkedServer.storeSettings(settings, ForkedServer.CONNECTOR + i + ".", connectorSetting);
+        }
+        return settings;
+    }
+
+    /**
+     * Adds the settings of a subclass to the settings of the forked server.
+     */
+    protected void addForkedServerSettings(Properties settings) throws Exception {
+    }
+
+    /**
+     * Copies the output of the forked server line by line, counting down the latch once it reports to be started.
+     */
+    private static Thread copy(final InputStream in, final PrintStream out, final CountDownLatch started) {
+        Thread thread = new Thread("Jetty9ForkedServer output") {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        out.println(line);
+                        if (started != null && line.startsWith(ForkedServer.STARTED)) {
+                            started.countDown();
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.debug("Could not copy the output of the forked server", e);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void awaitForkedStart(Process process, CountDownLatch started) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + getFork().getStartTimeoutSeconds() * 1000L;
+        while (!started.await(100, TimeUnit.MILLISECONDS)) {
+            Integer exitValue = getExitValue(process);
+            if (exitValue != null) {
+                throw new GradleException("The forked server exited with " + exitValue + " before it started");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                process.destroy();
+                throw new GradleException("The forked server did not start within " + getFork().getStartTimeoutSeconds() + " seconds");
+            }
+        }
+    }
+
+    /**
+     * Returns the exit value of the process, or null while it is still running.
+     */
+    private static Integer getExitValue(Process process) {
+        try {
+            return process.exitValue();
+        } catch (IllegalThreadStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the server of this task runs in a forked JVM, which restarts are forwarded to.
+     */
+    protected boolean isForked() {
+        return forkedProcess != null;
+    }
+
+    /**
+     * Has the forked server redeploy the webapp with the current classpath and descriptors.
+     */
+    protected void redeployForked() throws IOException {
+        File file = new File(getTemporaryDir(), FORKED_DEPLOYMENT_FILE);
+        store(getWarmDeployment(), file, "Webapp for the forked server");
+        sendToForked(Monitor.DEPLOY_COMMAND + " " + file.getCanonicalPath());
+    }
+
+    private void sendToForked(String command) {
+        Process process = forkedProcess;
+        if (process == null) {
+            return;
+        }
+        try {
+            OutputStream in = process.getOutputStream();
+            in.write((command + "\n").getBytes("UTF-8"));
+            in.flush();
+        } catch (IOException e) {
+            logger.warn("Could not send '" + command + "' to the forked server", e);
+        }
+    }
+
+    private static void store(Properties properties, File file, String comment) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, comment);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns what a warm server needs to redeploy the webapp of this task, or null if the task cannot hand its webapp
+     * to a warm server.
+     */
+    protected Properties getWarmDeployment() throws IOException {
+        return null;
+    }
+
     public JettyPluginServerEclipse getServer() {
         return this.server;
     }
@@ -180,9 +649,40 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
         return scanner;
     }
 
+    /**
+     * Sets the files and directories to check for changes, updating the file watcher if it is already running.
+     */
+    public void setScanList(List<File> scanList) throws IOException {
+        scanner.setScanDirs(scanList);
+        if (classpathSnapshot != null) {
+            classpathSnapshot.refresh(scanList);
+        }
+        if (fileWatcher != null) {
+            fileWatcher.setTargets(scanList);
+        }
+    }
+
+    /**
+     * Returns those of the changed files whose content differs from what it was when last seen.
+     */
+    public Set<String> getChangedContent(List<String> changes) {
+        if (classpathSnapshot == null) {
+            return new LinkedHashSet<String>(changes);
+        }
+        return classpathSnapshot.update(changes);
+    }
+
     public void startJetty9() {
         logger.info("Configuring Jetty 9 for " + getProject());
-        validateConfiguration();
+        startupTimer = newStartupTimer("start");
+        startupTimer.begin(VALIDATE_PHASE);
+        try {
+            validateConfiguration();
+            validateAsyncRequestLog();
+            validateCompression();
+        } finally {
+            startupTimer.end(VALIDATE_PHASE);
+        }
         startJetty9Internal();
     }
 
@@ -192,31 +692,52 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
         progressLogger.setDescription("Start Jetty 9 server");
         progressLogger.setShortDescription("Starting Jetty 9");
         progressLogger.started();
+        if (startupTimer == null) {
+            startupTimer = newStartupTimer("start");
+        }
+        StartupTimer timer = startupTimer;
         try {
+            timer.begin("Create server");
             setServer(createServer());
+            timer.end("Create server");
 
+            timer.begin("Apply jetty.xml");
             applyJettyXml();
+            timer.end("Apply jetty.xml");
 
             JettyPluginServerEclipse plugin = getServer();
 
+            timer.begin("Set up connectors");
             Object[] configuredConnectors = getConnectors();
 
             plugin.setConnectors(configuredConnectors);
             Object[] connectors = plugin.getConnectors();
 
             if (connectors == null || connectors.length == 0) {
-                configuredConnectors = new Object[]{plugin.createDefaultConnector(getHttpPort())};
+                plugin.setConnectors(createConnectors(plugin));
             }
+            timer.end("Set up connectors");
+
+            timer.begin("Configure handlers");
             //set up a RequestLog if one is provided
             if (getRequestLog() != null) {
                 getServer().setRequestLog(getRequestLog());
+            } else if (getAsyncRequestLog() != null) {
+                getServer().setRequestLog(createAsyncRequestLog());
             }
 
             //set up the webapp and any context provided
+            getServer().setRequestStatistics(isRequestStatistics());
+            getServer().setGracefulStop(getGracefulStopTimeoutSeconds() > 0);
+            getServer().setCompression(getCompression());
             getServer().configureHandlers();
-            configureWebApplication();
-            getServer().addWebApplication(webAppConfig);
+            timer.end("Configure handlers");
 
+            timer.begin(CONFIGURE_WEBAPP_PHASE);
+            deployWebApplication(timer);
+            timer.end(CONFIGURE_WEBAPP_PHASE);
+
+            timer.begin("Set up login services");
             // set up login services
             Object[] configuredLoginServices = getLoginServices();
             for (int i = 0; (configuredLoginServices != null) && i < configuredLoginServices.length; i++) {
@@ -228,60 +749,183 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
             //do any other configuration required by the
             //particular Jetty version
             finishConfigurationBeforeStart();
+            timer.end("Set up login services");
 
             // start Jetty
+            timer.begin("Start server");
             server.start();
+            timer.end("Start server");
+            timer.report(getStartupReportDir());
 
             if (daemon) {
                 return;
             }
 
             if (getStopPort() != null && getStopPort() > 0 && getStopKey() != null) {
-                Monitor monitor = new Monitor(getStopPort(), getStopKey(), (Server) server.getProxiedObject());
+                Monitor monitor = new Monitor(getStopPort(), getStopKey(), this);
                 monitor.start();
             }
 
             // start the scanner thread (if necessary) on the main webapp
-            configureScanner();
-            startScanner();
+            startChangeDetection();
 
             // start the new line scanner thread if necessary
             startConsoleScanner();
         } catch (Exception e) {
+            stopChangeDetection();
             throw new GradleException("Could not start the Jetty 9 server.", e);
         } finally {
+            timer.finish();
+            startupTimer = null;
             progressLogger.completed();
         }
     }
 
+    /**
+     * Configures the webapp of this task and adds it to the server.
+     */
+    protected void deployWebApplication(StartupTimer timer) throws Exception {
+        classLoaderLeakDetector = new ClassLoaderLeakDetector(getContextPath(), getClassLoaderLeakRestarts(),
+                isClassLoaderLeakGc());
+        configureWebApplication();
+        webAppConfig.setStartupTimer(timer);
+        getServer().addWebApplication(webAppConfig);
+    }
+
+    /**
+     * Called by restarts once the webapp is started again, with the class loader it used before the restart.
+     */
+    protected void webAppRestarted(ClassLoader discarded) {
+        if (classLoaderLeakDetector != null && discarded != getWebAppConfig().getClassLoader()) {
+            classLoaderLeakDetector.restarted(discarded);
+        }
+    }
+
+    /**
+     * Deploys the webapp of this task into the server of another task, which {@link Jetty9RunAll} uses to run the
+     * webapps of several projects in one server. The webapp is restarted by this task, on changes found by
+     * {@link #startChangeDetection()}.
+     */
+    public void deployInto(JettyPluginServerEclipse server, StartupTimer timer) throws Exception {
+        validateConfiguration();
+        setServer(server);
+        deployWebApplication(timer);
+    }
+
+    /**
+     * Starts the scanner or file watcher that restarts the webapp of this task on changes.
+     */
+    public void startChangeDetection() throws Exception {
+        configureScanner();
+        startScanner();
+    }
+
+    /**
+     * Stops the scanner or file watcher started by {@link #startChangeDetection()}.
+     */
+    public void stopChangeDetection() {
+        try {
+            scanner.stop();
+        } catch (Exception e) {
+            logger.warn("Exception when stopping the scanner", e);
+        }
+        if (fileWatcher != null) {
+            fileWatcher.close();
+            fileWatcher = null;
+        }
+        for (ChangeBatcher batcher : changeBatchers) {
+            batcher.close();
+        }
+        changeBatchers.clear();
+    }
+
+    /**
+     * Creates a timer for the phases of a start or restart, showing them as progress operations.
+     */
+    protected StartupTimer newStartupTimer(String event) {
+        return new StartupTimer(event, getServices().get(ProgressLoggerFactory.class));
+    }
+
     /**
      * Run a scanner thread on the given list of files and directories, calling stop/start on the given list of LifeCycle objects if any of the watched files change.
      */
     private void startScanner() throws Exception {
+        boolean watch = Jetty9Plugin.SCAN_MODE_WATCH.equalsIgnoreCase(getScanMode());
+        if (!watch && !Jetty9Plugin.SCAN_MODE_POLL.equalsIgnoreCase(getScanMode())) {
+            throw new InvalidUserDataException("invalid scan mode specified, must be 'poll' or 'watch'");
+        }
+
         // check if scanning is enabled
-        if (getScanIntervalSeconds() <= 0) {
+        if (!watch && getScanIntervalSeconds() <= 0) {
             return;
         }
 
         // check if reload is manual. It disables file scanning
         if ("manual".equalsIgnoreCase(reload)) {
-            // issue a warning if both scanIntervalSeconds and reload
+            // issue a warning if both scanning and reload
             // are enabled
-            logger.warn("scanIntervalSeconds is set to " + scanIntervalSeconds
+            logger.warn("scanMode is set to " + getScanMode() + " with scanIntervalSeconds " + getScanIntervalSeconds()
                     + " but will be IGNORED due to manual reloading");
             return;
         }
 
+        classpathSnapshot = ClasspathSnapshot.load(new File(getTemporaryDir(), "classpath-snapshot.bin"));
+        classpathSnapshot.refresh(scanner.getScanDirs());
+
+        List<Scanner.Listener> listeners = batchScannerListeners();
+        if (watch) {
+            try {
+                fileWatcher = new FileWatcher(listeners);
+                fileWatcher.setTargets(scanner.getScanDirs());
+                logger.info("Starting file watcher on " + scanner.getScanDirs().size() + " scan targets.");
+                fileWatcher.start();
+                scannerStarted();
+                return;
+            } catch (IOException e) {
+                logger.warn("File watching is not available, falling back to polling.", e);
+            } catch (UnsupportedOperationException e) {
+                logger.warn("File watching is not supported, falling back to polling.", e);
+            }
+            fileWatcher = null;
+        }
+
+        int scanInterval = Math.max(1, getScanIntervalSeconds());
         scanner.setReportExistingFilesOnStartup(false);
-        scanner.setScanInterval(getScanIntervalSeconds());
+        scanner.setScanInterval(scanInterval);
         scanner.setRecursive(true);
-        List listeners = getScannerListeners();
-        Iterator itor = listeners == null ? null : listeners.iterator();
-        while (itor != null && itor.hasNext()) {
-            scanner.addListener((Scanner.Listener) itor.next());
+        for (Scanner.Listener listener : listeners) {
+            scanner.addListener(listener);
         }
-        logger.info("Starting scanner at interval of " + getScanIntervalSeconds() + " seconds.");
+        logger.info("Starting scanner at interval of " + scanInterval + " seconds.");
         scanner.start();
+        scannerStarted();
+    }
+
+    /**
+     * Called once the scanner or file watcher is running, so subclasses can rely on being told about changes.
+     */
+    protected void scannerStarted() {
+    }
+
+    /**
+     * Put a {@link ChangeBatcher} in front of every bulk listener so bursts of changes cause a single restart.
+     */
+    private List<Scanner.Listener> batchScannerListeners() {
+        List<Scanner.Listener> listeners = new ArrayList<Scanner.Listener>();
+        if (getScannerListeners() == null) {
+            return listeners;
+        }
+        for (Scanner.Listener listener : getScannerListeners()) {
+            if (listener instanceof Scanner.BulkListener) {
+                ChangeBatcher batcher = new ChangeBatcher((Scanner.BulkListener) listener, getScanQuietPeriodMillis(), getScanMaxWaitMillis());
+                batcher.start();
+                changeBatchers.add(batcher);
+                listeners.add(batcher);
+            } else {
+                listeners.add(listener);
+            }
+        }
+        return listeners;
     }
 
     /**
@@ -303,9 +947,17 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
         if (webAppConfig == null) {
             webAppConfig = new Jetty9PluginWebAppContext();
         }
+        webAppConfig.setParallelJarScanning(isParallelJarScanning());
+        webAppConfig.setParallelServletInit(isParallelServletInit());
         webAppConfig.setContextPath(getContextPath().startsWith("/") ? getContextPath() : "/" + getContextPath());
         if (getTemporaryDir() != null) {
             webAppConfig.setTempDirectory(getTemporaryDir());
+            if (isCacheJarScans()) {
+                if (jarScanCache == null) {
+                    jarScanCache = JarScanCache.load(new File(getTemporaryDir(), "jar-scan-cache.bin"));
+                }
+                webAppConfig.setJarScanCache(jarScanCache);
+            }
         }
         if (getWebDefaultXml() != null) {
             webAppConfig.setDefaultsDescriptor(getWebDefaultXml().getCanonicalPath());
@@ -381,10 +1033,229 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
         return httpPort;
     }
 
+    public boolean isRequestStatistics() {
+        return requestStatistics;
+    }
+
+    public void setRequestStatistics(boolean requestStatistics) {
+        this.requestStatistics = requestStatistics;
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    public void setWarm(boolean warm) {
+        this.warm = warm;
+    }
+
+    public int getGracefulStopTimeoutSeconds() {
+        return gracefulStopTimeoutSeconds;
+    }
+
+    public void setGracefulStopTimeoutSeconds(int gracefulStopTimeoutSeconds) {
+        this.gracefulStopTimeoutSeconds = gracefulStopTimeoutSeconds;
+    }
+
+    /**
+     * Stops the server, gracefully if a graceful stop timeout is set.
+     */
+    public synchronized StopResult stopServer() throws Exception {
+        stopChangeDetection();
+        return getServer().stop(getGracefulStopTimeoutSeconds() * 1000L);
+    }
+
+    public File getStartupReportDir() {
+        return startupReportDir;
+    }
+
+    public void setStartupReportDir(File startupReportDir) {
+        this.startupReportDir = startupReportDir;
+    }
+
+    public Jetty9Fork getFork() {
+        return fork;
+    }
+
+    public void setFork(Jetty9Fork fork) {
+        this.fork = fork;
+    }
+
+    /**
+     * Configures the JVM the server of this task is forked into, and has the server run in it.
+     */
+    public void fork(Closure<?> closure) {
+        if (fork == null) {
+            fork = new Jetty9Fork();
+        }
+        ConfigureUtil.configure(closure, fork);
+    }
+
+    public Jetty9ThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    public void setThreadPool(Jetty9ThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Configures the thread pool of this task, starting from the project wide settings.
+     */
+    public void threadPool(Closure<?> closure) {
+        if (threadPool == null) {
+            Jetty9ThreadPool taskThreadPool = new Jetty9ThreadPool();
+            taskThreadPool.copyFrom(getThreadPool());
+            threadPool = taskThreadPool;
+        }
+        ConfigureUtil.configure(closure, threadPool);
+    }
+
+    public Jetty9Connector getConnector() {
+        return connector;
+    }
+
+    public void setConnector(Jetty9Connector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * Configures the default connector of this task, starting from the project wide settings.
+     */
+    public void connector(Closure<?> closure) {
+        if (connector == null) {
+            Jetty9Connector taskConnector = new Jetty9Connector("default");
+            taskConnector.copyFrom(getConnector());
+            connector = taskConnector;
+        }
+        ConfigureUtil.configure(closure, connector);
+    }
+
+    public Collection<Jetty9Connector> getHttpConnectors() {
+        return httpConnectors;
+    }
+
+    public void setHttpConnectors(Collection<Jetty9Connector> httpConnectors) {
+        this.httpConnectors = httpConnectors;
+    }
+
+    /**
+     * Creates the named httpConnectors, or the default connector at httpPort if there are none.
+     */
+    private Object[] createConnectors(JettyPluginServerEclipse plugin) throws Exception {
+        Collection<Jetty9Connector> namedConnectors = getHttpConnectors();
+        if (namedConnectors == null || namedConnectors.isEmpty()) {
+            Jetty9Connector defaultConnector = getConnector();
+            Integer port = defaultConnector != null && defaultConnector.getPort() != null ? defaultConnector.getPort() : getHttpPort();
+            return new Object[]{plugin.createConnector(defaultConnector, port)};
+        }
+        List<Object> created = new ArrayList<Object>();
+        for (Jetty9Connector namedConnector : namedConnectors) {
+            if (namedConnector.getPort() == null) {
+                throw new InvalidUserDataException("No port set for connector " + namedConnector.getName());
+            }
+            created.add(plugin.createConnector(namedConnector, namedConnector.getPort()));
+        }
+        return created.toArray();
+    }
+
+    /**
+     * Creates the server's thread pool from the thread pool settings, or returns null to use Jetty's default pool.
+     */
+    protected ThreadPool createThreadPool() {
+        return ThreadPools.create(getThreadPool());
+    }
+
     public RequestLog getRequestLog() {
         return requestLog;
     }
 
+    public Jetty9AsyncRequestLog getAsyncRequestLog() {
+        return asyncRequestLog;
+    }
+
+    public void setAsyncRequestLog(Jetty9AsyncRequestLog asyncRequestLog) {
+        this.asyncRequestLog = asyncRequestLog;
+    }
+
+    /**
+     * Configures the bundled asynchronous request log of this task.
+     */
+    public void asyncRequestLog(Closure<?> closure) {
+        if (asyncRequestLog == null) {
+            asyncRequestLog = new Jetty9AsyncRequestLog();
+        }
+        ConfigureUtil.configure(closure, asyncRequestLog);
+    }
+
+    private void validateAsyncRequestLog() {
+        Jetty9AsyncRequestLog settings = getAsyncRequestLog();
+        if (settings == null) {
+            return;
+        }
+        if (getRequestLog() != null) {
+            logger.warn("Both requestLog and asyncRequestLog are set, asyncRequestLog is ignored");
+        }
+        if (!Jetty9AsyncRequestLog.OVERFLOW_DROP.equalsIgnoreCase(settings.getOverflow())
+                && !Jetty9AsyncRequestLog.OVERFLOW_BLOCK.equalsIgnoreCase(settings.getOverflow())) {
+            throw new InvalidUserDataException("invalid request log overflow specified, must be 'drop' or 'block'");
+        }
+        if (!Jetty9AsyncRequestLog.FORMAT_NCSA.equalsIgnoreCase(settings.getFormat())
+                && !Jetty9AsyncRequestLog.FORMAT_BINARY.equalsIgnoreCase(settings.getFormat())) {
+            throw new InvalidUserDataException("invalid request log format specified, must be 'ncsa' or 'binary'");
+        }
+        if (settings.getBufferSize() < 1) {
+            throw new InvalidUserDataException("the request log bufferSize must be positive");
+        }
+    }
+
+    private RequestLog createAsyncRequestLog() {
+        return AsyncRequestLog.create(getAsyncRequestLog(), getAsyncRequestLogFile());
+    }
+
+    private File getAsyncRequestLogFile() {
+        Jetty9AsyncRequestLog settings = getAsyncRequestLog();
+        if (settings.getFile() != null) {
+            return settings.getFile();
+        }
+        boolean binary = Jetty9AsyncRequestLog.FORMAT_BINARY.equalsIgnoreCase(settings.getFormat());
+        return new File(getProject().getBuildDir(), "logs/" + getName() + "-request." + (binary ? "bin" : "log"));
+    }
+
+    public Jetty9Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Jetty9Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Configures gzip compression of the responses of this task's server.
+     */
+    public void compression(Closure<?> closure) {
+        if (compression == null) {
+            compression = new Jetty9Compression();
+        }
+        ConfigureUtil.configure(closure, compression);
+    }
+
+    private void validateCompression() {
+        Jetty9Compression settings = getCompression();
+        if (settings == null) {
+            return;
+        }
+        if (settings.getLevel() < Deflater.BEST_SPEED || settings.getLevel() > Deflater.BEST_COMPRESSION) {
+            throw new InvalidUserDataException("the compression level must be between 1 and 9");
+        }
+        if (settings.getMinSize() < 0) {
+            throw new InvalidUserDataException("the compression minSize must not be negative");
+        }
+        if (settings.getDeflaterPoolSize() < 0) {
+            throw new InvalidUserDataException("the compression deflaterPoolSize must not be negative");
+        }
+    }
+
     public LoginService[] getLoginServices() {
         return loginServices;
     }
@@ -424,6 +1295,70 @@ public abstract class AbstractJetty9RunTask extends ConventionTask {
         this.scanIntervalSeconds = scanIntervalSeconds;
     }
 
+    public int getScanQuietPeriodMillis() {
+        return scanQuietPeriodMillis;
+    }
+
+    public void setScanQuietPeriodMillis(int scanQuietPeriodMillis) {
+        this.scanQuietPeriodMillis = scanQuietPeriodMillis;
+    }
+
+    public int getScanMaxWaitMillis() {
+        return scanMaxWaitMillis;
+    }
+
+    public void setScanMaxWaitMillis(int scanMaxWaitMillis) {
+        this.scanMaxWaitMillis = scanMaxWaitMillis;
+    }
+
+    public int getClassLoaderLeakRestarts() {
+        return classLoaderLeakRestarts;
+    }
+
+    public void setClassLoaderLeakRestarts(int classLoaderLeakRestarts) {
+        this.classLoaderLeakRestarts = classLoaderLeakRestarts;
+    }
+
+    public boolean isClassLoaderLeakGc() {
+        return classLoaderLeakGc;
+    }
+
+    public void setClassLoaderLeakGc(boolean classLoaderLeakGc) {
+        this.classLoaderLeakGc = classLoaderLeakGc;
+    }
+
+    public boolean isCacheJarScans() {
+        return cacheJarScans;
+    }
+
+    public void setCacheJarScans(boolean cacheJarScans) {
+        this.cacheJarScans = cacheJarScans;
+    }
+
+    public boolean isParallelJarScanning() {
+        return parallelJarScanning;
+    }
+
+    public void setParallelJarScanning(boolean parallelJarScanning) {
+        this.parallelJarScanning = parallelJarScanning;
+    }
+
+    public boolean isParallelServletInit() {
+        return parallelServletInit;
+    }
+
+    public void setParallelServletInit(boolean parallelServletInit) {
+        this.parallelServletInit = parallelServletInit;
+    }
+
+    public String getScanMode() {
+        return scanMode;
+    }
+
+    public void setScanMode(String scanMode) {
+        this.scanMode = scanMode;
+    }
+
     public String getReload() {
         return reload;
     }
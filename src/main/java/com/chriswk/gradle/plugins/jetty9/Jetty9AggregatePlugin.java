@@ -0,0 +1,58 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.plugins.WarPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Adds the jetty9RunAll task, which runs the webapps of all projects that apply the jetty9 plugin in one server. Apply it
+ * to the root project, and configure the shared server through the jetty9 convention or the task.
+ */
+public class Jetty9AggregatePlugin implements Plugin<Project> {
+    public static final String JETTY9_RUN_ALL = "jetty9RunAll";
+
+    @Override
+    public void apply(final Project project) {
+        Jetty9PluginConvention jetty9Convention = (Jetty9PluginConvention) project.getConvention().getPlugins().get("jetty9");
+        if (jetty9Convention == null) {
+            jetty9Convention = new Jetty9PluginConvention(project.container(Jetty9Connector.class));
+            project.getConvention().getPlugins().put("jetty9", jetty9Convention);
+        }
+
+        final Jetty9RunAll jetty9RunAll = project.getTasks().add(JETTY9_RUN_ALL, Jetty9RunAll.class);
+        Jetty9Plugin.configureAbstractJetty9Task(project, jetty9Convention, jetty9RunAll);
+        jetty9RunAll.setDescription("Runs the webapps of all projects applying the jetty9 plugin in one Jetty 9 server.");
+        jetty9RunAll.setGroup(WarPlugin.WEB_APP_GROUP);
+        jetty9RunAll.getConventionMapping().map("webApps", new Callable<Object>() {
+            public Object call() throws Exception {
+                return getJetty9RunTasks(project);
+            }
+        });
+        // build what the webapps need without running their own servers
+        jetty9RunAll.dependsOn(new Callable<Object>() {
+            public Object call() throws Exception {
+                List<Object> dependencies = new ArrayList<Object>();
+                for (AbstractJetty9RunTask webApp : jetty9RunAll.getWebApps()) {
+                    dependencies.add(webApp.getTaskDependencies());
+                }
+                return dependencies;
+            }
+        });
+    }
+
+    private static List<AbstractJetty9RunTask> getJetty9RunTasks(Project project) {
+        List<AbstractJetty9RunTask> tasks = new ArrayList<AbstractJetty9RunTask>();
+        for (Project candidate : project.getAllprojects()) {
+            Task task = candidate.getTasks().findByName(Jetty9Plugin.JETTY9_RUN);
+            if (task instanceof Jetty9Run) {
+                tasks.add((Jetty9Run) task);
+            }
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,81 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import java.io.File;
+
+/**
+ * Settings for the bundled request log, which hands entries to a background writer through a bounded ring buffer
+ * instead of formatting and writing them on the request thread.
+ */
+public class Jetty9AsyncRequestLog {
+    public static final String OVERFLOW_DROP = "drop";
+    public static final String OVERFLOW_BLOCK = "block";
+
+    public static final String FORMAT_NCSA = "ncsa";
+    public static final String FORMAT_BINARY = "binary";
+
+    /**
+     * The file to write to. Defaults to build/logs/&lt;task name&gt;-request.log, or .bin in binary format.
+     */
+    private File file;
+
+    /**
+     * Append to an existing file instead of replacing it.
+     */
+    private boolean append = true;
+
+    /**
+     * Number of entries the ring buffer holds, rounded up to a power of two.
+     */
+    private int bufferSize = 8192;
+
+    /**
+     * What a request thread does when the buffer is full: 'drop' the entry and count it, or 'block' until there is
+     * room.
+     */
+    private String overflow = OVERFLOW_DROP;
+
+    /**
+     * 'ncsa' for the NCSA extended text format with the latency appended, or 'binary' for compact records.
+     */
+    private String format = FORMAT_NCSA;
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    public boolean isAppend() {
+        return append;
+    }
+
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public String getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(String overflow) {
+        this.overflow = overflow;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+}
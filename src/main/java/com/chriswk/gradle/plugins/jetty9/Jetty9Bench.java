@@ -0,0 +1,161 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import com.chriswk.gradle.plugins.jetty9.internal.BenchReport;
+import com.chriswk.gradle.plugins.jetty9.internal.LatencyHistogram;
+import com.chriswk.gradle.plugins.jetty9.internal.LoadGenerator;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.NetworkConnector;
+import org.eclipse.jetty.server.Server;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.tasks.TaskAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts the webapp like {@link Jetty9Run}, drives HTTP load at a list of urls from inside the build and stops the
+ * server again. Throughput and latency percentiles are written to a JSON and an HTML report.
+ */
+public class Jetty9Bench extends Jetty9Run {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Jetty9Bench.class);
+
+    /**
+     * Paths relative to the context path to request, round robin.
+     */
+    private List<String> urls = new ArrayList<String>(Arrays.asList("/"));
+
+    /**
+     * Number of keep-alive connections sending requests concurrently.
+     */
+    private int concurrency = 16;
+
+    /**
+     * Seconds of load before measuring starts, to let the JIT and caches settle.
+     */
+    private int warmupSeconds = 5;
+
+    /**
+     * Seconds of load that are measured.
+     */
+    private int durationSeconds = 10;
+
+    /**
+     * Directory the bench.json and index.html reports are written to.
+     */
+    private File reportDir;
+
+    @TaskAction
+    @Override
+    protected void start() {
+        if (getUrls() == null || getUrls().isEmpty()) {
+            throw new InvalidUserDataException("Please specify at least one url to benchmark");
+        }
+        if (getConcurrency() < 1 || getDurationSeconds() < 1 || getWarmupSeconds() < 0) {
+            throw new InvalidUserDataException("concurrency and durationSeconds must be positive and warmupSeconds must not be negative");
+        }
+        if (getFork() != null || isWarm()) {
+            throw new InvalidUserDataException("The benchmark runs the server in the Gradle JVM, fork and warm are not supported");
+        }
+        setDaemon(true);
+        super.start();
+        Server server = (Server) getServer().getProxiedObject();
+        try {
+            LoadGenerator.Result result = runLoad(server);
+            logResult(result);
+            new BenchReport(result, getConcurrency(), getWarmupSeconds()).write(getReportDir());
+            getLogger().lifecycle("Benchmark report written to " + new File(getReportDir(), "index.html"));
+            if (result.getOverall().getCount() == 0) {
+                throw new GradleException("No request completed during the benchmark, see the Jetty log for errors");
+            }
+        } catch (GradleException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GradleException("Could not run the benchmark.", e);
+        } finally {
+            try {
+                stopServer();
+            } catch (Exception e) {
+                LOGGER.warn("Exception when stopping the Jetty 9 server", e);
+            }
+        }
+    }
+
+    private LoadGenerator.Result runLoad(Server server) throws Exception {
+        int port = -1;
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof NetworkConnector) {
+                port = ((NetworkConnector) connector).getLocalPort();
+                break;
+            }
+        }
+        if (port <= 0) {
+            throw new GradleException("The Jetty 9 server has no open network connector to benchmark");
+        }
+
+        String contextPath = getContextPath().startsWith("/") ? getContextPath() : "/" + getContextPath();
+        if (contextPath.endsWith("/")) {
+            contextPath = contextPath.substring(0, contextPath.length() - 1);
+        }
+        List<String> paths = new ArrayList<String>();
+        for (String url : getUrls()) {
+            paths.add(contextPath + (url.startsWith("/") ? url : "/" + url));
+        }
+
+        LOGGER.info("Benchmarking " + paths + " on port " + port + " with " + getConcurrency() + " connections, "
+                + getWarmupSeconds() + " s warm-up and " + getDurationSeconds() + " s measurement");
+        LoadGenerator loadGenerator = new LoadGenerator("127.0.0.1", port, paths, getConcurrency());
+        return loadGenerator.run(getWarmupSeconds() * 1000L, getDurationSeconds() * 1000L);
+    }
+
+    private void logResult(LoadGenerator.Result result) {
+        LatencyHistogram latencies = result.getOverall();
+        getLogger().lifecycle(String.format("%d requests, %d errors, %d connect errors, %.1f req/s, latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+                latencies.getCount(), result.getErrors(), result.getConnectErrors(), result.getThroughput(), latencies.getPercentile(50) / 1e6,
+                latencies.getPercentile(99) / 1e6, latencies.getPercentile(99.9) / 1e6, latencies.getMax() / 1e6));
+    }
+
+    public List<String> getUrls() {
+        return urls;
+    }
+
+    public void setUrls(List<String> urls) {
+        this.urls = urls;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public void setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public File getReportDir() {
+        return reportDir;
+    }
+
+    public void setReportDir(File reportDir) {
+        this.reportDir = reportDir;
+    }
+}
@@ -0,0 +1,101 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import com.chriswk.gradle.plugins.jetty9.internal.MonitorClient;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.internal.ConventionTask;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.logging.ProgressLogger;
+import org.gradle.logging.ProgressLoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+/**
+ * Sends a command to a Jetty 9 server started by this plugin, through the stop port, and prints the JSON reply. The
+ * commands are stop, restart (redeploys the webapp), status, stats (request statistics), threads and gc.
+ */
+public class Jetty9Command extends ConventionTask {
+    private Integer stopPort;
+
+    private String stopKey;
+
+    private String command;
+
+    private Integer replyTimeoutSeconds = 120;
+
+    @TaskAction
+    public void send() {
+        if (getStopPort() == null) {
+            throw new InvalidUserDataException("Please specify a valid port");
+        }
+        if (getStopKey() == null) {
+            throw new InvalidUserDataException("Please specify a valid stopKey");
+        }
+        if (getCommand() == null) {
+            throw new InvalidUserDataException("Please specify a command");
+        }
+
+        ProgressLogger progressLogger = getServices().get(ProgressLoggerFactory.class).newOperation(Jetty9Command.class);
+        progressLogger.setDescription("Send '" + getCommand() + "' to Jetty server");
+        progressLogger.setShortDescription("Sending '" + getCommand() + "' to Jetty");
+        progressLogger.started();
+        try {
+            String reply = new MonitorClient(getStopPort(), getStopKey(), getReplyTimeoutSeconds() * 1000).send(getCommand());
+            getLogger().lifecycle(reply);
+            if (!MonitorClient.isOk(reply)) {
+                throw new GradleException("Jetty could not execute '" + getCommand() + "': " + reply);
+            }
+        } catch (ConnectException e) {
+            throw new GradleException("Jetty is not running on stop port " + getStopPort(), e);
+        } catch (IOException e) {
+            throw new GradleException("Could not send '" + getCommand() + "' to Jetty", e);
+        } finally {
+            progressLogger.completed();
+        }
+    }
+
+    /**
+     * Returns the TCP port the server listens for commands on.
+     */
+    public Integer getStopPort() {
+        return stopPort;
+    }
+
+    public void setStopPort(Integer stopPort) {
+        this.stopPort = stopPort;
+    }
+
+    /**
+     * Returns the key the server expects with each command.
+     */
+    public String getStopKey() {
+        return stopKey;
+    }
+
+    public void setStopKey(String stopKey) {
+        this.stopKey = stopKey;
+    }
+
+    /**
+     * Returns the command to send.
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    /**
+     * Returns how long to wait for the reply. Defaults to 120 seconds, enough for a restart.
+     */
+    public Integer getReplyTimeoutSeconds() {
+        return replyTimeoutSeconds;
+    }
+
+    public void setReplyTimeoutSeconds(Integer replyTimeoutSeconds) {
+        this.replyTimeoutSeconds = replyTimeoutSeconds;
+    }
+}
@@ -0,0 +1,79 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings for gzip compression of responses, done by a handler around all contexts of the server. Only responses to
+ * clients that accept gzip, with a 2xx status, an included MIME type and no content encoding of their own are
+ * compressed.
+ */
+public class Jetty9Compression {
+    /**
+     * Responses smaller than this many bytes are sent as they are.
+     */
+    private int minSize = 1024;
+
+    /**
+     * Deflate level from 1 (fastest) to 9 (smallest).
+     */
+    private int level = 6;
+
+    /**
+     * MIME types to compress, without parameters. A type ending in '/*' matches all subtypes.
+     */
+    private List<String> mimeTypes = new ArrayList<String>(Arrays.asList("text/html", "text/plain", "text/css",
+            "text/xml", "text/javascript", "application/javascript", "application/json", "application/xml",
+            "image/svg+xml"));
+
+    /**
+     * MIME types never to compress, even when mimeTypes matches them.
+     */
+    private List<String> excludedMimeTypes = new ArrayList<String>();
+
+    /**
+     * Number of deflaters kept for reuse between responses. Extra deflaters needed under load are released after use.
+     */
+    private int deflaterPoolSize = Runtime.getRuntime().availableProcessors() * 2;
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public List<String> getMimeTypes() {
+        return mimeTypes;
+    }
+
+    public void setMimeTypes(List<String> mimeTypes) {
+        this.mimeTypes = mimeTypes;
+    }
+
+    public List<String> getExcludedMimeTypes() {
+        return excludedMimeTypes;
+    }
+
+    public void setExcludedMimeTypes(List<String> excludedMimeTypes) {
+        this.excludedMimeTypes = excludedMimeTypes;
+    }
+
+    public int getDeflaterPoolSize() {
+        return deflaterPoolSize;
+    }
+
+    public void setDeflaterPoolSize(int deflaterPoolSize) {
+        this.deflaterPoolSize = deflaterPoolSize;
+    }
+}
@@ -0,0 +1,166 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+/**
+ * Settings for an HTTP connector of the embedded Jetty server. Unset values keep Jetty's defaults.
+ */
+public class Jetty9Connector {
+    private final String name;
+
+    /**
+     * Port to listen on. Falls back to httpPort for the default connector.
+     */
+    private Integer port;
+
+    /**
+     * Interface to bind to. All interfaces if not set.
+     */
+    private String host;
+
+    /**
+     * Number of threads accepting new connections. Jetty derives it from the number of cores if not set.
+     */
+    private Integer acceptors;
+
+    /**
+     * Number of selector threads handling IO on accepted connections. Jetty derives it from the number of cores if not
+     * set.
+     */
+    private Integer selectors;
+
+    /**
+     * Size of the operating system's queue of connections waiting to be accepted.
+     */
+    private Integer acceptQueueSize;
+
+    /**
+     * Time in milliseconds after which an idle connection is closed.
+     */
+    private Integer idleTimeout;
+
+    /**
+     * SO_LINGER time in seconds for closed sockets, -1 to disable.
+     */
+    private Integer soLingerTime;
+
+    /**
+     * Size in bytes of the response buffer, responses up to this size are written in one go.
+     */
+    private Integer outputBufferSize;
+
+    /**
+     * Maximum size in bytes of the request line and headers.
+     */
+    private Integer requestHeaderSize;
+
+    /**
+     * Maximum size in bytes of the response headers.
+     */
+    private Integer responseHeaderSize;
+
+    public Jetty9Connector(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Integer getPort() {
+        return port;
+    }
+
+    public void setPort(Integer port) {
+        this.port = port;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public Integer getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(Integer acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public Integer getSelectors() {
+        return selectors;
+    }
+
+    public void setSelectors(Integer selectors) {
+        this.selectors = selectors;
+    }
+
+    public Integer getAcceptQueueSize() {
+        return acceptQueueSize;
+    }
+
+    public void setAcceptQueueSize(Integer acceptQueueSize) {
+        this.acceptQueueSize = acceptQueueSize;
+    }
+
+    public Integer getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Integer idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public Integer getSoLingerTime() {
+        return soLingerTime;
+    }
+
+    public void setSoLingerTime(Integer soLingerTime) {
+        this.soLingerTime = soLingerTime;
+    }
+
+    public Integer getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    public void setOutputBufferSize(Integer outputBufferSize) {
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    public Integer getRequestHeaderSize() {
+        return requestHeaderSize;
+    }
+
+    public void setRequestHeaderSize(Integer requestHeaderSize) {
+        this.requestHeaderSize = requestHeaderSize;
+    }
+
+    public Integer getResponseHeaderSize() {
+        return responseHeaderSize;
+    }
+
+    public void setResponseHeaderSize(Integer responseHeaderSize) {
+        this.responseHeaderSize = responseHeaderSize;
+    }
+
+    /**
+     * Copies all settings except the name from the given connector settings.
+     */
+    public void copyFrom(Jetty9Connector other) {
+        if (other == null) {
+            return;
+        }
+        this.port = other.port;
+        this.host = other.host;
+        this.acceptors = other.acceptors;
+        this.selectors = other.selectors;
+        this.acceptQueueSize = other.acceptQueueSize;
+        this.idleTimeout = other.idleTimeout;
+        this.soLingerTime = other.soLingerTime;
+        this.outputBufferSize = other.outputBufferSize;
+        this.requestHeaderSize = other.requestHeaderSize;
+        this.responseHeaderSize = other.responseHeaderSize;
+    }
+}
@@ -0,0 +1,113 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings for running the server in a JVM of its own instead of inside the Gradle daemon. Unset values keep the
+ * defaults of the forked JVM.
+ */
+public class Jetty9Fork {
+    /**
+     * The java executable to run. Defaults to the one of the JVM running Gradle.
+     */
+    private String executable;
+
+    /**
+     * Initial heap size, like '512m'.
+     */
+    private String minHeapSize;
+
+    /**
+     * Maximum heap size, like '2g'.
+     */
+    private String maxHeapSize;
+
+    /**
+     * Garbage collector to use, the name between -XX:+Use and GC, like 'G1', 'Parallel' or 'Serial'.
+     */
+    private String garbageCollector;
+
+    /**
+     * Further arguments for the JVM.
+     */
+    private List<String> jvmArgs = new ArrayList<String>();
+
+    /**
+     * System properties of the forked JVM.
+     */
+    private Map<String, Object> systemProperties = new LinkedHashMap<String, Object>();
+
+    /**
+     * How long to wait for the forked server to start.
+     */
+    private int startTimeoutSeconds = 120;
+
+    public String getExecutable() {
+        return executable;
+    }
+
+    public void setExecutable(String executable) {
+        this.executable = executable;
+    }
+
+    public String getMinHeapSize() {
+        return minHeapSize;
+    }
+
+    public void setMinHeapSize(String minHeapSize) {
+        this.minHeapSize = minHeapSize;
+    }
+
+    public String getMaxHeapSize() {
+        return maxHeapSize;
+    }
+
+    public void setMaxHeapSize(String maxHeapSize) {
+        this.maxHeapSize = maxHeapSize;
+    }
+
+    public String getGarbageCollector() {
+        return garbageCollector;
+    }
+
+    public void setGarbageCollector(String garbageCollector) {
+        this.garbageCollector = garbageCollector;
+    }
+
+    public List<String> getJvmArgs() {
+        return jvmArgs;
+    }
+
+    public void setJvmArgs(List<String> jvmArgs) {
+        this.jvmArgs = jvmArgs;
+    }
+
+    public void jvmArgs(String... jvmArgs) {
+        for (String jvmArg : jvmArgs) {
+            this.jvmArgs.add(jvmArg);
+        }
+    }
+
+    public Map<String, Object> getSystemProperties() {
+        return systemProperties;
+    }
+
+    public void setSystemProperties(Map<String, Object> systemProperties) {
+        this.systemProperties = systemProperties;
+    }
+
+    public void systemProperty(String name, Object value) {
+        systemProperties.put(name, value);
+    }
+
+    public int getStartTimeoutSeconds() {
+        return startTimeoutSeconds;
+    }
+
+    public void setStartTimeoutSeconds(int startTimeoutSeconds) {
+        this.startTimeoutSeconds = startTimeoutSeconds;
+    }
+}
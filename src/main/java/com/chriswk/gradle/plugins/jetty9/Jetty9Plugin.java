@@ -11,6 +11,7 @@ import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.bundling.War;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.concurrent.Callable;
 
 
@@ -19,21 +20,31 @@ public class Jetty9Plugin implements Plugin<Project> {
     public static final String JETTY9_RUN = "jetty9Run";
     public static final String JETTY9_RUN_WAR = "jetty9RunWar";
     public static final String JETTY9_STOP = "jetty9Stop";
+    public static final String JETTY9_BENCH = "jetty9Bench";
+    public static final String JETTY9_RESTART = "jetty9Restart";
+    public static final String JETTY9_STATUS = "jetty9Status";
+    public static final String JETTY9_PRECOMPRESS = "jetty9Precompress";
 
     public static final String RELOAD_AUTOMATIC = "automatic";
     public static final String RELOAD_MANUAL = "manual";
 
+    public static final String SCAN_MODE_POLL = "poll";
+    public static final String SCAN_MODE_WATCH = "watch";
+
     @Override
     public void apply(Project project) {
         project.getPlugins().apply(WarPlugin.class);
-        Jetty9PluginConvention jetty9Convention = new Jetty9PluginConvention();
+        Jetty9PluginConvention jetty9Convention = new Jetty9PluginConvention(project.container(Jetty9Connector.class));
         Convention convention = project.getConvention();
         convention.getPlugins().put("jetty9", jetty9Convention);
 
         configureMappingRules(project, jetty9Convention);
+        configureJetty9Precompress(project);
         configureJetty9Run(project);
-       // configureJetty9RunWar(project);
+        configureJetty9RunWar(project);
         configureJetty9Stop(project, jetty9Convention);
+        configureJetty9Commands(project, jetty9Convention);
+        configureJetty9Bench(project);
     }
 
     private void configureMappingRules(final Project project, final Jetty9PluginConvention jetty9Convention) {
@@ -46,7 +57,7 @@ public class Jetty9Plugin implements Plugin<Project> {
 
     private void configureJetty9Run(final Project project) {
         project.getTasks().withType(Jetty9Run.class, new Action<Jetty9Run>() {
-            public void execute(Jetty9Run jettyRun) {
+            public void execute(final Jetty9Run jettyRun) {
                 jettyRun.getConventionMapping().map("webXml", new Callable<Object>() {
                     public Object call() throws Exception {
                         return getWebXml(project);
@@ -62,6 +73,19 @@ public class Jetty9Plugin implements Plugin<Project> {
                         return getWarConvention(project).getWebAppDir();
                     }
                 });
+                jettyRun.dependsOn(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return jettyRun.isPrecompress() ? project.getTasks().getByName(JETTY9_PRECOMPRESS) : Collections.emptyList();
+                    }
+                });
+                jettyRun.getConventionMapping().map("precompressedDirectory", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        if (!jettyRun.isPrecompress()) {
+                            return null;
+                        }
+                        return ((Jetty9Precompress) project.getTasks().getByName(JETTY9_PRECOMPRESS)).getDestinationDir();
+                    }
+                });
             }
         });
 
@@ -71,13 +95,33 @@ public class Jetty9Plugin implements Plugin<Project> {
     }
 
 
+    private void configureJetty9Precompress(final Project project) {
+        project.getTasks().withType(Jetty9Precompress.class, new Action<Jetty9Precompress>() {
+            public void execute(final Jetty9Precompress jetty9Precompress) {
+                jetty9Precompress.getConventionMapping().map("webAppDir", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return getWarConvention(project).getWebAppDir();
+                    }
+                });
+                jetty9Precompress.getConventionMapping().map("destinationDir", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return new File(project.getBuildDir(), "precompressed/" + jetty9Precompress.getName());
+                    }
+                });
+            }
+        });
+        Jetty9Precompress jetty9Precompress = project.getTasks().add(JETTY9_PRECOMPRESS, Jetty9Precompress.class);
+        jetty9Precompress.setDescription("Writes gzip compressed copies of the static assets of the webapp for Jetty 9 to serve.");
+        jetty9Precompress.setGroup(WarPlugin.WEB_APP_GROUP);
+    }
+
     private void configureJetty9RunWar(final Project project) {
         project.getTasks().withType(Jetty9RunWar.class, new Action<Jetty9RunWar>() {
             public void execute(Jetty9RunWar jetty9RunWar) {
                 jetty9RunWar.dependsOn("war");
                 jetty9RunWar.getConventionMapping().map("webApp", new Callable<Object>() {
                     public Object call() throws Exception {
-                        return ((War) project.getTasks().getByName(WarPlugin.WAR_TASK_NAME));
+                        return ((War) project.getTasks().getByName(WarPlugin.WAR_TASK_NAME)).getArchivePath();
                     }
                 });
             }
@@ -87,6 +131,21 @@ public class Jetty9Plugin implements Plugin<Project> {
         jetty9RunWar.setGroup(WarPlugin.WEB_APP_GROUP);
     }
 
+    private void configureJetty9Bench(final Project project) {
+        project.getTasks().withType(Jetty9Bench.class, new Action<Jetty9Bench>() {
+            public void execute(Jetty9Bench jetty9Bench) {
+                jetty9Bench.getConventionMapping().map("reportDir", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return new File(project.getBuildDir(), "reports/" + JETTY9_BENCH);
+                    }
+                });
+            }
+        });
+        Jetty9Bench jetty9Bench = project.getTasks().add(JETTY9_BENCH, Jetty9Bench.class);
+        jetty9Bench.setDescription("Deploys the webapp to Jetty 9, measures throughput and latency under load and stops Jetty.");
+        jetty9Bench.setGroup(WarPlugin.WEB_APP_GROUP);
+    }
+
     private void configureJetty9Stop(Project project, final Jetty9PluginConvention jettyConvention) {
         Jetty9Stop jettyStop = project.getTasks().add(JETTY9_STOP, Jetty9Stop.class);
         jettyStop.setDescription("Stops Jetty.");
@@ -103,10 +162,42 @@ public class Jetty9Plugin implements Plugin<Project> {
         });
     }
 
-    private void configureAbstractJetty9Task(final Project project, final Jetty9PluginConvention jettyConvention, AbstractJetty9RunTask jettyTask) {
+    private void configureJetty9Commands(Project project, final Jetty9PluginConvention jettyConvention) {
+        project.getTasks().withType(Jetty9Command.class, new Action<Jetty9Command>() {
+            public void execute(Jetty9Command jettyCommand) {
+                jettyCommand.getConventionMapping().map("stopPort", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return jettyConvention.getStopPort();
+                    }
+                });
+                jettyCommand.getConventionMapping().map("stopKey", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return jettyConvention.getStopKey();
+                    }
+                });
+            }
+        });
+
+        Jetty9Command jettyRestart = project.getTasks().add(JETTY9_RESTART, Jetty9Command.class);
+        jettyRestart.setDescription("Redeploys the webapp in a running Jetty.");
+        jettyRestart.setGroup(WarPlugin.WEB_APP_GROUP);
+        jettyRestart.setCommand("restart");
+
+        Jetty9Command jettyStatus = project.getTasks().add(JETTY9_STATUS, Jetty9Command.class);
+        jettyStatus.setDescription("Shows the state of a running Jetty.");
+        jettyStatus.setGroup(WarPlugin.WEB_APP_GROUP);
+        jettyStatus.setCommand("status");
+    }
+
+    static void configureAbstractJetty9Task(final Project project, final Jetty9PluginConvention jettyConvention, final AbstractJetty9RunTask jettyTask) {
         jettyTask.setDaemon(false);
         jettyTask.setReload(RELOAD_AUTOMATIC);
         jettyTask.setScanIntervalSeconds(0);
+        jettyTask.setScanMode(SCAN_MODE_POLL);
+        jettyTask.setScanQuietPeriodMillis(300);
+        jettyTask.setScanMaxWaitMillis(5000);
+        jettyTask.setCacheJarScans(true);
+        jettyTask.setClassLoaderLeakRestarts(0);
         jettyTask.getConventionMapping().map("contextPath", new Callable<Object>() {
             public Object call() throws Exception {
                 return ((War) project.getTasks().getByName(WarPlugin.WAR_TASK_NAME)).getBaseName();
@@ -127,6 +218,26 @@ public class Jetty9Plugin implements Plugin<Project> {
                 return jettyConvention.getStopKey();
             }
         });
+        jettyTask.getConventionMapping().map("startupReportDir", new Callable<Object>() {
+            public Object call() throws Exception {
+                return new File(project.getBuildDir(), "reports/" + jettyTask.getName());
+            }
+        });
+        jettyTask.getConventionMapping().map("threadPool", new Callable<Object>() {
+            public Object call() throws Exception {
+                return jettyConvention.getThreadPool();
+            }
+        });
+        jettyTask.getConventionMapping().map("connector", new Callable<Object>() {
+            public Object call() throws Exception {
+                return jettyConvention.getConnector();
+            }
+        });
+        jettyTask.getConventionMapping().map("httpConnectors", new Callable<Object>() {
+            public Object call() throws Exception {
+                return jettyConvention.getHttpConnectors();
+            }
+        });
     }
 
     private Object getWebXml(Project project) {
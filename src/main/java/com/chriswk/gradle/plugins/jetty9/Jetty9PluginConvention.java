@@ -1,10 +1,20 @@
 package com.chriswk.gradle.plugins.jetty9;
 
+import groovy.lang.Closure;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.util.ConfigureUtil;
 
 class Jetty9PluginConvention {
     private Integer stopPort;
     private String stopKey;
     private Integer httpPort = 18080;
+    private Jetty9ThreadPool threadPool = new Jetty9ThreadPool();
+    private Jetty9Connector connector = new Jetty9Connector("default");
+    private final NamedDomainObjectContainer<Jetty9Connector> httpConnectors;
+
+    Jetty9PluginConvention(NamedDomainObjectContainer<Jetty9Connector> httpConnectors) {
+        this.httpConnectors = httpConnectors;
+    }
 
     public Integer getStopPort() {
         return stopPort;
@@ -29,4 +39,28 @@ class Jetty9PluginConvention {
     public void setHttpPort(Integer httpPort) {
         this.httpPort = httpPort;
     }
+
+    public Jetty9ThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    public void threadPool(Closure<?> closure) {
+        ConfigureUtil.configure(closure, threadPool);
+    }
+
+    public Jetty9Connector getConnector() {
+        return connector;
+    }
+
+    public void connector(Closure<?> closure) {
+        ConfigureUtil.configure(closure, connector);
+    }
+
+    public NamedDomainObjectContainer<Jetty9Connector> getHttpConnectors() {
+        return httpConnectors;
+    }
+
+    public void httpConnectors(Closure<?> closure) {
+        httpConnectors.configure(closure);
+    }
 }
@@ -0,0 +1,229 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import com.chriswk.gradle.plugins.jetty9.internal.ClasspathSnapshot;
+import com.chriswk.gradle.plugins.jetty9.internal.PrecompressIndex;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.file.ConfigurableFileTree;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.internal.ConventionTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a gzip compressed copy of each static asset in the webapp directory, at best compression, for
+ * {@link Jetty9Run} to serve to clients that accept gzip. An index in the destination directory records the size and
+ * content hash each copy was made from, which is how both this task and the server tell whether it is up to date, so
+ * only changed assets are compressed again. Assets whose copy would not be smaller are recorded too and skipped until
+ * they change. Copies of assets that were removed are deleted.
+ */
+public class Jetty9Precompress extends ConventionTask {
+    public static final String SUFFIX = ".gz";
+
+    /**
+     * The directory with the static assets.
+     */
+    private File webAppDir;
+
+    /**
+     * The directory the compressed copies are written to, in the layout of the webapp directory.
+     */
+    private File destinationDir;
+
+    /**
+     * Extensions of the assets to compress.
+     */
+    private List<String> assetExtensions = new ArrayList<String>(Arrays.asList("html", "htm", "css", "js", "json", "map",
+            "svg", "xml", "txt", "ico", "eot", "ttf"));
+
+    /**
+     * Assets smaller than this many bytes are not worth compressing.
+     */
+    private int minSize = 256;
+
+    @TaskAction
+    public void precompress() {
+        if (getWebAppDir() == null) {
+            throw new InvalidUserDataException("Please specify the webAppDir");
+        }
+        if (getDestinationDir() == null) {
+            throw new InvalidUserDataException("Please specify the destinationDir");
+        }
+
+        final File destinationDir = getDestinationDir();
+        final PrecompressIndex index = PrecompressIndex.load(destinationDir);
+        final Set<String> assets = new HashSet<String>();
+        final Set<String> expected = new HashSet<String>();
+        expected.add(PrecompressIndex.FILE_NAME);
+        final int[] counts = new int[2];
+        getAssets().visit(new FileVisitor() {
+            public void visitDir(FileVisitDetails dirDetails) {
+            }
+
+            public void visitFile(FileVisitDetails fileDetails) {
+                String path = fileDetails.getRelativePath().getPathString();
+                File source = fileDetails.getFile();
+                File target = new File(destinationDir, path + SUFFIX);
+                long size = source.length();
+                if (size < getMinSize()) {
+                    return;
+                }
+                assets.add(path);
+                try {
+                    long hash = ClasspathSnapshot.hash(source);
+                    PrecompressIndex.Entry entry = index.get(path);
+                    if (entry != null && entry.matches(size, hash) && (!entry.isCompressed() || target.isFile())) {
+                        if (entry.isCompressed()) {
+                            expected.add(path + SUFFIX);
+                        }
+                        counts[1]++;
+                        return;
+                    }
+                    boolean compressed = compress(source, target);
+                    index.put(path, size, hash, compressed);
+                    if (compressed) {
+                        expected.add(path + SUFFIX);
+                    }
+                } catch (IOException e) {
+                    throw new GradleException("Could not compress " + source, e);
+                }
+                counts[0]++;
+            }
+        });
+        index.retainAll(assets);
+        try {
+            index.save();
+        } catch (IOException e) {
+            throw new GradleException("Could not write the precompress index of " + destinationDir, e);
+        }
+
+        int removed = 0;
+        if (destinationDir.isDirectory()) {
+            final List<File> stale = new ArrayList<File>();
+            getProject().fileTree(destinationDir).visit(new FileVisitor() {
+                public void visitDir(FileVisitDetails dirDetails) {
+                }
+
+                public void visitFile(FileVisitDetails fileDetails) {
+                    if (!expected.contains(fileDetails.getRelativePath().getPathString())) {
+                        stale.add(fileDetails.getFile());
+                    }
+                }
+            });
+            for (File file : stale) {
+                if (file.delete()) {
+                    removed++;
+                }
+            }
+        }
+        getLogger().info("Compressed {} assets, {} were up to date, removed {} stale copies", counts[0], counts[1], removed);
+    }
+
+    /**
+     * Compresses the source into a temporary file next to the target and moves it into place, so the server never
+     * sees a partly written copy. Copies that would not be smaller are not kept, false is returned for those.
+     */
+    private boolean compress(File source, File target) throws IOException {
+        File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        File temporary = new File(dir, target.getName() + ".tmp");
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(temporary), 64 * 1024) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            };
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (temporary.length() >= source.length()) {
+            temporary.delete();
+            target.delete();
+            return false;
+        }
+        temporary.setLastModified(source.lastModified());
+        if (target.exists() && !target.delete() || !temporary.renameTo(target)) {
+            temporary.delete();
+            throw new IOException("Could not replace " + target);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the assets to compress. Everything below WEB-INF and META-INF is left out, it is not served.
+     */
+    @InputFiles
+    public FileTree getAssets() {
+        ConfigurableFileTree assets = getProject().fileTree(getWebAppDir());
+        for (String extension : getAssetExtensions()) {
+            assets.include("**/*." + extension);
+        }
+        assets.exclude("WEB-INF/**", "META-INF/**");
+        return assets;
+    }
+
+    public File getWebAppDir() {
+        return webAppDir;
+    }
+
+    public void setWebAppDir(File webAppDir) {
+        this.webAppDir = webAppDir;
+    }
+
+    @OutputDirectory
+    public File getDestinationDir() {
+        return destinationDir;
+    }
+
+    public void setDestinationDir(File destinationDir) {
+        this.destinationDir = destinationDir;
+    }
+
+    @Input
+    public List<String> getAssetExtensions() {
+        return assetExtensions;
+    }
+
+    public void setAssetExtensions(List<String> assetExtensions) {
+        this.assetExtensions = assetExtensions;
+    }
+
+    @Input
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+}
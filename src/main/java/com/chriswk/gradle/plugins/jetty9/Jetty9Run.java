@@ -1,8 +1,16 @@
 package com.chriswk.gradle.plugins.jetty9;
 
+import com.chriswk.gradle.plugins.jetty9.internal.DependencyClassLoaders;
+import com.chriswk.gradle.plugins.jetty9.internal.ForkedServer;
 import com.chriswk.gradle.plugins.jetty9.internal.Jetty9PluginServer;
+import com.chriswk.gradle.plugins.jetty9.internal.Jetty9PluginWebAppContext;
 import com.chriswk.gradle.plugins.jetty9.internal.JettyPluginServerEclipse;
+import com.chriswk.gradle.plugins.jetty9.internal.Monitor;
+import com.chriswk.gradle.plugins.jetty9.internal.PrecompressedResources;
+import com.chriswk.gradle.plugins.jetty9.internal.StartupTimer;
+import com.chriswk.gradle.plugins.jetty9.internal.StaticResourceCache;
 import com.google.common.collect.Sets;
+import groovy.lang.Closure;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandler;
@@ -20,6 +28,7 @@ import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Optional;
+import org.gradle.util.ConfigureUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,9 +37,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
-public class Jetty9Run extends AbstractJetty9RunTask {
+public class Jetty9Run extends AbstractJetty9RunTask implements Monitor.WarmTarget {
     private static final Logger LOGGER = LoggerFactory.getLogger(Jetty9Run.class);
 
     /**
@@ -80,8 +90,55 @@ public class Jetty9Run extends AbstractJetty9RunTask {
     private Set<File> extraScanTargets;
 
     private FileCollection classpath;
+
+    /**
+     * Keeps the dependency jars from outside the project in a class loader that lives as long as the task, so restarts
+     * only reload the project's own classes. Disabled by default.
+     */
+    private boolean cacheDependencyClassLoader;
+
+    /**
+     * The long-lived class loader for the dependency jars.
+     */
+    private DependencyClassLoaders dependencyClassLoaders;
     private Handler[] configuredContextHandlers;
 
+    /**
+     * Settings for caching the static resources of the webapp source directory in memory. Disabled when not set.
+     */
+    private Jetty9StaticCache staticCache;
+
+    private StaticResourceCache staticResourceCache;
+
+    /**
+     * Serve the gzip compressed copies of the static assets written by the jetty9Precompress task, which then runs
+     * before this task. Off by default.
+     */
+    private boolean precompress;
+
+    /**
+     * Directory with gzip compressed copies of the static assets, served to clients that accept gzip. Optional.
+     */
+    private File precompressedDirectory;
+
+    /**
+     * Whether the resource base was set up by this task from the webapp source directory.
+     */
+    private boolean servingWebAppSourceDirectory;
+
+    /**
+     * The webapp source directory the resource base was set up from, and the directory of the precompressed copies served
+     * along with it, if any.
+     */
+    private File servedWebAppSourceDirectory;
+    private File servedPrecompressedDirectory;
+
+    /**
+     * The webapp a later run handed over to this warm server. Once set, restarts configure the webapp from its files only,
+     * since the task and project of the build that started the server are not used after that build is over.
+     */
+    private Properties warmDeployment;
+
     @Override
     public void validateConfiguration() {
         // check the location of the static content/jsps etc
@@ -146,6 +203,21 @@ public class Jetty9Run extends AbstractJetty9RunTask {
                 }
             }
         }
+
+        setClassPathFiles(setUpClassPath());
+
+        Jetty9StaticCache cache = getStaticCache();
+        if (cache != null) {
+            if (cache.getMaxCacheSize() < 1 || cache.getMaxCachedFiles() < 1 || cache.getMaxCachedFileSize() < 1) {
+                throw new InvalidUserDataException("the static cache maxCacheSize, maxCachedFiles and maxCachedFileSize must be positive");
+            }
+            if (cache.isMapLargeFiles() && cache.getMaxMappedSize() < 1) {
+                throw new InvalidUserDataException("the static cache maxMappedSize must be positive when mapLargeFiles is set");
+            }
+            if (cache.getMaxCachedFileSize() > cache.getMaxCacheSize()) {
+                throw new InvalidUserDataException("the static cache maxCachedFileSize must not be larger than maxCacheSize");
+            }
+        }
     }
 
     private Set<File> getDependencyFiles() {
@@ -217,28 +289,128 @@ public class Jetty9Run extends AbstractJetty9RunTask {
         return classPathFiles;
     }
     
-    @Override
-    public void configureScanner() {
-        // start the scanner thread (if necessary) on the main webapp
+    private List<File> getScanList() {
         List<File> scanList = new ArrayList<File>();
         scanList.add(getWebXml());
         if (getJettyEnvXmlFile() != null) {
             scanList.add(getJettyEnvXmlFile());
         }
-        File jettyWebXmlFile = findJettyWebXmlFile(new File(getWebAppSourceDirectory(), "WEB-INF"));
+        File webInfDir = new File(getWebAppSourceDirectory(), "WEB-INF");
+        File jettyWebXmlFile = findJettyWebXmlFile(webInfDir);
         if (jettyWebXmlFile != null) {
             scanList.add(jettyWebXmlFile);
         }
+        scanList.add(getWebAppSourceDirectory());
+        if (getPrecompressedDirectory() != null && getPrecompressedDirectory().isDirectory()) {
+            scanList.add(getPrecompressedDirectory());
+        }
         scanList.addAll(getExtraScanTargets());
         scanList.add(getProject().getBuildFile());
         scanList.addAll(getClassPathFiles());
-        getScanner().setScanDirs(scanList);
+        return scanList;
+    }
+
+    @Override
+    public void configureWebApplication() throws Exception {
+        super.configureWebApplication();
+        Jetty9PluginWebAppContext webAppConfig = getWebAppConfig();
+        webAppConfig.setWebXmlFile(getWebXml());
+        webAppConfig.setJettyEnvXmlFile(getJettyEnvXmlFile());
+        if (webAppConfig.getBaseResource() == null) {
+            configureResourceBase(webAppConfig);
+        }
+        configureStaticCache(webAppConfig);
+
+        if (isCacheDependencyClassLoader() && dependencyClassLoaders == null) {
+            dependencyClassLoaders = new DependencyClassLoaders(getProject().getRootDir(), Thread.currentThread().getContextClassLoader());
+        }
+        configureClasspath(webAppConfig, getClassPathFiles());
+    }
+
+    private void configureClasspath(Jetty9PluginWebAppContext webAppConfig, List<File> classPathFiles) throws IOException {
+        if (dependencyClassLoaders == null) {
+            webAppConfig.setClasspathFiles(classPathFiles);
+        } else {
+            dependencyClassLoaders.configure(webAppConfig, classPathFiles);
+        }
+    }
+
+    private void configureResourceBase(Jetty9PluginWebAppContext webAppConfig) throws IOException {
+        File precompressed = getPrecompressedDirectory();
+        if (precompressed == null || !precompressed.isDirectory()) {
+            webAppConfig.setResourceBase(getWebAppSourceDirectory().getCanonicalPath());
+            servedPrecompressedDirectory = null;
+        } else {
+            PrecompressedResources.serve(webAppConfig, getWebAppSourceDirectory(), precompressed);
+            LOGGER.info("Serving precompressed assets from " + precompressed);
+            servedPrecompressedDirectory = precompressed;
+        }
+        servingWebAppSourceDirectory = true;
+        servedWebAppSourceDirectory = getWebAppSourceDirectory();
+    }
+
+    /**
+     * Hands the static resource cache to the default servlet, as long as the webapp is served from the webapp source
+     * directory.
+     */
+    private void configureStaticCache(Jetty9PluginWebAppContext webAppConfig) {
+        Jetty9StaticCache cache = getStaticCache();
+        if (cache == null && webAppConfig.getBaseResource() instanceof PrecompressedResources) {
+            // Jetty's own cache only checks a copy itself, so it would keep serving a copy after its asset changed
+            cache = new Jetty9StaticCache();
+        }
+        if (cache == null) {
+            return;
+        }
+        if (!servingWebAppSourceDirectory) {
+            LOGGER.warn("The resource base is not the webapp source directory, static resources are not cached");
+            return;
+        }
+        if (staticResourceCache == null) {
+            staticResourceCache = new StaticResourceCache(webAppConfig, cache.getMaxCacheSize(), cache.getMaxMappedSize(),
+                    cache.getMaxCachedFiles(), cache.getMaxCachedFileSize(), cache.isDirect(), cache.isMapLargeFiles());
+        }
+        webAppConfig.setAttribute(StaticResourceCache.ATTRIBUTE, staticResourceCache);
+        webAppConfig.setInitParameter(StaticResourceCache.INIT_PARAMETER, StaticResourceCache.ATTRIBUTE);
+        LOGGER.info("Caching static resources: " + staticResourceCache);
+    }
+
+    @Override
+    protected void scannerStarted() {
+        if (staticResourceCache != null) {
+            // the scanner reports changed files from now on, so cached files need not be checked on every request
+            staticResourceCache.setValidating(false);
+        }
+    }
+
+    @Override
+    public void configureScanner() {
+        // start the scanner thread (if necessary) on the main webapp
+        final String buildFile;
+        try {
+            setScanList(getScanList());
+            buildFile = getProject().getBuildFile().getCanonicalPath();
+        } catch (IOException e) {
+            throw new InvalidUserDataException("Could not watch the scan targets", e);
+        }
         List<Scanner.Listener> listeners = new ArrayList<Scanner.Listener>();
         listeners.add(new Scanner.BulkListener() {
-            public void filesChanged(List changes) {
+            public void filesChanged(List<String> changes) {
                 try {
-                    boolean reconfigure = changes.contains(getProject().getBuildFile().getCanonicalPath());
-                    restartWebApp(reconfigure);
+                    if (staticResourceCache != null) {
+                        // also covers files whose content did not change, since they may have been cached in between
+                        staticResourceCache.invalidate(changes);
+                    }
+                    Set<String> changed = getChangedContent(changes);
+                    if (changed.isEmpty()) {
+                        LOGGER.info("Content of the " + changes.size() + " changed files is unchanged, not restarting");
+                        return;
+                    }
+                    if (isStaticContent(changed)) {
+                        LOGGER.info("Only static content changed, not restarting");
+                        return;
+                    }
+                    restartWebApp(changed.contains(buildFile));
                 } catch (Exception e) {
                     LOGGER.error("Error reconfiguring/restarting webapp after change in watched files", e);
                 }
@@ -247,31 +419,161 @@ public class Jetty9Run extends AbstractJetty9RunTask {
         setScannerListeners(listeners);
     }
 
-    public void restartWebApp(boolean reconfigureScanner) throws Exception {
+    /**
+     * Returns true if all the given paths are below the webapp source directory but outside WEB-INF, or are
+     * precompressed copies, so they are served straight from disk and need no restart.
+     */
+    private boolean isStaticContent(Set<String> paths) throws IOException {
+        File webAppSourceDirectory = warmDeployment == null ? getWebAppSourceDirectory()
+                : new File(warmDeployment.getProperty(Monitor.DEPLOYMENT_WEB_APP_SOURCE_DIRECTORY));
+        String webAppDir = webAppSourceDirectory.getCanonicalPath() + File.separator;
+        String webInfDir = webAppDir + "WEB-INF" + File.separator;
+        String precompressedDir = servedPrecompressedDirectory == null ? null
+                : servedPrecompressedDirectory.getCanonicalPath() + File.separator;
+        for (String path : paths) {
+            boolean precompressed = precompressedDir != null && path.startsWith(precompressedDir);
+            if (!precompressed && (!path.startsWith(webAppDir) || path.startsWith(webInfDir))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected Properties getWarmDeployment() throws IOException {
+        Properties deployment = new Properties();
+        deployment.setProperty(Monitor.DEPLOYMENT_CONTEXT_PATH, getContextPath());
+        deployment.setProperty(Monitor.DEPLOYMENT_WEB_APP_SOURCE_DIRECTORY, getWebAppSourceDirectory().getCanonicalPath());
+        File webXml = getWebXml() != null ? getWebXml() : new File(new File(getWebAppSourceDirectory(), "WEB-INF"), "web.xml");
+        deployment.setProperty(Monitor.DEPLOYMENT_WEB_XML, webXml.getCanonicalPath());
+        if (getJettyEnvXml() != null) {
+            deployment.setProperty(Monitor.DEPLOYMENT_JETTY_ENV_XML, getJettyEnvXml().getCanonicalPath());
+        }
+        StringBuilder classpath = new StringBuilder();
+        for (File file : getClasspath().getFiles()) {
+            classpath.append(classpath.length() == 0 ? "" : File.pathSeparator).append(file.getCanonicalPath());
+        }
+        deployment.setProperty(Monitor.DEPLOYMENT_CLASSPATH, classpath.toString());
+        return deployment;
+    }
+
+    @Override
+    protected void addForkedServerSettings(Properties settings) throws Exception {
+        if (isCacheDependencyClassLoader()) {
+            settings.setProperty(ForkedServer.DEPENDENCY_CLASS_LOADER_PROJECT_ROOT, getProject().getRootDir().getCanonicalPath());
+        }
+        if (getPrecompressedDirectory() != null) {
+            settings.setProperty(ForkedServer.PRECOMPRESSED_DIRECTORY, getPrecompressedDirectory().getCanonicalPath());
+        }
+        ForkedServer.storeSettings(settings, ForkedServer.STATIC_CACHE, getStaticCache());
+    }
+
+    /**
+     * Takes over the classpath and descriptors of a later run and restarts the webapp with them. The server, and with
+     * cacheDependencyClassLoader the dependency jars that did not change, stay loaded.
+     */
+    public synchronized void deployWarm(Properties deployment) throws Exception {
+        String contextPath = deployment.getProperty(Monitor.DEPLOYMENT_CONTEXT_PATH);
+        String runningContextPath = getWebAppConfig().getContextPath();
+        if (!runningContextPath.equals(contextPath.startsWith("/") ? contextPath : "/" + contextPath)) {
+            throw new InvalidUserDataException("The warm server runs " + runningContextPath + ", stop it to run " + contextPath);
+        }
+        warmDeployment = deployment;
+        LOGGER.info("Redeploying " + contextPath + " with " + Monitor.getDeploymentClasspath(deployment).size()
+                + " classpath entries handed over by another run");
+        restartWebApp(true);
+    }
+
+    /**
+     * Restarts the webapp as described by the warm deployment, from the files it lists.
+     */
+    private void restartWarmDeployment(boolean reconfigureScanner) throws Exception {
+        long start = System.nanoTime();
+        Jetty9PluginWebAppContext webAppConfig = getWebAppConfig();
+        ClassLoader discarded = webAppConfig.getClassLoader();
+        webAppConfig.stop();
+        if (staticResourceCache != null) {
+            staticResourceCache.flushCache();
+        }
+
+        File webAppSourceDirectory = new File(warmDeployment.getProperty(Monitor.DEPLOYMENT_WEB_APP_SOURCE_DIRECTORY));
+        if (servingWebAppSourceDirectory && !webAppSourceDirectory.equals(servedWebAppSourceDirectory)) {
+            // the precompressed copies belong to the previous directory
+            webAppConfig.setBaseResource(Resource.newResource(webAppSourceDirectory.getCanonicalFile()));
+            servedWebAppSourceDirectory = webAppSourceDirectory;
+            servedPrecompressedDirectory = null;
+        }
+        File webXml = new File(warmDeployment.getProperty(Monitor.DEPLOYMENT_WEB_XML));
+        webAppConfig.setWebXmlFile(webXml);
+        String jettyEnvXml = warmDeployment.getProperty(Monitor.DEPLOYMENT_JETTY_ENV_XML);
+        webAppConfig.setJettyEnvXmlFile(jettyEnvXml == null ? null : new File(jettyEnvXml));
+        List<File> classpath = Monitor.getDeploymentClasspath(warmDeployment);
+        configureClasspath(webAppConfig, classpath);
+
+        if (reconfigureScanner) {
+            List<File> scanList = new ArrayList<File>();
+            scanList.add(webXml);
+            if (jettyEnvXml != null) {
+                scanList.add(new File(jettyEnvXml));
+            }
+            scanList.add(webAppSourceDirectory);
+            scanList.addAll(classpath);
+            setScanList(scanList);
+        }
+
+        webAppConfig.start();
+        webAppRestarted(discarded);
+        LOGGER.info("Restarted the warm deployment of " + webAppConfig.getContextPath() + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    public synchronized void restartWebApp(boolean reconfigureScanner) throws Exception {
+        if (isForked()) {
+            validateConfiguration();
+            if (reconfigureScanner) {
+                setScanList(getScanList());
+            }
+            LOGGER.info("Redeploying the webapp in the forked server");
+            redeployForked();
+            return;
+        }
+        if (warmDeployment != null) {
+            restartWarmDeployment(reconfigureScanner);
+            return;
+        }
         LOGGER.info("restarting " + getWebAppConfig());
+        StartupTimer timer = newStartupTimer("restart");
         LOGGER.debug("Stopping webapp ...");
+        ClassLoader discarded = getWebAppConfig().getClassLoader();
+        timer.begin("Stop webapp");
         getWebAppConfig().stop();
+        timer.end("Stop webapp");
         LOGGER.debug("Reconfiguring webapp ...");
 
+        if (staticResourceCache != null) {
+            staticResourceCache.flushCache();
+        }
+
+        timer.begin("Configure web application");
         validateConfiguration();
         configureWebApplication();
+        getWebAppConfig().setStartupTimer(timer);
+        timer.end("Configure web application");
 
         // check if we need to reconfigure the scanner
         if (reconfigureScanner) {
             LOGGER.info("Reconfiguring scanner ...");
-            List<File> scanList = new ArrayList<File>();
-            scanList.add(getWebXml());
-            if (getJettyEnvXmlFile() != null) {
-                scanList.add(getJettyEnvXmlFile());
-            }
-            scanList.addAll(getExtraScanTargets());
-            scanList.add(getProject().getBuildFile());
-            scanList.addAll(getClassPathFiles());
-            getScanner().setScanDirs(scanList);
+            timer.begin("Reconfigure scanner");
+            setScanList(getScanList());
+            timer.end("Reconfigure scanner");
         }
 
         LOGGER.debug("Restarting webapp ...");
+        timer.begin("Start webapp");
         getWebAppConfig().start();
+        timer.end("Start webapp");
+        timer.report(getStartupReportDir());
+        webAppRestarted(discarded);
         LOGGER.info("Restart completed at " + new Date().toString());
     }
 
@@ -288,7 +590,7 @@ public class Jetty9Run extends AbstractJetty9RunTask {
 
     @Override
     public JettyPluginServerEclipse createServer() throws Exception {
-        return new Jetty9PluginServer();
+        return new Jetty9PluginServer(createThreadPool());
     }
 
     @Override
@@ -393,6 +695,48 @@ public class Jetty9Run extends AbstractJetty9RunTask {
         this.classpath = classpath;
     }
 
+    public boolean isCacheDependencyClassLoader() {
+        return cacheDependencyClassLoader;
+    }
+
+    public void setCacheDependencyClassLoader(boolean cacheDependencyClassLoader) {
+        this.cacheDependencyClassLoader = cacheDependencyClassLoader;
+    }
+
+    public boolean isPrecompress() {
+        return precompress;
+    }
+
+    public void setPrecompress(boolean precompress) {
+        this.precompress = precompress;
+    }
+
+    public File getPrecompressedDirectory() {
+        return precompressedDirectory;
+    }
+
+    public void setPrecompressedDirectory(File precompressedDirectory) {
+        this.precompressedDirectory = precompressedDirectory;
+    }
+
+    public Jetty9StaticCache getStaticCache() {
+        return staticCache;
+    }
+
+    public void setStaticCache(Jetty9StaticCache staticCache) {
+        this.staticCache = staticCache;
+    }
+
+    /**
+     * Configures the in-memory cache of static resources of this task.
+     */
+    public void staticCache(Closure<?> closure) {
+        if (staticCache == null) {
+            staticCache = new Jetty9StaticCache();
+        }
+        ConfigureUtil.configure(closure, staticCache);
+    }
+
     public Handler[] getConfiguredContextHandlers() {
         return configuredContextHandlers;
     }
@@ -0,0 +1,136 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+import com.chriswk.gradle.plugins.jetty9.internal.Jetty9PluginServer;
+import com.chriswk.gradle.plugins.jetty9.internal.JettyPluginServerEclipse;
+import com.chriswk.gradle.plugins.jetty9.internal.StartupTimer;
+import org.eclipse.jetty.xml.XmlConfiguration;
+import org.gradle.api.InvalidUserDataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the webapps of several run tasks, by default the jetty9Run tasks of all projects in the build, in a single
+ * server. The server, its thread pool, connectors, handlers and stop port are configured on this task; the webapps are
+ * configured by their own tasks, each under its own context path. Every webapp keeps the scanner or file watcher of its
+ * task and is restarted on its own when its files change.
+ */
+public class Jetty9RunAll extends AbstractJetty9RunTask {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Jetty9RunAll.class);
+
+    /**
+     * The run tasks whose webapps are deployed.
+     */
+    private Collection<AbstractJetty9RunTask> webApps;
+
+    @Override
+    public void validateConfiguration() {
+        if (getWebApps() == null || getWebApps().isEmpty()) {
+            throw new InvalidUserDataException("There are no webapps to run, apply the jetty9 plugin to the projects to run");
+        }
+        Map<String, String> contextPaths = new HashMap<String, String>();
+        for (AbstractJetty9RunTask webApp : getWebApps()) {
+            String contextPath = webApp.getContextPath().startsWith("/") ? webApp.getContextPath() : "/" + webApp.getContextPath();
+            String other = contextPaths.put(contextPath, webApp.getPath());
+            if (other != null) {
+                throw new InvalidUserDataException("Both " + other + " and " + webApp.getPath() + " use the context path "
+                        + contextPath + ", set a different contextPath on one of them");
+            }
+        }
+        if (!"automatic".equalsIgnoreCase(reload) && !"manual".equalsIgnoreCase(reload)) {
+            throw new InvalidUserDataException("invalid reload mechanic specified, must be 'automatic' or 'manual'");
+        }
+    }
+
+    @Override
+    protected void deployWebApplication(StartupTimer timer) throws Exception {
+        for (AbstractJetty9RunTask webApp : getWebApps()) {
+            LOGGER.info("Deploying " + webApp.getPath() + " at " + webApp.getContextPath());
+            timer.begin("Configure " + webApp.getPath());
+            webApp.deployInto(getServer(), timer);
+            timer.end("Configure " + webApp.getPath());
+        }
+    }
+
+    @Override
+    public void startChangeDetection() throws Exception {
+        for (AbstractJetty9RunTask webApp : getWebApps()) {
+            webApp.startChangeDetection();
+        }
+    }
+
+    @Override
+    public void stopChangeDetection() {
+        for (AbstractJetty9RunTask webApp : getWebApps()) {
+            webApp.stopChangeDetection();
+        }
+    }
+
+    @Override
+    public void configureScanner() {
+        // every webapp is scanned by its own task
+    }
+
+    /**
+     * Restarts all webapps, for the console and the restart command. Changes only restart the webapp they belong to.
+     */
+    @Override
+    public synchronized void restartWebApp(boolean reconfigureScanner) throws Exception {
+        LOGGER.info("Restarting " + getWebApps().size() + " webapps ...");
+        for (AbstractJetty9RunTask webApp : getWebApps()) {
+            webApp.restartWebApp(reconfigureScanner);
+        }
+        LOGGER.info("Restart of all webapps completed at " + new Date().toString());
+    }
+
+    @Override
+    public void applyJettyXml() throws Exception {
+        if (getJettyConfig() == null) {
+            return;
+        }
+
+        LOGGER.info("Configuring Jetty from xml configuration file = " + getJettyConfig());
+        XmlConfiguration xmlConfiguration = new XmlConfiguration(getJettyConfig().toURI().toURL());
+        xmlConfiguration.configure(getServer().getProxiedObject());
+    }
+
+    @Override
+    public JettyPluginServerEclipse createServer() throws Exception {
+        return new Jetty9PluginServer(createThreadPool());
+    }
+
+    @Override
+    public void finishConfigurationBeforeStart() throws Exception {
+        for (AbstractJetty9RunTask webApp : getWebApps()) {
+            webApp.finishConfigurationBeforeStart();
+        }
+    }
+
+    public Collection<AbstractJetty9RunTask> getWebApps() {
+        return webApps;
+    }
+
+    public void setWebApps(Collection<AbstractJetty9RunTask> webApps) {
+        this.webApps = webApps;
+    }
+
+    /**
+     * Adds run tasks whose webapps are deployed.
+     */
+    public void webApps(AbstractJetty9RunTask... tasks) {
+        List<AbstractJetty9RunTask> all = new ArrayList<AbstractJetty9RunTask>();
+        if (getWebApps() != null) {
+            all.addAll(getWebApps());
+        }
+        for (AbstractJetty9RunTask task : tasks) {
+            all.add(task);
+        }
+        setWebApps(all);
+    }
+}
@@ -1,49 +1,94 @@
 package com.chriswk.gradle.plugins.jetty9;
 
+import com.chriswk.gradle.plugins.jetty9.internal.ExplodedWarCache;
 import com.chriswk.gradle.plugins.jetty9.internal.Jetty9PluginServer;
 import com.chriswk.gradle.plugins.jetty9.internal.JettyPluginServerEclipse;
+import com.chriswk.gradle.plugins.jetty9.internal.StartupTimer;
 import org.eclipse.jetty.util.Scanner;
 import org.eclipse.jetty.xml.XmlConfiguration;
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.tasks.InputFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 public class Jetty9RunWar extends AbstractJetty9RunTask {
     private static final Logger LOGGER = LoggerFactory.getLogger(Jetty9RunWar.class);
 
+    /**
+     * Extensions of the JSPs and static files in WEB-INF and META-INF that are picked up without a restart.
+     */
+    private static final Set<String> RELOADABLE_EXTENSIONS = new HashSet<String>(Arrays.asList("jsp", "jspx", "jspf",
+            "html", "htm", "css", "js", "map", "txt", "png", "gif", "jpg", "jpeg", "svg", "ico", "woff", "woff2", "ttf", "eot"));
+
 
     /**
      * The location of the war file.
      */
     private File webApp;
 
+    /**
+     * Whether the war is kept extracted in the temporary dir across runs, so only entries that changed are written
+     * again and an unchanged war is deployed without extracting it. Enabled by default.
+     */
+    private boolean cacheExplodedWar = true;
+
+    private ExplodedWarCache explodedWarCache;
+
     public void configureWebApplication() throws Exception {
         super.configureWebApplication();
-        getWebAppConfig().setWar(getWebApp().getCanonicalPath());
-        getWebAppConfig().configure();
+        if (isCacheExplodedWar() && getTemporaryDir() != null) {
+            if (explodedWarCache == null) {
+                explodedWarCache = new ExplodedWarCache(new File(getTemporaryDir(), "exploded-war"));
+            }
+            explodedWarCache.update(getWebApp());
+            getWebAppConfig().setWar(explodedWarCache.getDirectory().getCanonicalPath());
+        } else {
+            getWebAppConfig().setWar(getWebApp().getCanonicalPath());
+        }
     }
 
     public void validateConfiguration() {
     }
 
-    public void configureScanner() {
+    private List<File> getScanList() {
         List<File> scanList = new ArrayList<File>();
         scanList.add(getProject().getBuildFile());
         scanList.add(getWebApp());
-        getScanner().setScanDirs(scanList);
+        return scanList;
+    }
+
+    public void configureScanner() {
+        try {
+            setScanList(getScanList());
+        } catch (IOException e) {
+            throw new InvalidUserDataException("Could not watch the scan targets", e);
+        }
 
         List<Scanner.Listener> listeners = new ArrayList<Scanner.Listener>();
         listeners.add(new Scanner.BulkListener() {
-            public void filesChanged(List changes) {
+            public void filesChanged(List<String> changes) {
                 try {
-                    boolean reconfigure = changes.contains(getProject().getBuildFile().getCanonicalPath());
+                    Set<String> changed = getChangedContent(changes);
+                    if (changed.isEmpty()) {
+                        LOGGER.info("Content of the " + changes.size() + " changed files is unchanged, not restarting");
+                        return;
+                    }
+                    boolean reconfigure = changed.contains(getProject().getBuildFile().getCanonicalPath());
+                    if (!reconfigure && explodedWarCache != null && redeployStaticChanges()) {
+                        return;
+                    }
                     restartWebApp(reconfigure);
                 } catch (Exception e) {
-                    LOGGER.error("Error reconfiguring/restarting webapp after change in watched files");
+                    LOGGER.error("Error reconfiguring/restarting webapp after change in watched files", e);
                 }
             }
         });
@@ -51,24 +96,77 @@ public class Jetty9RunWar extends AbstractJetty9RunTask {
         setScannerListeners(listeners);
     }
 
-    public void restartWebApp(boolean reconfigureScanner) throws Exception {
+    /**
+     * Refreshes the extracted war in place if only static resources changed, which the default servlet picks up on the
+     * next request since it checks cached files against their size and modification time. Returns false if classes,
+     * jars or descriptors changed and the webapp has to be restarted.
+     */
+    private boolean redeployStaticChanges() throws IOException {
+        Set<String> entries = explodedWarCache.diff(getWebApp());
+        if (entries.isEmpty()) {
+            LOGGER.info("Content of the war is unchanged, not restarting");
+            return true;
+        }
+        for (String entry : entries) {
+            if (requiresRestart(entry)) {
+                LOGGER.info("War entry " + entry + " changed, restarting the webapp for " + entries.size() + " changed entries");
+                return false;
+            }
+        }
+        explodedWarCache.update(getWebApp());
+        LOGGER.info("Refreshed " + entries.size() + " static resources without restarting the webapp");
+        return true;
+    }
+
+    /**
+     * Returns whether a change to the given war entry needs a restart of the webapp: classes, jars, TLDs and everything
+     * else in WEB-INF and META-INF except JSPs and static files, which are picked up without one.
+     */
+    static boolean requiresRestart(String entry) {
+        if (entry.startsWith("WEB-INF/classes/") || entry.startsWith("WEB-INF/lib/") || entry.endsWith(".tld")) {
+            return true;
+        }
+        if (entry.startsWith("WEB-INF/") || entry.startsWith("META-INF/")) {
+            int dot = entry.lastIndexOf('.');
+            return dot < entry.lastIndexOf('/') || !RELOADABLE_EXTENSIONS.contains(entry.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+        }
+        return false;
+    }
+
+    public synchronized void restartWebApp(boolean reconfigureScanner) throws Exception {
         LOGGER.info("Restarting webapp ...");
+        StartupTimer timer = newStartupTimer("restart");
         LOGGER.debug("Stopping webapp ...");
+        ClassLoader discarded = getWebAppConfig().getClassLoader();
+        timer.begin("Stop webapp");
         getWebAppConfig().stop();
+        timer.end("Stop webapp");
         LOGGER.debug("Reconfiguring webapp ...");
 
+        timer.begin("Configure web application");
         validateConfiguration();
+        getWebAppConfig().setStartupTimer(timer);
+        timer.end("Configure web application");
+
+        if (explodedWarCache != null) {
+            timer.begin("Update exploded war");
+            explodedWarCache.update(getWebApp());
+            timer.end("Update exploded war");
+        }
 
         if (reconfigureScanner) {
             LOGGER.info("Reconfiguring scanner");
-            List<File> scanList = new ArrayList<File>();
-            scanList.add(getProject().getBuildFile());
-            scanList.add(getWebApp());
-            getScanner().setScanDirs(scanList);
+            timer.begin("Reconfigure scanner");
+            setScanList(getScanList());
+            timer.end("Reconfigure scanner");
         }
 
         LOGGER.debug("Restarting webapp ...");
+        timer.begin("Start webapp");
         getWebAppConfig().start();
+        timer.end("Start webapp");
+        timer.report(getStartupReportDir());
+        webAppRestarted(discarded);
         LOGGER.info("Restart completed");
     }
 
@@ -87,6 +185,14 @@ public class Jetty9RunWar extends AbstractJetty9RunTask {
         this.webApp = webApp;
     }
 
+    public boolean isCacheExplodedWar() {
+        return cacheExplodedWar;
+    }
+
+    public void setCacheExplodedWar(boolean cacheExplodedWar) {
+        this.cacheExplodedWar = cacheExplodedWar;
+    }
+
     public void applyJettyXml() throws Exception {
 
         if (getJettyConfig() == null) {
@@ -99,7 +205,7 @@ public class Jetty9RunWar extends AbstractJetty9RunTask {
     }
 
     public JettyPluginServerEclipse createServer() throws Exception {
-        return new Jetty9PluginServer();
+        return new Jetty9PluginServer(createThreadPool());
     }
 
 }
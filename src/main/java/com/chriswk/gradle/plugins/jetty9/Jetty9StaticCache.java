@@ -0,0 +1,87 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+/**
+ * Settings for the in-memory cache of static resources from the webapp source directory. Entries stay cached until the
+ * scanner reports a change to their file, or until the least recently used ones are evicted to stay within the limits.
+ */
+public class Jetty9StaticCache {
+    /**
+     * Total number of bytes of file content held in heap or direct buffers. Memory-mapped files count against
+     * maxMappedSize instead.
+     */
+    private long maxCacheSize = 64L * 1024 * 1024;
+
+    /**
+     * Total number of bytes of memory-mapped files. Larger files are served from disk.
+     */
+    private long maxMappedSize = 256L * 1024 * 1024;
+
+    /**
+     * Maximum number of cached files, including memory-mapped ones.
+     */
+    private int maxCachedFiles = 2048;
+
+    /**
+     * Files up to this size are read into heap or direct buffers, larger files are memory-mapped.
+     */
+    private int maxCachedFileSize = 1024 * 1024;
+
+    /**
+     * Read small files into direct buffers instead of heap buffers.
+     */
+    private boolean direct;
+
+    /**
+     * Memory-map files larger than maxCachedFileSize. Otherwise they are served from disk on every request. Mapped files
+     * cannot be replaced or deleted on Windows while they are cached.
+     */
+    private boolean mapLargeFiles = true;
+
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    public void setMaxCacheSize(long maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    public long getMaxMappedSize() {
+        return maxMappedSize;
+    }
+
+    public void setMaxMappedSize(long maxMappedSize) {
+        this.maxMappedSize = maxMappedSize;
+    }
+
+    public int getMaxCachedFiles() {
+        return maxCachedFiles;
+    }
+
+    public void setMaxCachedFiles(int maxCachedFiles) {
+        this.maxCachedFiles = maxCachedFiles;
+    }
+
+    public int getMaxCachedFileSize() {
+        return maxCachedFileSize;
+    }
+
+    public void setMaxCachedFileSize(int maxCachedFileSize) {
+        this.maxCachedFileSize = maxCachedFileSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public void setDirect(boolean direct) {
+        this.direct = direct;
+    }
+
+    public boolean isMapLargeFiles() {
+        return mapLargeFiles;
+    }
+
+    public void setMapLargeFiles(boolean mapLargeFiles) {
+        this.mapLargeFiles = mapLargeFiles;
+    }
+}
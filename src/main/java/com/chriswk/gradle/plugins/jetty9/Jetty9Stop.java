@@ -1,5 +1,7 @@
 package com.chriswk.gradle.plugins.jetty9;
 
+import com.chriswk.gradle.plugins.jetty9.internal.MonitorClient;
+import org.gradle.api.GradleException;
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.internal.ConventionTask;
 import org.gradle.api.tasks.TaskAction;
@@ -8,10 +10,8 @@ import org.gradle.logging.ProgressLoggerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.OutputStream;
+import java.io.IOException;
 import java.net.ConnectException;
-import java.net.InetAddress;
-import java.net.Socket;
 
 public class Jetty9Stop extends ConventionTask {
     private static Logger LOGGER = LoggerFactory.getLogger(Jetty9Stop.class);
@@ -20,6 +20,8 @@ public class Jetty9Stop extends ConventionTask {
 
     private String stopKey;
 
+    private Integer stopTimeoutSeconds = 120;
+
     @TaskAction
     public void stop() {
         if (getStopPort() == null) {
@@ -34,17 +36,24 @@ public class Jetty9Stop extends ConventionTask {
         progressLogger.setShortDescription("Stopping Jetty");
         progressLogger.started();
         try {
-            Socket s = new Socket(InetAddress.getByName("127.0.0.1"), getStopPort());
-            s.setSoLinger(false, 0);
-
-            OutputStream out = s.getOutputStream();
-            out.write((getStopKey() + "\r\nstop\r\n").getBytes());
-            out.flush();
-            s.close();
+            MonitorClient client = new MonitorClient(getStopPort(), getStopKey(), getStopTimeoutSeconds() * 1000);
+            String reply = client.send("stop");
+            if (!MonitorClient.isOk(reply)) {
+                throw new GradleException("Jetty could not be stopped: " + reply);
+            }
+            getLogger().lifecycle("Jetty stopped: " + reply);
+            progressLogger.progress("Waiting for Jetty to release its ports");
+            if (!client.awaitPortsReleased(MonitorClient.getPorts(reply), getStopTimeoutSeconds() * 1000L)) {
+                throw new GradleException("Jetty stopped but its ports were not released within " + getStopTimeoutSeconds()
+                        + " seconds");
+            }
         } catch (ConnectException e) {
             LOGGER.info("Jetty not running!");
-        } catch (Exception e) {
-            LOGGER.error("Exception during stopping", e);
+        } catch (IOException e) {
+            throw new GradleException("Could not stop Jetty", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while waiting for Jetty to release its ports", e);
         } finally {
             progressLogger.completed();
         }
@@ -79,4 +88,16 @@ public class Jetty9Stop extends ConventionTask {
     public void setStopKey(String stopKey) {
         this.stopKey = stopKey;
     }
+
+    /**
+     * Returns how long to wait for the server to stop and release its ports. Should be longer than the server's
+     * graceful stop timeout. Defaults to 120 seconds.
+     */
+    public Integer getStopTimeoutSeconds() {
+        return stopTimeoutSeconds;
+    }
+
+    public void setStopTimeoutSeconds(Integer stopTimeoutSeconds) {
+        this.stopTimeoutSeconds = stopTimeoutSeconds;
+    }
 }
@@ -0,0 +1,86 @@
+package com.chriswk.gradle.plugins.jetty9;
+
+/**
+ * Settings for the thread pool of the embedded Jetty server. Unset values keep Jetty's defaults.
+ */
+public class Jetty9ThreadPool {
+    /**
+     * Minimum number of threads kept in the pool.
+     */
+    private Integer minThreads;
+
+    /**
+     * Maximum number of threads in the pool.
+     */
+    private Integer maxThreads;
+
+    /**
+     * Time in milliseconds after which idle threads above minThreads are stopped.
+     */
+    private Integer idleTimeout;
+
+    /**
+     * Capacity of the queue of jobs waiting for a thread. Unbounded if not set.
+     */
+    private Integer maxQueued;
+
+    /**
+     * Run every job on a new virtual thread instead of a pooled platform thread. Requires a JDK with virtual threads,
+     * the other settings are ignored.
+     */
+    private boolean virtualThreads;
+
+    public Integer getMinThreads() {
+        return minThreads;
+    }
+
+    public void setMinThreads(Integer minThreads) {
+        this.minThreads = minThreads;
+    }
+
+    public Integer getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(Integer maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    public Integer getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Integer idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public Integer getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(Integer maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Copies all settings from the given thread pool settings.
+     */
+    public void copyFrom(Jetty9ThreadPool other) {
+        if (other == null) {
+            return;
+        }
+        this.minThreads = other.minThreads;
+        this.maxThreads = other.maxThreads;
+        this.idleTimeout = other.idleTimeout;
+        this.maxQueued = other.maxQueued;
+        this.virtualThreads = other.virtualThreads;
+    }
+}
@@ -0,0 +1,469 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import com.chriswk.gradle.plugins.jetty9.Jetty9AsyncRequestLog;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Authentication;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Request log that keeps formatting and file writes off the request threads. A request thread only copies the fields
+ * of the request into a preallocated slot of a bounded lock-free ring buffer; a background thread drains the buffer in
+ * batches, formats the entries and writes them through a {@link FileChannel}.
+ * <p/>
+ * When the buffer is full, entries are either dropped and counted, or the request thread waits for room. Entries are
+ * written as NCSA extended log lines with the latency in milliseconds appended, or as compact binary records that
+ * {@link #toNcsa(File, Appendable)} turns back into text. Binary records refer back to strings written earlier in the
+ * same run, so repeated methods, paths, addresses and user agents take two bytes each.
+ */
+public class AsyncRequestLog extends AbstractLifeCycle implements RequestLog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncRequestLog.class);
+
+    /**
+     * "J9RL", the first four bytes of a binary log.
+     */
+    static final int BINARY_MAGIC = 0x4a39524c;
+    static final int BINARY_VERSION = 1;
+    private static final byte RECORD_SESSION = 0;
+    private static final byte RECORD_ENTRY = 1;
+    private static final int MAX_BINARY_FIELD_BYTES = 2048;
+    private static final int MAX_BINARY_RECORD_BYTES = 1 + 8 + 4 + 2 + 8 + 8 * (2 + MAX_BINARY_FIELD_BYTES);
+    private static final int MAX_DICTIONARY_SIZE = Short.MAX_VALUE - 1;
+
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long DROP_WARNING_INTERVAL_MILLIS = 10000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final boolean append;
+    private final boolean block;
+    private final boolean binary;
+
+    /**
+     * The ring buffer. The sequence of a slot tells whose turn it is: equal to the position of the next entry to go in
+     * the slot it is free for that producer, one more it holds that entry for the writer.
+     */
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+
+    private volatile boolean running;
+    private FileChannel channel;
+    private Thread writer;
+
+    // used by the writer thread only
+    private final Formatter formatter = new Formatter();
+    private final StringBuilder line = new StringBuilder(256);
+    private final CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+    /**
+     * Creates the request log configured by the task settings, writing to the given file.
+     */
+    public static AsyncRequestLog create(Jetty9AsyncRequestLog settings, File file) {
+        return new AsyncRequestLog(file, settings.isAppend(), settings.getBufferSize(),
+                Jetty9AsyncRequestLog.OVERFLOW_BLOCK.equalsIgnoreCase(settings.getOverflow()),
+                Jetty9AsyncRequestLog.FORMAT_BINARY.equalsIgnoreCase(settings.getFormat()));
+    }
+
+    public AsyncRequestLog(File file, boolean append, int bufferSize, boolean block, boolean binary) {
+        this.file = file;
+        this.append = append;
+        this.block = block;
+        this.binary = binary;
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        this.entries = new Entry[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+    }
+
+    @Override
+    public void log(Request request, Response response) {
+        if (!running) {
+            return;
+        }
+        long position = claim();
+        if (position < 0) {
+            return;
+        }
+        int index = (int) position & mask;
+        entries[index].fill(request, response);
+        sequences.lazySet(index, position + 1);
+    }
+
+    /**
+     * Reserves the slot for the next entry, returning its position, or -1 if the entry is dropped.
+     */
+    private long claim() {
+        while (true) {
+            long position = tail.get();
+            long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            } else if (sequence < position) {
+                // the writer has not freed the slot yet, the buffer is full
+                if (!block || !running) {
+                    dropped.incrementAndGet();
+                    return -1;
+                }
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        if (!append) {
+            out.setLength(0);
+        }
+        channel = out.getChannel();
+        channel.position(channel.size());
+        if (binary) {
+            // each run starts a session with an empty string dictionary
+            dictionary.clear();
+            ByteBuffer header = ByteBuffer.allocate(9);
+            if (channel.size() == 0) {
+                header.putInt(BINARY_MAGIC).putInt(BINARY_VERSION);
+            }
+            header.put(RECORD_SESSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+
+        running = true;
+        writer = new Thread("Jetty9 request log writer") {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+        LOGGER.info("Logging requests to " + file + (binary ? " in binary format" : ""));
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            writer.join();
+            writer = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        LOGGER.info("Request log " + file + ": " + written + " entries written, " + dropped.get() + " dropped");
+    }
+
+    private void drain() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        long reportedDrops = 0;
+        long lastDropWarning = 0;
+        try {
+            while (true) {
+                // read the flag before draining, so entries logged before the stop are still written
+                boolean stopping = !running;
+                int count = 0;
+                while (true) {
+                    int index = (int) head & mask;
+                    if (sequences.get(index) != head + 1) {
+                        break;
+                    }
+                    Entry entry = entries[index];
+                    if (binary) {
+                        encodeBinary(entry, buffer);
+                    } else {
+                        encodeNcsa(entry, buffer);
+                    }
+                    entry.clear();
+                    sequences.lazySet(index, head + entries.length);
+                    head++;
+                    count++;
+                }
+                flush(buffer);
+                written += count;
+
+                long drops = dropped.get();
+                if (drops > reportedDrops && System.currentTimeMillis() - lastDropWarning > DROP_WARNING_INTERVAL_MILLIS) {
+                    LOGGER.warn("Request log buffer full, " + drops + " entries dropped so far");
+                    reportedDrops = drops;
+                    lastDropWarning = System.currentTimeMillis();
+                }
+                if (stopping) {
+                    return;
+                }
+                if (count == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not write the request log " + file + ", no more requests are logged", e);
+            running = false;
+        }
+    }
+
+    private void encodeNcsa(Entry entry, ByteBuffer buffer) throws IOException {
+        line.setLength(0);
+        formatter.formatNcsa(entry, line);
+        CharBuffer chars = CharBuffer.wrap(line);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            flush(buffer);
+        }
+    }
+
+    private void encodeBinary(Entry entry, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < MAX_BINARY_RECORD_BYTES) {
+            flush(buffer);
+        }
+        buffer.put(RECORD_ENTRY).putLong(entry.timestamp).putInt(entry.latency).putShort((short) entry.status).putLong(entry.bytes);
+        putField(entry.remoteAddr, buffer);
+        putField(entry.user, buffer);
+        putField(entry.method, buffer);
+        putField(entry.uri, buffer);
+        putField(entry.query, buffer);
+        putField(entry.protocol, buffer);
+        putField(entry.referer, buffer);
+        putField(entry.userAgent, buffer);
+    }
+
+    /**
+     * Writes a string as a reference to an earlier occurrence if there is one, or as its length and UTF-8 bytes, which
+     * are then remembered. -1 stands for null.
+     */
+    private void putField(String field, ByteBuffer buffer) {
+        if (field == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        Integer index = dictionary.get(field);
+        if (index != null) {
+            buffer.putShort((short) (-2 - index));
+            return;
+        }
+        byte[] bytes = field.getBytes(UTF_8);
+        int length = Math.min(bytes.length, MAX_BINARY_FIELD_BYTES);
+        buffer.putShort((short) length).put(bytes, 0, length);
+        if (dictionary.size() < MAX_DICTIONARY_SIZE && bytes.length < MAX_BINARY_FIELD_BYTES) {
+            dictionary.put(field, dictionary.size());
+        }
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the entries of a binary request log as NCSA lines.
+     */
+    public static void toNcsa(File binaryLog, Appendable out) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(binaryLog)));
+        try {
+            if (in.readInt() != BINARY_MAGIC || in.readInt() != BINARY_VERSION) {
+                throw new IOException(binaryLog + " is not a binary request log");
+            }
+            Formatter formatter = new Formatter();
+            Entry entry = new Entry();
+            List<String> dictionary = new ArrayList<String>();
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                int record = in.read();
+                if (record < 0) {
+                    return;
+                }
+                if (record == RECORD_SESSION) {
+                    dictionary.clear();
+                    continue;
+                }
+                if (record != RECORD_ENTRY) {
+                    throw new IOException(binaryLog + " is corrupt, unknown record type " + record);
+                }
+                entry.timestamp = in.readLong();
+                entry.latency = in.readInt();
+                entry.status = in.readShort();
+                entry.bytes = in.readLong();
+                entry.remoteAddr = readField(in, dictionary);
+                entry.user = readField(in, dictionary);
+                entry.method = readField(in, dictionary);
+                entry.uri = readField(in, dictionary);
+                entry.query = readField(in, dictionary);
+                entry.protocol = readField(in, dictionary);
+                entry.referer = readField(in, dictionary);
+                entry.userAgent = readField(in, dictionary);
+                line.setLength(0);
+                formatter.formatNcsa(entry, line);
+                out.append(line);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String readField(DataInputStream in, List<String> dictionary) throws IOException {
+        int length = in.readShort();
+        if (length == -1) {
+            return null;
+        }
+        if (length < -1) {
+            return dictionary.get(-2 - length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        String field = new String(bytes, UTF_8);
+        if (dictionary.size() < MAX_DICTIONARY_SIZE && length < MAX_BINARY_FIELD_BYTES) {
+            dictionary.add(field);
+        }
+        return field;
+    }
+
+    /**
+     * The fields of one request. Only references to strings the request already holds are copied.
+     */
+    private static class Entry {
+        private long timestamp;
+        private int latency;
+        private int status;
+        private long bytes;
+        private String remoteAddr;
+        private String user;
+        private String method;
+        private String uri;
+        private String query;
+        private String protocol;
+        private String referer;
+        private String userAgent;
+
+        private void fill(Request request, Response response) {
+            long now = System.currentTimeMillis();
+            timestamp = request.getTimeStamp() > 0 ? request.getTimeStamp() : now;
+            latency = (int) (now - timestamp);
+            status = response.getStatus() == 0 ? 200 : response.getStatus();
+            bytes = Math.max(response.getContentCount(), response.getHttpFields().getLongField(HttpHeader.CONTENT_LENGTH.asString()));
+            remoteAddr = request.getRemoteAddr();
+            Authentication authentication = request.getAuthentication();
+            user = authentication instanceof Authentication.User
+                    ? ((Authentication.User) authentication).getUserIdentity().getUserPrincipal().getName() : null;
+            method = request.getMethod();
+            uri = request.getRequestURI();
+            query = request.getQueryString();
+            protocol = request.getProtocol();
+            referer = request.getHeader(HttpHeader.REFERER.asString());
+            userAgent = request.getHeader(HttpHeader.USER_AGENT.asString());
+        }
+
+        /**
+         * Drops the references so the request's strings can be collected.
+         */
+        private void clear() {
+            remoteAddr = null;
+            user = null;
+            method = null;
+            uri = null;
+            query = null;
+            protocol = null;
+            referer = null;
+            userAgent = null;
+        }
+    }
+
+    /**
+     * Formats entries as NCSA lines, caching the formatted date. Used by one thread only.
+     */
+    private static class Formatter {
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+        private long dateSecond = -1;
+        private String date;
+
+        private Formatter() {
+            dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        }
+
+        private void formatNcsa(Entry entry, StringBuilder line) {
+            long second = entry.timestamp / 1000;
+            if (second != dateSecond) {
+                date = dateFormat.format(new Date(entry.timestamp));
+                dateSecond = second;
+            }
+            line.append(entry.remoteAddr == null ? "-" : entry.remoteAddr)
+                    .append(" - ").append(entry.user == null ? "-" : entry.user)
+                    .append(" [").append(date).append("] \"")
+                    .append(entry.method).append(' ').append(entry.uri);
+            if (entry.query != null) {
+                line.append('?').append(entry.query);
+            }
+            line.append(' ').append(entry.protocol).append("\" ").append(entry.status).append(' ');
+            if (entry.bytes >= 0) {
+                line.append(entry.bytes);
+            } else {
+                line.append('-');
+            }
+            line.append(" \"").append(entry.referer == null ? "-" : entry.referer)
+                    .append("\" \"").append(entry.userAgent == null ? "-" : entry.userAgent)
+                    .append("\" ").append(entry.latency).append('\n');
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes the result of a jetty9Bench run as bench.json, for tools comparing runs in CI, and as index.html.
+ */
+public class BenchReport {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final LoadGenerator.Result result;
+    private final int connections;
+    private final int warmupSeconds;
+    private final String timestamp;
+
+    public BenchReport(LoadGenerator.Result result, int connections, int warmupSeconds) {
+        this.result = result;
+        this.connections = connections;
+        this.warmupSeconds = warmupSeconds;
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        this.timestamp = format.format(new Date());
+    }
+
+    public void write(File reportDir) throws IOException {
+        if (!reportDir.isDirectory() && !reportDir.mkdirs()) {
+            throw new IOException("Could not create report directory " + reportDir);
+        }
+        write(new File(reportDir, "bench.json"), toJson());
+        write(new File(reportDir, "index.html"), toHtml());
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"timestamp\": \"").append(timestamp).append("\",\n");
+        json.append("  \"connections\": ").append(connections).append(",\n");
+        json.append("  \"warmupSeconds\": ").append(warmupSeconds).append(",\n");
+        json.append("  \"durationSeconds\": ").append(format(result.getDurationNanos() / 1e9)).append(",\n");
+        json.append("  \"requests\": ").append(result.getOverall().getCount()).append(",\n");
+        json.append("  \"errors\": ").append(result.getErrors()).append(",\n");
+        json.append("  \"connectErrors\": ").append(result.getConnectErrors()).append(",\n");
+        json.append("  \"throughput\": ").append(format(result.getThroughput())).append(",\n");
+        json.append("  \"latencyMillis\": ");
+        appendLatencies(json, result.getOverall());
+        json.append(",\n  \"urls\": [");
+        for (int i = 0; i < result.getPaths().size(); i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"url\": \"").append(escapeJson(result.getPaths().get(i))).append("\", ");
+            json.append("\"requests\": ").append(result.getLatencies(i).getCount()).append(", ");
+            json.append("\"errors\": ").append(result.getErrors(i)).append(", ");
+            json.append("\"throughput\": ").append(format(result.getThroughput(i))).append(", ");
+            json.append("\"latencyMillis\": ");
+            appendLatencies(json, result.getLatencies(i));
+            json.append("}");
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static void appendLatencies(StringBuilder json, LatencyHistogram histogram) {
+        json.append("{\"mean\": ").append(millis((long) histogram.getMean()));
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            json.append(", \"").append(PERCENTILE_NAMES[i]).append("\": ").append(millis(histogram.getPercentile(PERCENTILES[i])));
+        }
+        json.append(", \"max\": ").append(millis(histogram.getMax())).append("}");
+    }
+
+    String toHtml() {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>jetty9Bench</title>\n");
+        html.append("<style>body{font-family:sans-serif}table{border-collapse:collapse}td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}td:first-child,th:first-child{text-align:left}</style>\n");
+        html.append("</head>\n<body>\n<h1>jetty9Bench</h1>\n");
+        html.append("<p>").append(timestamp).append(", ").append(connections).append(" connections, ")
+                .append(warmupSeconds).append(" s warm-up, ").append(format(result.getDurationNanos() / 1e9)).append(" s measured, ")
+                .append(result.getConnectErrors()).append(" connect errors</p>\n");
+        html.append("<table>\n<tr><th>url</th><th>requests</th><th>errors</th><th>req/s</th><th>mean ms</th>");
+        for (String name : PERCENTILE_NAMES) {
+            html.append("<th>").append(name).append(" ms</th>");
+        }
+        html.append("<th>max ms</th></tr>\n");
+        appendRow(html, "all", result.getOverall(), result.getErrors(), result.getThroughput());
+        for (int i = 0; i < result.getPaths().size(); i++) {
+            appendRow(html, result.getPaths().get(i), result.getLatencies(i), result.getErrors(i), result.getThroughput(i));
+        }
+        html.append("</table>\n</body>\n</html>\n");
+        return html.toString();
+    }
+
+    private static void appendRow(StringBuilder html, String url, LatencyHistogram histogram, long errors, double throughput) {
+        html.append("<tr><td>").append(escapeHtml(url)).append("</td><td>").append(histogram.getCount())
+                .append("</td><td>").append(errors).append("</td><td>").append(format(throughput))
+                .append("</td><td>").append(millis((long) histogram.getMean())).append("</td>");
+        for (double percentile : PERCENTILES) {
+            html.append("<td>").append(millis(histogram.getPercentile(percentile))).append("</td>");
+        }
+        html.append("<td>").append(millis(histogram.getMax())).append("</td></tr>\n");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1e6);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.1f", value);
+    }
+
+    private static String escapeJson(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String escapeHtml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
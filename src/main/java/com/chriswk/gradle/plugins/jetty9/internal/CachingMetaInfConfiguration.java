@@ -0,0 +1,168 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.webapp.MetaInfConfiguration;
+import org.eclipse.jetty.webapp.WebAppContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Looks for web fragments, META-INF/resources and TLDs in the webapp's jars, including the jars on the Gradle
+ * classpath, and consults a {@link JarScanCache} so unchanged jars are not reopened on every start. Jars can be scanned
+ * in parallel; their contributions are always registered in classpath order so descriptor precedence does not change.
+ */
+public class CachingMetaInfConfiguration extends MetaInfConfiguration {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingMetaInfConfiguration.class);
+
+    private JarScanCache jarScanCache;
+    private boolean parallel;
+
+    public void setJarScanCache(JarScanCache jarScanCache) {
+        this.jarScanCache = jarScanCache;
+    }
+
+    /**
+     * Scan jars on a fork/join pool sized to the available processors instead of one after the other.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void preConfigure(WebAppContext context) throws Exception {
+        StartupTimer startupTimer = context instanceof Jetty9PluginWebAppContext ? ((Jetty9PluginWebAppContext) context).getStartupTimer() : null;
+        if (startupTimer != null) {
+            startupTimer.begin("Jar scan");
+        }
+        long start = System.nanoTime();
+        Map<URI, File> jars = findJars(context);
+        List<JarScanCache.Result> results;
+        try {
+            results = parallel && jars.size() > 1 ? scanParallel(jars.values()) : scan(jars.values());
+        } finally {
+            if (startupTimer != null) {
+                startupTimer.end("Jar scan");
+            }
+        }
+        Iterator<JarScanCache.Result> result = results.iterator();
+        for (URI jarUri : jars.keySet()) {
+            apply(context, jarUri, result.next());
+        }
+        if (jarScanCache != null) {
+            jarScanCache.report(System.nanoTime() - start);
+            jarScanCache.save();
+        } else {
+            LOGGER.info("Jar scan of {} jars took {} ms", jars.size(), (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    private List<JarScanCache.Result> scan(Collection<File> jars) throws IOException {
+        List<JarScanCache.Result> results = new ArrayList<JarScanCache.Result>(jars.size());
+        for (File jar : jars) {
+            results.add(scan(jar));
+        }
+        return results;
+    }
+
+    private List<JarScanCache.Result> scanParallel(Collection<File> jars) throws Exception {
+        int threads = Math.min(jars.size(), Runtime.getRuntime().availableProcessors());
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Callable<JarScanCache.Result>> tasks = new ArrayList<Callable<JarScanCache.Result>>(jars.size());
+            for (final File jar : jars) {
+                tasks.add(new Callable<JarScanCache.Result>() {
+                    public JarScanCache.Result call() throws Exception {
+                        return scan(jar);
+                    }
+                });
+            }
+            // invokeAll returns the futures in task order, which keeps the merge order deterministic
+            List<JarScanCache.Result> results = new ArrayList<JarScanCache.Result>(jars.size());
+            for (Future<JarScanCache.Result> future : pool.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            LOGGER.debug("Scanned {} jars on {} threads", jars.size(), threads);
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private JarScanCache.Result scan(File jar) throws IOException {
+        return jarScanCache == null ? JarScanCache.scan(jar) : jarScanCache.get(jar);
+    }
+
+    /**
+     * Collects the container and WEB-INF/lib jars Jetty knows about and the jars the plugin put on the classpath.
+     */
+    protected Map<URI, File> findJars(WebAppContext context) throws Exception {
+        Map<URI, File> jars = new LinkedHashMap<URI, File>();
+        addJars(jars, context.getMetaData().getOrderedContainerJars());
+        addJars(jars, context.getMetaData().getWebInfJars());
+        if (context instanceof Jetty9PluginWebAppContext) {
+            Jetty9PluginWebAppContext pluginContext = (Jetty9PluginWebAppContext) context;
+            if (pluginContext.getDependencyClassLoader() instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) pluginContext.getDependencyClassLoader()).getURLs()) {
+                    addJar(jars, new File(url.toURI()));
+                }
+            }
+            if (pluginContext.getClasspathFiles() != null) {
+                for (File file : pluginContext.getClasspathFiles()) {
+                    addJar(jars, file);
+                }
+            }
+        }
+        return jars;
+    }
+
+    private void addJars(Map<URI, File> jars, List<Resource> resources) throws Exception {
+        for (Resource resource : resources) {
+            File file = resource.getFile();
+            if (file != null) {
+                addJar(jars, file);
+            }
+        }
+    }
+
+    private void addJar(Map<URI, File> jars, File file) throws Exception {
+        if (file.isFile() && file.getName().toLowerCase().endsWith(".jar")) {
+            File canonicalFile = file.getCanonicalFile();
+            jars.put(canonicalFile.toURI(), canonicalFile);
+        }
+    }
+
+    /**
+     * Registers the jar's contributions the same way {@link MetaInfConfiguration} does while scanning.
+     */
+    private void apply(WebAppContext context, URI jarUri, JarScanCache.Result result) throws Exception {
+        if (result.hasWebFragment() && context.isConfigurationDiscovered()) {
+            addResource(context, METAINF_FRAGMENTS, Resource.newResource(jarUri));
+        }
+        if (result.hasResources() && context.isConfigurationDiscovered()) {
+            addResource(context, METAINF_RESOURCES, Resource.newResource("jar:" + jarUri + "!/META-INF/resources"));
+        }
+        for (String tld : result.getTlds()) {
+            addResource(context, METAINF_TLDS, Resource.newResource("jar:" + jarUri + "!/" + tld));
+        }
+    }
+}
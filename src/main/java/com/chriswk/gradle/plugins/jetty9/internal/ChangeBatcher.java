@@ -0,0 +1,98 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.eclipse.jetty.util.Scanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits between a scanner or file watcher and the listener restarting the webapp. Changes are collected until no new
+ * change arrived for the quiet period, or the maximum wait since the first change has passed, and are then handed on
+ * as one batch. Batches are delivered from a single thread, so there is never more than one restart in flight;
+ * changes arriving during a restart are merged into the next batch.
+ */
+public class ChangeBatcher extends Thread implements Scanner.BulkListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeBatcher.class);
+
+    private final Scanner.BulkListener listener;
+    private final long quietPeriodNanos;
+    private final long maxWaitNanos;
+
+    private final Set<String> pending = new LinkedHashSet<String>();
+    private int pendingEvents;
+    private long firstChange;
+    private long lastChange;
+    private volatile boolean closed;
+
+    public ChangeBatcher(Scanner.BulkListener listener, long quietPeriodMillis, long maxWaitMillis) {
+        this.listener = listener;
+        this.quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, quietPeriodMillis));
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(quietPeriodMillis, maxWaitMillis));
+        setName("Jetty9PluginChangeBatcher");
+        setDaemon(true);
+    }
+
+    public synchronized void filesChanged(List<String> changes) {
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (pending.isEmpty()) {
+            firstChange = now;
+        }
+        lastChange = now;
+        pending.addAll(changes);
+        pendingEvents++;
+        notifyAll();
+    }
+
+    public void run() {
+        try {
+            while (!closed) {
+                List<String> batch;
+                int events;
+                synchronized (this) {
+                    while (pending.isEmpty()) {
+                        wait();
+                    }
+                    long remaining;
+                    while ((remaining = remainingNanos()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                    batch = new ArrayList<String>(pending);
+                    events = pendingEvents;
+                    pending.clear();
+                    pendingEvents = 0;
+                }
+                LOGGER.info("Merged {} changed files from {} change events into one restart", batch.size(), events);
+                try {
+                    listener.filesChanged(batch);
+                } catch (Exception e) {
+                    LOGGER.error("Error handling changed files", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Change batcher interrupted");
+        }
+    }
+
+    /**
+     * Stops the thread. Pending changes are dropped, a batch that is being handled is finished first.
+     */
+    public void close() {
+        closed = true;
+        interrupt();
+    }
+
+    private long remainingNanos() {
+        long now = System.nanoTime();
+        long quietDeadline = lastChange + quietPeriodNanos;
+        long maxDeadline = firstChange + maxWaitNanos;
+        return Math.min(quietDeadline, maxDeadline) - now;
+    }
+}
@@ -0,0 +1,286 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.sql.Driver;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Follows the class loaders a webapp discards on restarts. Each restart logs the metaspace (or permgen) in use and the
+ * classes loaded and unloaded since the previous one. When tracking is enabled, a discarded loader is only held weakly;
+ * one that is still reachable after the given number of further restarts is reported as leaked, together with the
+ * roots found to retain it: threads, thread locals, JDBC drivers, shutdown hooks and MBeans. A loader in the old
+ * generation stays reachable until the next full collection, so unless one is forced before reporting, a report may
+ * name a loader that is merely not collected yet.
+ */
+public class ClassLoaderLeakDetector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassLoaderLeakDetector.class);
+
+    private final String name;
+    private final int restarts;
+    private final boolean forceGc;
+    private final List<Discarded> discarded = new ArrayList<Discarded>();
+    private int restartCount;
+    private long metaspaceUsed;
+    private long loadedClasses;
+    private long unloadedClasses;
+
+    /**
+     * @param name the webapp, for the log
+     * @param restarts how many restarts a discarded loader may stay reachable, 0 to only log memory use
+     * @param forceGc whether to request a full garbage collection before reporting loaders
+     */
+    public ClassLoaderLeakDetector(String name, int restarts, boolean forceGc) {
+        this.name = name;
+        this.restarts = restarts;
+        this.forceGc = forceGc;
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        metaspaceUsed = getMetaspaceUsed();
+        loadedClasses = classLoading.getTotalLoadedClassCount();
+        unloadedClasses = classLoading.getUnloadedClassCount();
+    }
+
+    /**
+     * Called after a restart of the webapp with the loader it used before the restart.
+     */
+    public synchronized void restarted(ClassLoader discardedLoader) {
+        restartCount++;
+        if (restarts > 0 && discardedLoader != null) {
+            discarded.add(new Discarded(discardedLoader, restartCount));
+        }
+        if (restarts > 0) {
+            checkLeaks();
+        }
+        logMemory();
+    }
+
+    /**
+     * Returns the number of discarded loaders that are still reachable.
+     */
+    public synchronized int getReachable() {
+        expunge();
+        return discarded.size();
+    }
+
+    private void logMemory() {
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        long used = getMetaspaceUsed();
+        long loaded = classLoading.getTotalLoadedClassCount();
+        long unloaded = classLoading.getUnloadedClassCount();
+        long delta = used - metaspaceUsed;
+        LOGGER.info("Restart {} of {}: metaspace {} KB ({}{} KB), {} classes loaded and {} unloaded since the previous start, {} discarded class loaders still reachable",
+                restartCount, name, used / 1024, delta < 0 ? "" : "+", delta / 1024, loaded - loadedClasses,
+                unloaded - unloadedClasses, restarts > 0 ? String.valueOf(getReachable()) : "untracked");
+        metaspaceUsed = used;
+        loadedClasses = loaded;
+        unloadedClasses = unloaded;
+    }
+
+    private void checkLeaks() {
+        if (!hasSuspects()) {
+            return;
+        }
+        if (forceGc) {
+            // only loaders that survive a full collection are reported, weak references to old objects outlive young ones
+            System.gc();
+            if (!hasSuspects()) {
+                return;
+            }
+        }
+        for (Discarded candidate : discarded) {
+            ClassLoader loader = candidate.get();
+            if (loader == null || !candidate.isSuspect()) {
+                continue;
+            }
+            candidate.reported = true;
+            List<String> roots = findRoots(loader);
+            StringBuilder report = new StringBuilder();
+            report.append("Class loader ").append(loader).append(" of ").append(name).append(", discarded at restart ")
+                    .append(candidate.restart).append(", is still reachable after ").append(restartCount - candidate.restart)
+                    .append(" restarts").append(forceGc ? " and a garbage collection." : ".");
+            if (roots.isEmpty()) {
+                report.append(" No known root retains it, look for paths to it in a heap dump.");
+            } else {
+                report.append(" Likely retained by:");
+                for (String root : roots) {
+                    report.append("\n  - ").append(root);
+                }
+            }
+            LOGGER.warn(report.toString());
+        }
+    }
+
+    private boolean hasSuspects() {
+        expunge();
+        for (Discarded candidate : discarded) {
+            if (candidate.isSuspect()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void expunge() {
+        Iterator<Discarded> iterator = discarded.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().get() == null) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Describes the roots found to retain the given loader.
+     */
+    static List<String> findRoots(ClassLoader loader) {
+        List<String> roots = new ArrayList<String>();
+        findThreads(loader, roots);
+        findJdbcDrivers(loader, roots);
+        findShutdownHooks(loader, roots);
+        findMBeans(loader, roots);
+        return roots;
+    }
+
+    private static void findThreads(ClassLoader loader, List<String> roots) {
+        boolean threadLocalsReadable = true;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (isLoadedBy(thread.getClass(), loader)) {
+                roots.add("thread '" + thread.getName() + "' of " + thread.getClass().getName() + ", started by the webapp");
+            } else if (thread.getContextClassLoader() == loader) {
+                roots.add("thread '" + thread.getName() + "', which has it as its context class loader");
+            }
+            if (threadLocalsReadable) {
+                try {
+                    findThreadLocals(thread, "threadLocals", loader, roots);
+                    findThreadLocals(thread, "inheritableThreadLocals", loader, roots);
+                } catch (Exception e) {
+                    LOGGER.debug("Cannot inspect thread locals", e);
+                    threadLocalsReadable = false;
+                }
+            }
+        }
+    }
+
+    private static void findThreadLocals(Thread thread, String mapField, ClassLoader loader, List<String> roots) throws Exception {
+        Object map = read(thread, Thread.class, mapField);
+        if (map == null) {
+            return;
+        }
+        Object[] table = (Object[]) read(map, map.getClass(), "table");
+        for (Object entry : table) {
+            if (entry == null) {
+                continue;
+            }
+            Object threadLocal = ((Reference<?>) entry).get();
+            Object value = read(entry, entry.getClass(), "value");
+            boolean retains = value == loader
+                    || (value != null && isLoadedBy(value.getClass(), loader))
+                    || (threadLocal != null && isLoadedBy(threadLocal.getClass(), loader));
+            if (retains) {
+                roots.add("ThreadLocal " + (threadLocal == null ? "(stale)" : threadLocal.getClass().getName()) + " holding "
+                        + (value == null ? "null" : value.getClass().getName()) + " in thread '" + thread.getName() + "'");
+            }
+        }
+    }
+
+    private static void findJdbcDrivers(ClassLoader loader, List<String> roots) {
+        try {
+            Object registered = read(null, java.sql.DriverManager.class, "registeredDrivers");
+            for (Object info : (Iterable<?>) registered) {
+                Object driver = info instanceof Driver ? info : read(info, info.getClass(), "driver");
+                if (driver != null && isLoadedBy(driver.getClass(), loader)) {
+                    roots.add("JDBC driver " + driver.getClass().getName() + " registered with the DriverManager");
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Cannot inspect the JDBC drivers", e);
+        }
+    }
+
+    private static void findShutdownHooks(ClassLoader loader, List<String> roots) {
+        try {
+            Object hooks = read(null, Class.forName("java.lang.ApplicationShutdownHooks"), "hooks");
+            synchronized (Class.forName("java.lang.ApplicationShutdownHooks")) {
+                for (Object key : ((Map<?, ?>) hooks).keySet()) {
+                    Thread hook = (Thread) key;
+                    if (isLoadedBy(hook.getClass(), loader) || hook.getContextClassLoader() == loader) {
+                        roots.add("shutdown hook '" + hook.getName() + "' of " + hook.getClass().getName());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Cannot inspect the shutdown hooks", e);
+        }
+    }
+
+    private static void findMBeans(ClassLoader loader, List<String> roots) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName mbean : server.queryNames(null, null)) {
+            try {
+                if (isLoadedBy(server.getClassLoaderFor(mbean), loader)) {
+                    roots.add("MBean " + mbean + " registered with the platform MBean server");
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Cannot inspect MBean " + mbean, e);
+            }
+        }
+    }
+
+    private static boolean isLoadedBy(Class<?> type, ClassLoader loader) {
+        return isLoadedBy(type.getClassLoader(), loader);
+    }
+
+    /**
+     * Returns whether the given loader is the loader or one of its parents, which covers the loaders of JSPs.
+     */
+    private static boolean isLoadedBy(ClassLoader classLoader, ClassLoader loader) {
+        for (ClassLoader current = classLoader; current != null; current = current.getParent()) {
+            if (current == loader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object read(Object target, Class<?> type, String fieldName) throws Exception {
+        Field field = type.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    private static long getMetaspaceUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().contains("Metaspace") || pool.getName().contains("Perm Gen")) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private class Discarded extends WeakReference<ClassLoader> {
+        private final int restart;
+        private boolean reported;
+
+        private Discarded(ClassLoader loader, int restart) {
+            super(loader);
+            this.restart = restart;
+        }
+
+        private boolean isSuspect() {
+            return !reported && restartCount - restart >= restarts;
+        }
+    }
+}
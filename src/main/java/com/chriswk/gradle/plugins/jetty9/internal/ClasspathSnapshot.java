@@ -0,0 +1,229 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent index of the watched files, keyed by path with size, modification time and a content hash. Used to tell
+ * files that were rewritten with identical bytes apart from files whose content actually changed. A refresh only hashes
+ * files whose size or modification time differ from the index, so an unchanged classpath costs one stat per file. Paths
+ * reported as changed are always rehashed, since an edit that keeps the size can also keep a coarse modification time.
+ */
+public class ClasspathSnapshot {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClasspathSnapshot.class);
+
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private boolean dirty;
+
+    private ClasspathSnapshot(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Loads the index stored in the given file, or starts an empty one if there is none or it cannot be read.
+     */
+    public static ClasspathSnapshot load(File indexFile) {
+        ClasspathSnapshot snapshot = new ClasspathSnapshot(indexFile);
+        if (!indexFile.isFile()) {
+            return snapshot;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != VERSION) {
+                    return snapshot;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = in.readUTF();
+                    snapshot.entries.put(path, new Entry(in.readLong(), in.readLong(), in.readLong()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read classpath snapshot " + indexFile + ", starting a new one", e);
+            snapshot.entries.clear();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Brings the index up to date for all files below the given targets without reporting any changes.
+     */
+    public synchronized void refresh(Collection<File> targets) {
+        long start = System.nanoTime();
+        Set<String> paths = new LinkedHashSet<String>();
+        for (File target : targets) {
+            try {
+                collectFiles(target == null ? null : target.getCanonicalFile(), paths);
+            } catch (IOException e) {
+                LOGGER.debug("Could not resolve " + target, e);
+            }
+        }
+        for (String path : paths) {
+            updateEntry(path, true);
+        }
+        LOGGER.info("Classpath snapshot of {} files refreshed in {} ms", paths.size(), (System.nanoTime() - start) / 1000000);
+        save();
+    }
+
+    /**
+     * Updates the index for the given changed paths and returns those whose content differs from the index.
+     */
+    public synchronized Set<String> update(Collection<String> changedPaths) {
+        Set<String> paths = new LinkedHashSet<String>();
+        for (String changedPath : changedPaths) {
+            File file = new File(changedPath);
+            if (file.isDirectory()) {
+                collectFiles(file, paths);
+            } else {
+                paths.add(file.getPath());
+            }
+        }
+
+        Set<String> changed = new LinkedHashSet<String>();
+        for (String path : paths) {
+            if (updateEntry(path, false)) {
+                changed.add(path);
+            }
+        }
+        save();
+        return changed;
+    }
+
+    private boolean updateEntry(String path, boolean trustTimestamps) {
+        File file = new File(path);
+        Entry previous = entries.get(path);
+        if (!file.isFile()) {
+            if (previous != null) {
+                entries.remove(path);
+                dirty = true;
+                return true;
+            }
+            return false;
+        }
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (trustTimestamps && previous != null && previous.size == size && previous.lastModified == lastModified) {
+            return false;
+        }
+
+        long hash;
+        try {
+            hash = hash(file);
+        } catch (IOException e) {
+            LOGGER.debug("Could not hash " + path + ", treating it as changed", e);
+            entries.remove(path);
+            dirty = true;
+            return true;
+        }
+        if (previous == null || previous.size != size || previous.lastModified != lastModified || previous.hash != hash) {
+            entries.put(path, new Entry(size, lastModified, hash));
+            dirty = true;
+        }
+        return previous == null || previous.size != size || previous.hash != hash;
+    }
+
+    private void collectFiles(File target, Set<String> paths) {
+        if (target == null) {
+            return;
+        }
+        if (target.isDirectory()) {
+            File[] children = target.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collectFiles(child, paths);
+                }
+            }
+        } else if (target.isFile()) {
+            paths.add(target.getPath());
+        }
+    }
+
+    /**
+     * Writes the index if it changed since it was loaded or last saved.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            indexFile.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().lastModified);
+                    out.writeLong(entry.getValue().hash);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(indexFile)) {
+                indexFile.delete();
+                if (!tmpFile.renameTo(indexFile)) {
+                    throw new IOException("Could not rename " + tmpFile + " to " + indexFile);
+                }
+            }
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.warn("Could not write classpath snapshot " + indexFile, e);
+        }
+    }
+
+    /**
+     * Returns a fast, non-cryptographic hash of the file's content.
+     */
+    public static long hash(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return (file.length() << 32) ^ crc.getValue();
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final long hash;
+
+        private Entry(long size, long lastModified, long hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,628 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.HttpChannelState;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses responses with gzip for clients that accept it. A response is buffered until it reaches the minimum size,
+ * or is flushed, and then compressed if its status is 2xx other than 204 and 206, it has no content encoding yet and
+ * its MIME type is included. Requests for a path whose extension maps to a MIME type that is not compressed are not
+ * wrapped at all, so static files like images keep going out straight from their buffers.
+ * <p/>
+ * Deflaters are pooled, since creating one allocates native memory. The CPU time spent deflating is measured per thread
+ * so levels can be compared by bytes saved per CPU second.
+ */
+public class CompressionHandler extends HandlerWrapper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompressionHandler.class);
+
+    private static final String GZIP = "gzip";
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final MimeTypes MIME_TYPES = new MimeTypes();
+
+    private final int minSize;
+    private final int level;
+    private final Set<String> mimeTypes = new HashSet<String>();
+    private final Set<String> excludedMimeTypes = new HashSet<String>();
+    private final BlockingQueue<Compressor> compressors;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTime;
+
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong deflateNanos = new AtomicLong();
+    private final AtomicLong deflatersCreated = new AtomicLong();
+
+    public CompressionHandler(int minSize, int level, Collection<String> mimeTypes, Collection<String> excludedMimeTypes,
+                              int deflaterPoolSize) {
+        this.minSize = minSize;
+        this.level = level;
+        for (String mimeType : mimeTypes) {
+            this.mimeTypes.add(mimeType.toLowerCase(Locale.ENGLISH));
+        }
+        for (String mimeType : excludedMimeTypes) {
+            this.excludedMimeTypes.add(mimeType.toLowerCase(Locale.ENGLISH));
+        }
+        this.compressors = new ArrayBlockingQueue<Compressor>(Math.max(1, deflaterPoolSize));
+        this.cpuTime = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        HttpChannelState state = baseRequest.getHttpChannelState();
+        if (!state.isInitial() || "HEAD".equalsIgnoreCase(request.getMethod()) || !acceptsGzip(request)) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        String mimeType = MIME_TYPES.getMimeByExtension(request.getRequestURI());
+        if (mimeType != null && !isCompressible(mimeType)) {
+            skipped.incrementAndGet();
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        final CompressedResponse compressedResponse = new CompressedResponse(response);
+        boolean handled = false;
+        try {
+            super.handle(target, baseRequest, request, compressedResponse);
+            handled = true;
+        } finally {
+            if (!handled) {
+                compressedResponse.abort();
+            } else if (state.isSuspended()) {
+                state.addListener(new AsyncListener() {
+                    public void onComplete(AsyncEvent event) throws IOException {
+                        compressedResponse.finish();
+                    }
+
+                    public void onTimeout(AsyncEvent event) throws IOException {
+                        compressedResponse.abort();
+                    }
+
+                    public void onError(AsyncEvent event) throws IOException {
+                        compressedResponse.abort();
+                    }
+
+                    public void onStartAsync(AsyncEvent event) throws IOException {
+                        event.getAsyncContext().addListener(this);
+                    }
+                });
+            } else {
+                compressedResponse.finish();
+            }
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeader.ACCEPT_ENCODING.asString());
+        if (accept == null) {
+            return false;
+        }
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(name) || "*".equals(name)) {
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=") && quality(parameter.substring(2)) <= 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the given q value, or 1 if it cannot be parsed, as if it was left out.
+     */
+    private static double quality(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private boolean isCompressible(String contentType) {
+        String mimeType = contentType;
+        int parameters = mimeType.indexOf(';');
+        if (parameters >= 0) {
+            mimeType = mimeType.substring(0, parameters);
+        }
+        mimeType = mimeType.trim().toLowerCase(Locale.ENGLISH);
+        int slash = mimeType.indexOf('/');
+        String anySubtype = slash < 0 ? mimeType : mimeType.substring(0, slash) + "/*";
+        if (excludedMimeTypes.contains(mimeType) || excludedMimeTypes.contains(anySubtype)) {
+            return false;
+        }
+        return mimeTypes.contains(mimeType) || mimeTypes.contains(anySubtype);
+    }
+
+    private Compressor acquire() {
+        Compressor compressor = compressors.poll();
+        if (compressor == null) {
+            deflatersCreated.incrementAndGet();
+            compressor = new Compressor(level);
+        }
+        return compressor;
+    }
+
+    private void release(Compressor compressor) {
+        compressor.deflater.reset();
+        compressor.crc.reset();
+        if (!compressors.offer(compressor)) {
+            compressor.deflater.end();
+        }
+    }
+
+    private long cpuNanos() {
+        return cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Returns the compression statistics as a JSON object.
+     */
+    public String toJson() {
+        long in = bytesIn.get();
+        long out = bytesOut.get();
+        long nanos = deflateNanos.get();
+        return String.format(Locale.ENGLISH, "{\"level\": %d, \"minSize\": %d, \"compressed\": %d, \"skipped\": %d, "
+                        + "\"bytesIn\": %d, \"bytesOut\": %d, \"ratio\": %.4f, \"deflateCpuMillis\": %.3f, "
+                        + "\"cpuMicrosPerResponse\": %.3f, \"mbInPerCpuSecond\": %.1f, \"deflatersCreated\": %d, \"cpuTime\": %s}",
+                level, minSize, compressed.get(), skipped.get(), in, out, in == 0 ? 1.0 : (double) out / in, nanos / 1e6,
+                compressed.get() == 0 ? 0.0 : nanos / 1e3 / compressed.get(), nanos == 0 ? 0.0 : in / 1e6 / (nanos / 1e9),
+                deflatersCreated.get(), cpuTime);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        long in = bytesIn.get();
+        long nanos = deflateNanos.get();
+        LOGGER.info(String.format(Locale.ENGLISH, "Compressed %d responses at level %d, %d of them skipped, from %d to %d bytes (ratio %.3f), "
+                        + "deflating took %.1f ms %s (%.1f MB/s)", compressed.get(), level, skipped.get(), in, bytesOut.get(),
+                in == 0 ? 1.0 : (double) bytesOut.get() / in, nanos / 1e6, cpuTime ? "CPU" : "wall clock",
+                nanos == 0 ? 0.0 : in / 1e6 / (nanos / 1e9)));
+        Compressor compressor;
+        while ((compressor = compressors.poll()) != null) {
+            compressor.deflater.end();
+        }
+    }
+
+    /**
+     * A pooled deflater with its output buffer and checksum.
+     */
+    private static class Compressor {
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[8192];
+
+        private Compressor(int level) {
+            this.deflater = new Deflater(level, true);
+        }
+    }
+
+    private class CompressedResponse extends HttpServletResponseWrapper {
+        private CompressionStream stream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+
+        private CompressedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (stream == null) {
+                stream = new CompressionStream(this);
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                stream = new CompressionStream(this);
+                writer = newWriter(stream);
+            }
+            return writer;
+        }
+
+        /**
+         * Creates a writer that only flushes the stream when the application flushes it. The encoder of a plain writer
+         * also flushes the stream when it is closed, which would count every small response as flushed and compress it.
+         */
+        private PrintWriter newWriter(final CompressionStream target) throws IOException {
+            OutputStream unflushed = new FilterOutputStream(target) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    target.write(b, off, len);
+                }
+
+                @Override
+                public void flush() {
+                }
+            };
+            return new PrintWriter(new OutputStreamWriter(unflushed, getCharacterEncoding())) {
+                @Override
+                public void flush() {
+                    super.flush();
+                    try {
+                        target.flush();
+                    } catch (IOException e) {
+                        setError();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            setContentLength((long) length);
+        }
+
+        /**
+         * Holds the content length back until it is known whether the response is compressed, which makes it unknown.
+         */
+        private void setContentLength(long length) {
+            contentLength = length;
+            if (stream != null && stream.isRaw()) {
+                passContentLength();
+            }
+        }
+
+        private void passContentLength() {
+            ((HttpServletResponse) getResponse()).setHeader(HttpHeader.CONTENT_LENGTH.asString(),
+                    contentLength < 0 ? null : Long.toString(contentLength));
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeader.CONTENT_LENGTH.asString().equalsIgnoreCase(name)) {
+                setContentLength(value == null ? -1 : Long.parseLong(value.trim()));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeader.CONTENT_LENGTH.asString().equalsIgnoreCase(name)) {
+                setContentLength(Long.parseLong(value.trim()));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (HttpHeader.CONTENT_LENGTH.asString().equalsIgnoreCase(name)) {
+                setContentLength(value);
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (HttpHeader.CONTENT_LENGTH.asString().equalsIgnoreCase(name)) {
+                setContentLength(value);
+            } else {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (stream != null) {
+                stream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (stream != null) {
+                stream.discard();
+            }
+            stream = null;
+            writer = null;
+            contentLength = -1;
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (stream != null) {
+                if (stream.isCompressing()) {
+                    // the new content decides again, and may well be too small to compress
+                    stopCompressing();
+                }
+                stream.discard();
+                stream = new CompressionStream(this);
+                if (writer != null) {
+                    try {
+                        writer = newWriter(stream);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+
+        private boolean isCompressible() {
+            int status = getStatus() == 0 ? HttpServletResponse.SC_OK : getStatus();
+            String contentType = getContentType();
+            return status >= 200 && status < 300 && status != HttpServletResponse.SC_NO_CONTENT
+                    && status != HttpServletResponse.SC_PARTIAL_CONTENT
+                    && (contentLength < 0 || contentLength >= minSize)
+                    && getHeader(HttpHeader.CONTENT_ENCODING.asString()) == null
+                    && contentType != null && CompressionHandler.this.isCompressible(contentType);
+        }
+
+        private void startCompressing() {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            response.setHeader(HttpHeader.CONTENT_LENGTH.asString(), null);
+            response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), GZIP);
+            String vary = response.getHeader(HttpHeader.VARY.asString());
+            if (vary == null) {
+                response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+            } else if (!vary.toLowerCase(Locale.ENGLISH).contains("accept-encoding")) {
+                response.setHeader(HttpHeader.VARY.asString(), vary + ", " + HttpHeader.ACCEPT_ENCODING.asString());
+            }
+            // the compressed variant must not share its entity tag with the uncompressed one
+            String etag = response.getHeader(HttpHeader.ETAG.asString());
+            if (etag != null && etag.endsWith("\"")) {
+                response.setHeader(HttpHeader.ETAG.asString(), etag.substring(0, etag.length() - 1) + "--gzip\"");
+            }
+        }
+
+        private void stopCompressing() {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), null);
+            String etag = response.getHeader(HttpHeader.ETAG.asString());
+            if (etag != null && etag.endsWith("--gzip\"")) {
+                response.setHeader(HttpHeader.ETAG.asString(), etag.substring(0, etag.length() - "--gzip\"".length()) + "\"");
+            }
+        }
+
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.close();
+            } else if (stream != null) {
+                stream.close();
+            }
+        }
+
+        private void abort() {
+            if (stream != null) {
+                stream.discard();
+            }
+        }
+    }
+
+    /**
+     * Buffers up to the minimum size, then either passes the content through or compresses it.
+     */
+    private class CompressionStream extends ServletOutputStream {
+        private final CompressedResponse response;
+        private byte[] buffer;
+        private int count;
+        private ServletOutputStream out;
+        private Compressor compressor;
+        private boolean raw;
+        private boolean closed;
+
+        private CompressionStream(CompressedResponse response) {
+            this.response = response;
+        }
+
+        private boolean isRaw() {
+            return raw;
+        }
+
+        private boolean isCompressing() {
+            return compressor != null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Closed");
+            }
+            if (out == null) {
+                if (count + len <= minSize) {
+                    if (buffer == null) {
+                        buffer = new byte[minSize];
+                    }
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                decide();
+            }
+            if (compressor != null) {
+                deflate(b, off, len);
+            } else {
+                out.write(b, off, len);
+            }
+        }
+
+        /**
+         * Chooses between compressing and passing through, and writes what has been buffered so far.
+         */
+        private void decide() throws IOException {
+            if (response.isCompressible()) {
+                response.startCompressing();
+                out = response.getResponse().getOutputStream();
+                compressor = acquire();
+                out.write(GZIP_HEADER);
+                compressed.incrementAndGet();
+                if (count > 0) {
+                    deflate(buffer, 0, count);
+                }
+            } else {
+                raw = true;
+                skipped.incrementAndGet();
+                if (response.contentLength >= 0) {
+                    response.passContentLength();
+                }
+                out = response.getResponse().getOutputStream();
+                if (count > 0) {
+                    out.write(buffer, 0, count);
+                }
+            }
+            buffer = null;
+            count = 0;
+        }
+
+        private void deflate(byte[] b, int off, int len) throws IOException {
+            long start = cpuNanos();
+            Deflater deflater = compressor.deflater;
+            compressor.crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                int deflated = deflater.deflate(compressor.buffer, 0, compressor.buffer.length, Deflater.NO_FLUSH);
+                if (deflated > 0) {
+                    out.write(compressor.buffer, 0, deflated);
+                }
+            }
+            deflateNanos.addAndGet(cpuNanos() - start);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (out == null) {
+                // the content is wanted now, so the response is as large as it gets before the client sees it
+                if (count == 0) {
+                    return;
+                }
+                decide();
+            }
+            if (compressor != null) {
+                long start = cpuNanos();
+                Deflater deflater = compressor.deflater;
+                int deflated;
+                do {
+                    deflated = deflater.deflate(compressor.buffer, 0, compressor.buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(compressor.buffer, 0, deflated);
+                } while (deflated == compressor.buffer.length);
+                deflateNanos.addAndGet(cpuNanos() - start);
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (out == null) {
+                // the whole response is smaller than the minimum size
+                raw = true;
+                skipped.incrementAndGet();
+                if (response.contentLength < 0) {
+                    response.contentLength = count;
+                }
+                response.passContentLength();
+                out = response.getResponse().getOutputStream();
+                if (count > 0) {
+                    out.write(buffer, 0, count);
+                }
+                buffer = null;
+            } else if (compressor != null) {
+                long start = cpuNanos();
+                Deflater deflater = compressor.deflater;
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int deflated = deflater.deflate(compressor.buffer, 0, compressor.buffer.length);
+                    out.write(compressor.buffer, 0, deflated);
+                }
+                deflateNanos.addAndGet(cpuNanos() - start);
+                writeTrailer((int) compressor.crc.getValue(), (int) deflater.getBytesRead());
+                bytesIn.addAndGet(deflater.getBytesRead());
+                bytesOut.addAndGet(GZIP_HEADER.length + deflater.getBytesWritten() + GZIP_TRAILER_LENGTH);
+                release(compressor);
+                compressor = null;
+            }
+            closed = true;
+            out.close();
+        }
+
+        private void writeTrailer(int crc, int length) throws IOException {
+            byte[] trailer = compressor.buffer;
+            trailer[0] = (byte) crc;
+            trailer[1] = (byte) (crc >> 8);
+            trailer[2] = (byte) (crc >> 16);
+            trailer[3] = (byte) (crc >> 24);
+            trailer[4] = (byte) length;
+            trailer[5] = (byte) (length >> 8);
+            trailer[6] = (byte) (length >> 16);
+            trailer[7] = (byte) (length >> 24);
+            out.write(trailer, 0, GZIP_TRAILER_LENGTH);
+        }
+
+        /**
+         * Drops the content without writing anything, after a reset or an exception.
+         */
+        private void discard() {
+            if (compressor != null) {
+                release(compressor);
+                compressor = null;
+            }
+            buffer = null;
+            count = 0;
+            closed = true;
+        }
+    }
+}
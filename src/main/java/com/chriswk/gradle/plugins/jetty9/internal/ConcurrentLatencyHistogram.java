@@ -0,0 +1,39 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe variant of {@link LatencyHistogram} for recording from the server's threads. The buckets are striped like
+ * a {@link StripedCounter}, so threads recording similar latencies do not all increment the same cell. Recording is one
+ * atomic increment of the value's bucket in the thread's stripe and does not allocate; reading takes a
+ * {@link LatencyHistogram} snapshot that adds up the stripes.
+ */
+public class ConcurrentLatencyHistogram {
+    /**
+     * Fewer stripes than a counter has, since each stripe holds all buckets. A stripe spans many cache lines, so only
+     * the bucket itself is shared by the threads of a stripe.
+     */
+    private static final int STRIPES = StripedCounter.stripes(8);
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * LatencyHistogram.BUCKET_COUNT);
+
+    public void record(long nanos) {
+        counts.getAndIncrement(StripedCounter.stripe(STRIPES) * LatencyHistogram.BUCKET_COUNT + LatencyHistogram.bucketOf(nanos));
+    }
+
+    /**
+     * Returns a copy of the current counts. Values are accounted at the upper bound of their bucket, so min, max and
+     * mean share the percentiles' precision of about 3%.
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram snapshot = new LatencyHistogram();
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long count = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                count += counts.get(stripe * LatencyHistogram.BUCKET_COUNT + i);
+            }
+            snapshot.addBucket(i, count);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,66 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the classpath of a webapp into the project's own entries and the dependency jars from outside the project, and
+ * keeps the dependency jars in a class loader that lives across restarts, so restarts only reload the project's classes.
+ * The class loader is recreated when the dependency jars change.
+ */
+public class DependencyClassLoaders {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DependencyClassLoaders.class);
+
+    private final String projectRootPath;
+    private final ClassLoader parent;
+    private URLClassLoader classLoader;
+    private List<File> classLoaderFiles;
+
+    public DependencyClassLoaders(File projectRoot, ClassLoader parent) throws IOException {
+        this.projectRootPath = projectRoot.getCanonicalPath() + File.separator;
+        this.parent = parent;
+    }
+
+    /**
+     * Sets the project entries of the classpath as the classpath of the webapp, on top of the class loader for the
+     * dependency jars.
+     */
+    public synchronized void configure(Jetty9PluginWebAppContext webApp, List<File> classpath) throws IOException {
+        List<File> projectFiles = new ArrayList<File>();
+        List<File> dependencyFiles = new ArrayList<File>();
+        for (File file : classpath) {
+            if (file.isFile() && !file.getCanonicalPath().startsWith(projectRootPath)) {
+                dependencyFiles.add(file);
+            } else {
+                projectFiles.add(file);
+            }
+        }
+        webApp.setClasspathFiles(projectFiles);
+        webApp.setDependencyClassLoader(getClassLoader(dependencyFiles));
+        LOGGER.info("Class loading: {} project entries reloaded on restart, {} dependency jars kept loaded",
+                projectFiles.size(), dependencyFiles.size());
+    }
+
+    private ClassLoader getClassLoader(List<File> dependencyFiles) throws IOException {
+        if (classLoader != null && dependencyFiles.equals(classLoaderFiles)) {
+            return classLoader;
+        }
+        if (classLoader != null) {
+            LOGGER.info("Dependencies changed, recreating the dependency class loader");
+        }
+        URL[] urls = new URL[dependencyFiles.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = dependencyFiles.get(i).toURI().toURL();
+        }
+        classLoader = new URLClassLoader(urls, parent);
+        classLoaderFiles = dependencyFiles;
+        return classLoader;
+    }
+}
@@ -0,0 +1,313 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Keeps a war extracted in a directory across runs, so the webapp can be deployed from the directory instead of having
+ * Jetty unpack the archive on every start. The index of the last extraction records the war's content hash, plus the
+ * checksum and size of every entry. A war with the same content is not extracted at all; a changed war is diffed
+ * against the index using its central directory, and only the entries that were added or changed are written, while
+ * the files of removed entries are deleted. The war is always hashed, since a rebuilt war can keep both its size and,
+ * within the file system's timestamp resolution, its modification time.
+ */
+public class ExplodedWarCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExplodedWarCache.class);
+
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final File indexFile;
+    private boolean loaded;
+    private long warHash;
+    private Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    public ExplodedWarCache(File cacheDir) {
+        this.directory = new File(cacheDir, "webapp");
+        this.indexFile = new File(cacheDir, "index.bin");
+    }
+
+    /**
+     * Returns the directory the war is extracted to.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the names of the entries that were added, changed or removed since the last extraction, without writing
+     * anything. Returns an empty set if the war has the same content as the extracted copy, and the names of all entries
+     * if nothing was extracted yet.
+     */
+    public synchronized Set<String> diff(File war) throws IOException {
+        Set<String> changed = new TreeSet<String>();
+        if (isCurrent(ClasspathSnapshot.hash(war))) {
+            return changed;
+        }
+        boolean extracted = isExtracted();
+        Set<String> names = new HashSet<String>();
+        ZipFile zip = new ZipFile(war);
+        try {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                names.add(zipEntry.getName());
+                Entry previous = extracted ? entries.get(zipEntry.getName()) : null;
+                if (previous == null || !previous.isExtracted(zipEntry, new File(directory, zipEntry.getName()))) {
+                    changed.add(zipEntry.getName());
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        if (extracted) {
+            for (String name : entries.keySet()) {
+                if (!names.contains(name)) {
+                    changed.add(name);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Brings the extracted directory up to date with the given war.
+     */
+    public synchronized void update(File war) throws IOException {
+        long start = System.nanoTime();
+        long hash = ClasspathSnapshot.hash(war);
+        if (isCurrent(hash)) {
+            LOGGER.info("War {} is unchanged, deploying the extracted copy in {}", war, directory);
+            return;
+        }
+        boolean extracted = isExtracted();
+
+        // an interrupted update must not leave an index that claims the directory is complete
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Could not delete " + indexFile);
+        }
+        if (!extracted) {
+            // without an index nothing is known about the files in the directory
+            entries.clear();
+            delete(directory);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        String root = directory.getCanonicalPath() + File.separator;
+        Map<String, Entry> updated = new HashMap<String, Entry>();
+        int written = 0;
+        int unchanged = 0;
+        long writtenBytes = 0;
+        ZipFile zip = new ZipFile(war);
+        try {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                File target = new File(directory, zipEntry.getName());
+                if (!target.getCanonicalPath().startsWith(root)) {
+                    throw new IOException("War entry " + zipEntry.getName() + " is outside of the webapp");
+                }
+                if (zipEntry.isDirectory()) {
+                    if (!target.isDirectory() && !target.mkdirs()) {
+                        throw new IOException("Could not create " + target);
+                    }
+                    continue;
+                }
+                Entry entry = new Entry(zipEntry.getCrc(), zipEntry.getSize());
+                updated.put(zipEntry.getName(), entry);
+                Entry previous = entries.get(zipEntry.getName());
+                if (previous != null && previous.isExtracted(zipEntry, target)) {
+                    unchanged++;
+                    continue;
+                }
+                extract(zip, zipEntry, target);
+                written++;
+                writtenBytes += entry.size;
+            }
+        } finally {
+            zip.close();
+        }
+
+        int removed = 0;
+        for (String name : entries.keySet()) {
+            if (!updated.containsKey(name)) {
+                File file = new File(directory, name);
+                if (file.delete()) {
+                    removed++;
+                }
+                deleteEmptyParents(file);
+            }
+        }
+
+        entries = updated;
+        warHash = hash;
+        save();
+        LOGGER.info("Extracted war {} to {} in {} ms: {} entries ({} bytes) written, {} unchanged, {} removed",
+                war, directory, (System.nanoTime() - start) / 1000000, written, writtenBytes, unchanged, removed);
+    }
+
+    /**
+     * Returns whether the extracted copy has the content of the war with the given hash.
+     */
+    private boolean isCurrent(long hash) {
+        if (!loaded) {
+            load();
+            loaded = true;
+        }
+        return isExtracted() && hash == warHash;
+    }
+
+    private boolean isExtracted() {
+        return indexFile.isFile() && directory.isDirectory();
+    }
+
+    /**
+     * Writes the entry to a temporary file that then replaces the target, so a jar the previous deployment still has
+     * open or mapped is never overwritten in place.
+     */
+    private static void extract(ZipFile zip, ZipEntry zipEntry, File target) throws IOException {
+        File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        File temporary = new File(dir, target.getName() + ".tmp");
+        InputStream in = zip.getInputStream(zipEntry);
+        try {
+            OutputStream out = new FileOutputStream(temporary);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (zipEntry.getTime() != -1) {
+            temporary.setLastModified(zipEntry.getTime());
+        }
+        if (!temporary.renameTo(target)) {
+            target.delete();
+            if (!temporary.renameTo(target)) {
+                temporary.delete();
+                throw new IOException("Could not replace " + target);
+            }
+        }
+    }
+
+    private void deleteEmptyParents(File file) {
+        File parent = file.getParentFile();
+        while (parent != null && !parent.equals(directory)) {
+            String[] children = parent.list();
+            if (children == null || children.length > 0 || !parent.delete()) {
+                return;
+            }
+            parent = parent.getParentFile();
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    private void load() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != VERSION) {
+                    throw new IOException("Unsupported index version");
+                }
+                long hash = in.readLong();
+                int count = in.readInt();
+                Map<String, Entry> loadedEntries = new HashMap<String, Entry>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    loadedEntries.put(name, new Entry(in.readLong(), in.readLong()));
+                }
+                warHash = hash;
+                entries = loadedEntries;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read exploded war index " + indexFile + ", extracting the war again", e);
+            indexFile.delete();
+        }
+    }
+
+    private void save() throws IOException {
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(VERSION);
+            out.writeLong(warHash);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().crc);
+                out.writeLong(entry.getValue().size);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile)) {
+                throw new IOException("Could not rename " + tmpFile + " to " + indexFile);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final long crc;
+        private final long size;
+
+        private Entry(long crc, long size) {
+            this.crc = crc;
+            this.size = size;
+        }
+
+        private boolean isExtracted(ZipEntry zipEntry, File target) {
+            return crc == zipEntry.getCrc() && size == zipEntry.getSize() && target.isFile() && target.length() == size;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.eclipse.jetty.util.Scanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Event driven replacement for the polling {@link Scanner}. Directories are watched recursively, single files are
+ * watched through their parent directory. The thread blocks on the {@link WatchService} and does no work at all
+ * while nothing changes. Changes are reported to the same {@link Scanner.Listener}s the polling scanner uses.
+ */
+public class FileWatcher extends Thread {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileWatcher.class);
+
+    private final WatchService watchService;
+    private final List<Scanner.Listener> listeners;
+
+    /**
+     * Directories registered recursively, their sub directories are registered as they are created.
+     */
+    private final Map<WatchKey, Path> recursiveKeys = new HashMap<WatchKey, Path>();
+
+    /**
+     * Parent directories of watched files, events are only reported for the files themselves.
+     */
+    private final Map<WatchKey, Path> fileKeys = new HashMap<WatchKey, Path>();
+    private final Set<Path> watchedFiles = new HashSet<Path>();
+
+    public FileWatcher(List<Scanner.Listener> listeners) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.listeners = listeners == null ? new ArrayList<Scanner.Listener>() : listeners;
+        setName("Jetty9PluginFileWatcher");
+        setDaemon(true);
+    }
+
+    /**
+     * Replaces the watched files and directories. Targets that do not exist yet are ignored.
+     */
+    public synchronized void setTargets(Collection<File> targets) throws IOException {
+        for (WatchKey key : recursiveKeys.keySet()) {
+            key.cancel();
+        }
+        for (WatchKey key : fileKeys.keySet()) {
+            key.cancel();
+        }
+        recursiveKeys.clear();
+        fileKeys.clear();
+        watchedFiles.clear();
+
+        for (File target : targets) {
+            if (target == null || !target.exists()) {
+                continue;
+            }
+            Path path = target.getCanonicalFile().toPath();
+            if (Files.isDirectory(path)) {
+                registerRecursive(path);
+            } else if (path.getParent() != null) {
+                watchedFiles.add(path);
+                fileKeys.put(path.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path.getParent());
+            }
+        }
+        LOGGER.debug("Watching {} directories and {} files", recursiveKeys.size(), watchedFiles.size());
+    }
+
+    private void registerRecursive(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                recursiveKeys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                Set<String> changes = new LinkedHashSet<String>();
+                collect(watchService.take(), changes);
+                // drain whatever else is already queued so one burst is reported once
+                WatchKey next;
+                while ((next = watchService.poll()) != null) {
+                    collect(next, changes);
+                }
+                if (!changes.isEmpty()) {
+                    reportChanges(new ArrayList<String>(changes));
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("File watcher interrupted");
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.debug("File watcher closed");
+        }
+    }
+
+    private synchronized void collect(WatchKey key, Set<String> changes) {
+        Path dir = recursiveKeys.get(key);
+        boolean recursive = dir != null;
+        if (!recursive) {
+            dir = fileKeys.get(key);
+        }
+        if (dir == null) {
+            // key belongs to targets that have been replaced
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                changes.add(dir.toString());
+                continue;
+            }
+            Path changed = dir.resolve((Path) event.context());
+            if (recursive) {
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+                    try {
+                        registerRecursive(changed);
+                    } catch (IOException e) {
+                        LOGGER.warn("Could not watch new directory " + changed, e);
+                    }
+                }
+                changes.add(changed.toString());
+            } else if (watchedFiles.contains(changed)) {
+                changes.add(changed.toString());
+            }
+        }
+
+        if (!key.reset()) {
+            recursiveKeys.remove(key);
+            fileKeys.remove(key);
+        }
+    }
+
+    private void reportChanges(List<String> changes) {
+        for (Scanner.Listener listener : listeners) {
+            try {
+                if (listener instanceof Scanner.BulkListener) {
+                    ((Scanner.BulkListener) listener).filesChanged(changes);
+                } else if (listener instanceof Scanner.DiscreteListener) {
+                    Scanner.DiscreteListener discreteListener = (Scanner.DiscreteListener) listener;
+                    for (String change : changes) {
+                        if (new File(change).exists()) {
+                            discreteListener.fileChanged(change);
+                        } else {
+                            discreteListener.fileRemoved(change);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Error notifying listener " + listener + " of changed files", e);
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.debug("Exception when closing file watcher", e);
+        }
+    }
+}
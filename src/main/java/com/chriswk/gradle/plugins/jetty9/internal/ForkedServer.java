@@ -0,0 +1,460 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import com.chriswk.gradle.plugins.jetty9.Jetty9AsyncRequestLog;
+import com.chriswk.gradle.plugins.jetty9.Jetty9Compression;
+import com.chriswk.gradle.plugins.jetty9.Jetty9Connector;
+import com.chriswk.gradle.plugins.jetty9.Jetty9StaticCache;
+import com.chriswk.gradle.plugins.jetty9.Jetty9ThreadPool;
+import org.eclipse.jetty.server.NetworkConnector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.webapp.WebAppContext;
+import org.eclipse.jetty.xml.XmlConfiguration;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs the server of a run task in a JVM of its own. The task writes the server settings and the webapp deployment to
+ * a properties file and starts this class with its path. Once the server is up a line starting with {@link #STARTED}
+ * is printed, which the task waits for. The task controls the server through its standard input, one command per line:
+ * 'deploy &lt;file&gt;' redeploys the webapp as described by a properties file, 'restart' restarts the webapp and 'stop'
+ * stops the server. An attached server also stops when its standard input is closed, so it does not outlive the build;
+ * a detached one keeps running until it is stopped through the stop port.
+ */
+public class ForkedServer implements Monitor.WarmTarget {
+    public static final String STARTED = "Jetty 9 forked server started on ports ";
+    public static final String STOPPED = "Jetty 9 forked server stopped";
+
+    public static final String ATTACHED = "attached";
+    public static final String STOP_PORT = "stopPort";
+    public static final String STOP_KEY = "stopKey";
+    public static final String REQUEST_STATISTICS = "requestStatistics";
+    public static final String GRACEFUL_STOP_TIMEOUT_SECONDS = "gracefulStopTimeoutSeconds";
+    public static final String JETTY_CONFIG = "jettyConfig";
+    public static final String WEB_DEFAULT_XML = "webDefaultXml";
+    public static final String OVERRIDE_WEB_XML = "overrideWebXml";
+    public static final String TEMP_DIRECTORY = "tempDirectory";
+    public static final String PARALLEL_JAR_SCANNING = "parallelJarScanning";
+    public static final String PARALLEL_SERVLET_INIT = "parallelServletInit";
+    public static final String CACHE_JAR_SCANS = "cacheJarScans";
+    public static final String PRECOMPRESSED_DIRECTORY = "precompressedDirectory";
+
+    /**
+     * The project root directory, set when the dependency jars are kept in a class loader of their own.
+     */
+    public static final String DEPENDENCY_CLASS_LOADER_PROJECT_ROOT = "dependencyClassLoader.projectRoot";
+    public static final String THREAD_POOL = "threadPool.";
+    public static final String COMPRESSION = "compression.";
+    public static final String ASYNC_REQUEST_LOG = "asyncRequestLog.";
+    public static final String STATIC_CACHE = "staticCache.";
+    public static final String CONNECTOR_COUNT = "connector.count";
+    public static final String CONNECTOR = "connector.";
+    public static final String DEFAULT_CONNECTOR = "default";
+
+    private static final String STOP_COMMAND = "stop";
+    private static final String RESTART_COMMAND = "restart";
+
+    /**
+     * Classes whose jars make up the classpath of the forked JVM.
+     */
+    private static final String[] CLASSPATH_CLASSES = {
+            "com.chriswk.gradle.plugins.jetty9.internal.ForkedServer",
+            "org.eclipse.jetty.server.Server",
+            "org.eclipse.jetty.webapp.WebAppContext",
+            "org.eclipse.jetty.servlet.ServletHandler",
+            "org.eclipse.jetty.security.SecurityHandler",
+            "org.eclipse.jetty.xml.XmlConfiguration",
+            "org.eclipse.jetty.plus.webapp.EnvConfiguration",
+            "org.eclipse.jetty.jndi.ContextFactory",
+            "org.eclipse.jetty.http.HttpParser",
+            "org.eclipse.jetty.io.EndPoint",
+            "org.eclipse.jetty.util.Scanner",
+            "javax.servlet.Servlet",
+            "org.slf4j.Logger",
+            "org.gradle.api.InvalidUserDataException",
+            "org.gradle.logging.ProgressLoggerFactory"
+    };
+
+    private final Properties settings;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private Jetty9PluginServer server;
+    private Jetty9PluginWebAppContext webApp;
+    private JarScanCache jarScanCache;
+    private DependencyClassLoaders dependencyClassLoaders;
+    private StaticResourceCache staticResourceCache;
+    private Monitor monitor;
+
+    public ForkedServer(Properties settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: ForkedServer <settings file>");
+            System.exit(2);
+        }
+        ForkedServer forked = new ForkedServer(load(new File(args[0])));
+        try {
+            forked.start();
+        } catch (Throwable e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        forked.awaitStop();
+        System.exit(0);
+    }
+
+    /**
+     * Returns the classpath the forked JVM needs to run the server, the jars of the plugin, Jetty, the servlet API and
+     * the Gradle classes the plugin refers to, as they are loaded in this JVM.
+     */
+    public static List<File> getClasspath() {
+        Set<File> classpath = new LinkedHashSet<File>();
+        for (String className : CLASSPATH_CLASSES) {
+            try {
+                CodeSource codeSource = Class.forName(className).getProtectionDomain().getCodeSource();
+                if (codeSource != null && codeSource.getLocation() != null) {
+                    classpath.add(new File(codeSource.getLocation().toURI()));
+                }
+            } catch (ClassNotFoundException e) {
+                // optional, like jetty-plus when no jetty-env.xml is used
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException("Cannot locate the jar of " + className, e);
+            }
+        }
+        return new ArrayList<File>(classpath);
+    }
+
+    public void start() throws Exception {
+        Jetty9ThreadPool threadPool = loadSettings(settings, THREAD_POOL, new Jetty9ThreadPool());
+        server = new Jetty9PluginServer(ThreadPools.create(threadPool));
+
+        String jettyConfig = settings.getProperty(JETTY_CONFIG);
+        if (jettyConfig != null) {
+            new XmlConfiguration(new File(jettyConfig).toURI().toURL()).configure(server.getProxiedObject());
+        }
+        Object[] connectors = server.getConnectors();
+        if (connectors == null || connectors.length == 0) {
+            server.setConnectors(createConnectors());
+        }
+
+        server.setRequestStatistics(Boolean.parseBoolean(settings.getProperty(REQUEST_STATISTICS)));
+        server.setGracefulStop(getGracefulStopTimeoutSeconds() > 0);
+        server.setCompression(loadSettings(settings, COMPRESSION, new Jetty9Compression()));
+        Jetty9AsyncRequestLog asyncRequestLog = loadSettings(settings, ASYNC_REQUEST_LOG, new Jetty9AsyncRequestLog());
+        if (asyncRequestLog != null) {
+            server.setRequestLog(AsyncRequestLog.create(asyncRequestLog, asyncRequestLog.getFile()));
+        }
+        server.configureHandlers();
+
+        webApp = new Jetty9PluginWebAppContext();
+        if (Boolean.parseBoolean(settings.getProperty(CACHE_JAR_SCANS))) {
+            jarScanCache = JarScanCache.load(new File(settings.getProperty(TEMP_DIRECTORY), "jar-scan-cache.bin"));
+        }
+        String projectRoot = settings.getProperty(DEPENDENCY_CLASS_LOADER_PROJECT_ROOT);
+        if (projectRoot != null) {
+            dependencyClassLoaders = new DependencyClassLoaders(new File(projectRoot), Thread.currentThread().getContextClassLoader());
+        }
+        configureWebApp(settings);
+        server.addWebApplication(webApp);
+        server.start();
+
+        String stopPort = settings.getProperty(STOP_PORT);
+        if (stopPort != null && settings.getProperty(STOP_KEY) != null) {
+            monitor = new Monitor(Integer.parseInt(stopPort), settings.getProperty(STOP_KEY), this);
+            monitor.start();
+        }
+        startCommandReader();
+        System.out.println(STARTED + getPorts());
+    }
+
+    private Object[] createConnectors() throws Exception {
+        int count = Integer.parseInt(settings.getProperty(CONNECTOR_COUNT, "0"));
+        List<Object> created = new ArrayList<Object>();
+        for (int i = 0; i < count; i++) {
+            String prefix = CONNECTOR + i + ".";
+            Jetty9Connector connector = loadSettings(settings, prefix,
+                    new Jetty9Connector(settings.getProperty(prefix + "name", DEFAULT_CONNECTOR)));
+            if (connector == null || connector.getPort() == null) {
+                throw new IllegalArgumentException("No port set for connector " + i);
+            }
+            created.add(server.createConnector(connector, connector.getPort()));
+        }
+        return created.toArray();
+    }
+
+    private void configureWebApp(Properties deployment) throws Exception {
+        String contextPath = deployment.getProperty(Monitor.DEPLOYMENT_CONTEXT_PATH);
+        webApp.setContextPath(contextPath.startsWith("/") ? contextPath : "/" + contextPath);
+        webApp.setParallelJarScanning(Boolean.parseBoolean(settings.getProperty(PARALLEL_JAR_SCANNING)));
+        webApp.setParallelServletInit(Boolean.parseBoolean(settings.getProperty(PARALLEL_SERVLET_INIT)));
+        if (settings.getProperty(TEMP_DIRECTORY) != null) {
+            webApp.setTempDirectory(new File(settings.getProperty(TEMP_DIRECTORY)));
+        }
+        if (jarScanCache != null) {
+            webApp.setJarScanCache(jarScanCache);
+        }
+        if (settings.getProperty(WEB_DEFAULT_XML) != null) {
+            webApp.setDefaultsDescriptor(settings.getProperty(WEB_DEFAULT_XML));
+        }
+        if (settings.getProperty(OVERRIDE_WEB_XML) != null) {
+            webApp.setOverrideDescriptor(settings.getProperty(OVERRIDE_WEB_XML));
+        }
+
+        // Don't treat JCL or Log4j as system classes
+        Set<String> systemClasses = new LinkedHashSet<String>(Arrays.asList(webApp.getSystemClasses()));
+        systemClasses.remove("org.apache.commons.logging.");
+        systemClasses.remove("org.apache.log4j.");
+        webApp.setSystemClasses(systemClasses.toArray(new String[systemClasses.size()]));
+        webApp.setParentLoaderPriority(false);
+
+        webApp.setWebXmlFile(new File(deployment.getProperty(Monitor.DEPLOYMENT_WEB_XML)));
+        String jettyEnvXml = deployment.getProperty(Monitor.DEPLOYMENT_JETTY_ENV_XML);
+        webApp.setJettyEnvXmlFile(jettyEnvXml == null ? null : new File(jettyEnvXml));
+        File webAppSourceDirectory = new File(deployment.getProperty(Monitor.DEPLOYMENT_WEB_APP_SOURCE_DIRECTORY));
+        String precompressed = settings.getProperty(PRECOMPRESSED_DIRECTORY);
+        if (precompressed != null && new File(precompressed).isDirectory()) {
+            PrecompressedResources.serve(webApp, webAppSourceDirectory, new File(precompressed));
+        } else {
+            webApp.setResourceBase(webAppSourceDirectory.getPath());
+        }
+        configureStaticCache();
+        if (dependencyClassLoaders != null) {
+            dependencyClassLoaders.configure(webApp, Monitor.getDeploymentClasspath(deployment));
+        } else {
+            webApp.setClasspathFiles(Monitor.getDeploymentClasspath(deployment));
+        }
+    }
+
+    /**
+     * Caches the static resources as configured for the task, and always for precompressed assets. Nothing reports
+     * changed files in this JVM, so the cache checks its files on every hit.
+     */
+    private void configureStaticCache() throws Exception {
+        if (staticResourceCache == null) {
+            Jetty9StaticCache cache = loadSettings(settings, STATIC_CACHE, new Jetty9StaticCache());
+            if (cache == null && webApp.getBaseResource() instanceof PrecompressedResources) {
+                cache = new Jetty9StaticCache();
+            }
+            if (cache == null) {
+                return;
+            }
+            staticResourceCache = new StaticResourceCache(webApp, cache.getMaxCacheSize(), cache.getMaxMappedSize(),
+                    cache.getMaxCachedFiles(), cache.getMaxCachedFileSize(), cache.isDirect(), cache.isMapLargeFiles());
+        }
+        staticResourceCache.flushCache();
+        webApp.setAttribute(StaticResourceCache.ATTRIBUTE, staticResourceCache);
+        webApp.setInitParameter(StaticResourceCache.INIT_PARAMETER, StaticResourceCache.ATTRIBUTE);
+    }
+
+    /**
+     * Reads the commands of the task from standard input.
+     */
+    private void startCommandReader() {
+        final boolean attached = Boolean.parseBoolean(settings.getProperty(ATTACHED));
+        Thread reader = new Thread("Jetty9ForkedServer commands") {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (execute(line.trim())) {
+                            return;
+                        }
+                    }
+                    if (attached) {
+                        System.out.println("Standard input closed, stopping the server");
+                        stopServer();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Runs a command of the task, returning true once the server is stopped.
+     */
+    private boolean execute(String command) {
+        try {
+            if (STOP_COMMAND.equals(command)) {
+                stopServer();
+                return true;
+            } else if (RESTART_COMMAND.equals(command)) {
+                restartWebApp(false);
+            } else if (command.startsWith(Monitor.DEPLOY_COMMAND + " ")) {
+                deployWarm(load(new File(command.substring(Monitor.DEPLOY_COMMAND.length() + 1).trim())));
+            } else if (command.length() > 0) {
+                System.err.println("Unknown command '" + command + "'");
+            }
+        } catch (Exception e) {
+            System.err.println("Command '" + command + "' failed");
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private void awaitStop() throws InterruptedException {
+        stopped.await();
+        if (monitor != null) {
+            // let the monitor send its reply to a stop command
+            monitor.join(5000);
+        }
+        System.out.println(STOPPED);
+    }
+
+    private int getGracefulStopTimeoutSeconds() {
+        return Integer.parseInt(settings.getProperty(GRACEFUL_STOP_TIMEOUT_SECONDS, "0"));
+    }
+
+    private String getPorts() {
+        StringBuilder ports = new StringBuilder();
+        for (Object connector : ((Server) server.getProxiedObject()).getConnectors()) {
+            if (connector instanceof NetworkConnector) {
+                ports.append(ports.length() == 0 ? "" : ", ").append(((NetworkConnector) connector).getLocalPort());
+            }
+        }
+        return ports.toString();
+    }
+
+    public synchronized StopResult stopServer() throws Exception {
+        if (stopped.getCount() == 0) {
+            return new StopResult(true, 0, 0, 0, new ArrayList<Integer>());
+        }
+        try {
+            return server.stop(getGracefulStopTimeoutSeconds() * 1000L);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    public synchronized void restartWebApp(boolean reconfigureScanner) throws Exception {
+        long start = System.nanoTime();
+        webApp.stop();
+        if (staticResourceCache != null) {
+            staticResourceCache.flushCache();
+        }
+        webApp.start();
+        System.out.println("Restarted " + webApp.getContextPath() + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Redeploys the webapp with the classpath and descriptors of the deployment.
+     */
+    public synchronized void deployWarm(Properties deployment) throws Exception {
+        String contextPath = deployment.getProperty(Monitor.DEPLOYMENT_CONTEXT_PATH);
+        if (!webApp.getContextPath().equals(contextPath.startsWith("/") ? contextPath : "/" + contextPath)) {
+            throw new IllegalArgumentException("The server runs " + webApp.getContextPath() + ", stop it to run " + contextPath);
+        }
+        long start = System.nanoTime();
+        webApp.stop();
+        configureWebApp(deployment);
+        webApp.start();
+        System.out.println("Redeployed " + webApp.getContextPath() + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    public JettyPluginServerEclipse getServer() {
+        return server;
+    }
+
+    public WebAppContext getWebAppConfig() {
+        return webApp;
+    }
+
+    public static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    /**
+     * Stores the properties of a settings bean that are set under the given prefix. Lists are stored comma separated.
+     */
+    public static void storeSettings(Properties properties, String prefix, Object bean) throws Exception {
+        if (bean == null) {
+            return;
+        }
+        for (PropertyDescriptor property : getProperties(bean)) {
+            Object value = property.getReadMethod().invoke(bean);
+            if (value instanceof List) {
+                StringBuilder joined = new StringBuilder();
+                for (Object element : (List<?>) value) {
+                    joined.append(joined.length() == 0 ? "" : ",").append(element);
+                }
+                value = joined;
+            }
+            if (value != null) {
+                properties.setProperty(prefix + property.getName(), value.toString());
+            }
+        }
+    }
+
+    /**
+     * Sets the properties of a settings bean stored under the given prefix, returning null if none are stored.
+     */
+    public static <T> T loadSettings(Properties properties, String prefix, T bean) throws Exception {
+        boolean found = false;
+        for (PropertyDescriptor property : getProperties(bean)) {
+            String value = properties.getProperty(prefix + property.getName());
+            if (value == null) {
+                continue;
+            }
+            found = true;
+            Class<?> type = property.getPropertyType();
+            Object converted;
+            if (type == Integer.class || type == int.class) {
+                converted = Integer.valueOf(value);
+            } else if (type == Long.class || type == long.class) {
+                converted = Long.valueOf(value);
+            } else if (type == Boolean.class || type == boolean.class) {
+                converted = Boolean.valueOf(value);
+            } else if (type == File.class) {
+                converted = new File(value);
+            } else if (type == List.class) {
+                converted = value.length() == 0 ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(value.split(",")));
+            } else {
+                converted = value;
+            }
+            property.getWriteMethod().invoke(bean, converted);
+        }
+        return found ? bean : null;
+    }
+
+    private static List<PropertyDescriptor> getProperties(Object bean) throws Exception {
+        BeanInfo beanInfo = Introspector.getBeanInfo(bean.getClass(), Object.class);
+        List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+        for (PropertyDescriptor property : beanInfo.getPropertyDescriptors()) {
+            Method read = property.getReadMethod();
+            if (read != null && property.getWriteMethod() != null) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,110 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.eclipse.jetty.server.HttpChannelState;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps count of the requests in flight, including asynchronous ones, so a stop can wait for them to finish. Once
+ * shut down, requests that still arrive on open connections are refused with 503 and the connection is closed.
+ */
+public class GracefulStopHandler extends HandlerWrapper {
+    private final AtomicLong active = new AtomicLong();
+    private final Object drained = new Object();
+    private volatile boolean shutdown;
+
+    @Override
+    public void handle(String path, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        HttpChannelState state = baseRequest.getHttpChannelState();
+        if (!state.isInitial()) {
+            super.handle(path, baseRequest, request, response);
+            return;
+        }
+        if (shutdown) {
+            baseRequest.setHandled(true);
+            response.setHeader("Connection", "close");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        active.incrementAndGet();
+        try {
+            super.handle(path, baseRequest, request, response);
+        } finally {
+            if (state.isSuspended()) {
+                state.addListener(new CompletionListener());
+            } else {
+                completed();
+            }
+        }
+    }
+
+    private void completed() {
+        if (active.decrementAndGet() == 0 && shutdown) {
+            synchronized (drained) {
+                drained.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Refuses new requests from now on.
+     *
+     * @return the number of requests in flight
+     */
+    public long shutdown() {
+        shutdown = true;
+        return active.get();
+    }
+
+    /**
+     * Waits until no request is in flight any more, or the timeout expires.
+     *
+     * @return the number of requests still in flight
+     */
+    public long awaitDrained(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (drained) {
+            long remaining;
+            while (active.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                drained.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            }
+        }
+        return active.get();
+    }
+
+    public long getActive() {
+        return active.get();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        shutdown = false;
+        super.doStart();
+    }
+
+    private class CompletionListener implements AsyncListener {
+        public void onComplete(AsyncEvent event) throws IOException {
+            completed();
+        }
+
+        public void onTimeout(AsyncEvent event) throws IOException {
+        }
+
+        public void onError(AsyncEvent event) throws IOException {
+        }
+
+        public void onStartAsync(AsyncEvent event) throws IOException {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Disk-backed cache of what a jar contributes to a webapp: a web-fragment.xml, META-INF/resources and TLDs. Results
+ * are keyed by the jar's checksum, and the checksum of a path is remembered together with its size and modification
+ * time, so a jar that did not change is neither rehashed nor reopened.
+ */
+public class JarScanCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JarScanCache.class);
+
+    private static final int VERSION = 1;
+
+    private final File cacheFile;
+    private final Map<String, Checksum> checksums = new ConcurrentHashMap<String, Checksum>();
+    private final Map<Long, Result> results = new ConcurrentHashMap<Long, Result>();
+    private volatile boolean dirty;
+
+    private int hits;
+    private int misses;
+    private long cachedScanNanos;
+
+    private JarScanCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Loads the cache stored in the given file, or starts an empty one if there is none or it cannot be read.
+     */
+    public static JarScanCache load(File cacheFile) {
+        JarScanCache cache = new JarScanCache(cacheFile);
+        if (!cacheFile.isFile()) {
+            return cache;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                if (in.readInt() != VERSION) {
+                    return cache;
+                }
+                int checksumCount = in.readInt();
+                for (int i = 0; i < checksumCount; i++) {
+                    String path = in.readUTF();
+                    cache.checksums.put(path, new Checksum(in.readLong(), in.readLong(), in.readLong()));
+                }
+                int resultCount = in.readInt();
+                for (int i = 0; i < resultCount; i++) {
+                    long checksum = in.readLong();
+                    boolean fragment = in.readBoolean();
+                    boolean resources = in.readBoolean();
+                    long scanNanos = in.readLong();
+                    int tldCount = in.readInt();
+                    List<String> tlds = new ArrayList<String>(tldCount);
+                    for (int j = 0; j < tldCount; j++) {
+                        tlds.add(in.readUTF());
+                    }
+                    cache.results.put(checksum, new Result(fragment, resources, tlds, scanNanos));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read jar scan cache " + cacheFile + ", starting a new one", e);
+            cache.checksums.clear();
+            cache.results.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the scan result for the given jar, scanning it only if no result for its content is cached. Safe to call
+     * from several threads, jars are hashed and scanned outside of any lock.
+     */
+    public Result get(File jar) throws IOException {
+        long checksum = checksum(jar);
+        Result result = results.get(checksum);
+        if (result != null) {
+            synchronized (this) {
+                hits++;
+                cachedScanNanos += result.getScanNanos();
+            }
+            return result;
+        }
+        result = scan(jar);
+        results.put(checksum, result);
+        dirty = true;
+        synchronized (this) {
+            misses++;
+        }
+        return result;
+    }
+
+    private long checksum(File jar) throws IOException {
+        String path = jar.getCanonicalPath();
+        long size = jar.length();
+        long lastModified = jar.lastModified();
+        Checksum checksum = checksums.get(path);
+        if (checksum == null || checksum.size != size || checksum.lastModified != lastModified) {
+            checksum = new Checksum(size, lastModified, ClasspathSnapshot.hash(jar));
+            checksums.put(path, checksum);
+            dirty = true;
+        }
+        return checksum.value;
+    }
+
+    /**
+     * Opens the jar and records the entries the webapp configurations are interested in.
+     */
+    public static Result scan(File jar) throws IOException {
+        long start = System.nanoTime();
+        boolean fragment = false;
+        boolean resources = false;
+        List<String> tlds = new ArrayList<String>();
+        JarFile jarFile = new JarFile(jar);
+        try {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (!name.startsWith("META-INF/")) {
+                    continue;
+                }
+                if (name.equals("META-INF/web-fragment.xml")) {
+                    fragment = true;
+                } else if (name.equals("META-INF/resources/")) {
+                    resources = true;
+                } else if (name.toLowerCase(Locale.ENGLISH).endsWith(".tld")) {
+                    tlds.add(name);
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+        return new Result(fragment, resources, tlds, System.nanoTime() - start);
+    }
+
+    /**
+     * Logs the hits and misses since the last report, comparing the time spent with a scan of every jar.
+     */
+    public synchronized void report(long elapsedNanos) {
+        LOGGER.info("Jar scan: {} cache hits, {} misses, took {} ms, scanning all jars would have taken about {} ms",
+                hits, misses, elapsedNanos / 1000000, (elapsedNanos + cachedScanNanos) / 1000000);
+        hits = 0;
+        misses = 0;
+        cachedScanNanos = 0;
+    }
+
+    /**
+     * Writes the cache if it changed since it was loaded or last saved.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try {
+            cacheFile.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(VERSION);
+                out.writeInt(checksums.size());
+                for (Map.Entry<String, Checksum> entry : checksums.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().lastModified);
+                    out.writeLong(entry.getValue().value);
+                }
+                out.writeInt(results.size());
+                for (Map.Entry<Long, Result> entry : results.entrySet()) {
+                    Result result = entry.getValue();
+                    out.writeLong(entry.getKey());
+                    out.writeBoolean(result.hasWebFragment());
+                    out.writeBoolean(result.hasResources());
+                    out.writeLong(result.getScanNanos());
+                    out.writeInt(result.getTlds().size());
+                    for (String tld : result.getTlds()) {
+                        out.writeUTF(tld);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!tmpFile.renameTo(cacheFile)) {
+                    throw new IOException("Could not rename " + tmpFile + " to " + cacheFile);
+                }
+            }
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.warn("Could not write jar scan cache " + cacheFile, e);
+        }
+    }
+
+    private static class Checksum {
+        private final long size;
+        private final long lastModified;
+        private final long value;
+
+        private Checksum(long size, long lastModified, long value) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+    }
+
+    /**
+     * What a single jar contributes to the webapp.
+     */
+    public static class Result {
+        private final boolean webFragment;
+        private final boolean resources;
+        private final List<String> tlds;
+        private final long scanNanos;
+
+        public Result(boolean webFragment, boolean resources, List<String> tlds, long scanNanos) {
+            this.webFragment = webFragment;
+            this.resources = resources;
+            this.tlds = Collections.unmodifiableList(tlds);
+            this.scanNanos = scanNanos;
+        }
+
+        public boolean hasWebFragment() {
+            return webFragment;
+        }
+
+        public boolean hasResources() {
+            return resources;
+        }
+
+        public List<String> getTlds() {
+            return tlds;
+        }
+
+        public long getScanNanos() {
+            return scanNanos;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.chriswk.gradle.plugins.jetty9.internal;
 
 import org.eclipse.jetty.plus.webapp.PlusConfiguration;
+import org.eclipse.jetty.webapp.WebAppClassLoader;
+import org.eclipse.jetty.webapp.WebAppContext;
 
 import java.io.File;
 import java.util.List;
@@ -21,12 +23,22 @@ public class Jetty9Configuration extends PlusConfiguration {
         this.webXmlFile = webXmlFile;
     }
 
+    @Override
+    public void configure(WebAppContext context) throws Exception {
+        super.configure(context);
+        configureClassLoader(context);
+    }
+
     /**
      * Set up the classloader for the webapp, using the various parts of the gradle project
-     *
-     * @see org.mortbay.jetty.webapp.Configuration#configureClassLoader()
      */
-
-    public void configureClassLoader() throws Exception {
+    public void configureClassLoader(WebAppContext context) throws Exception {
+        if (classPathFiles == null || !(context.getClassLoader() instanceof WebAppClassLoader)) {
+            return;
+        }
+        WebAppClassLoader classLoader = (WebAppClassLoader) context.getClassLoader();
+        for (File classPathFile : classPathFiles) {
+            classLoader.addClassPath(classPathFile.getCanonicalPath());
+        }
     }
 }
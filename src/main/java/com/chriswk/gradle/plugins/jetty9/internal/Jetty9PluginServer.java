@@ -1,5 +1,7 @@
 package com.chriswk.gradle.plugins.jetty9.internal;
 
+import com.chriswk.gradle.plugins.jetty9.Jetty9Compression;
+import com.chriswk.gradle.plugins.jetty9.Jetty9Connector;
 import org.eclipse.jetty.security.ConstraintSecurityHandler;
 import org.eclipse.jetty.security.SecurityHandler;
 import org.eclipse.jetty.server.*;
@@ -8,10 +10,15 @@ import org.eclipse.jetty.server.handler.DefaultHandler;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.RequestLogHandler;
 import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public class Jetty9PluginServer implements JettyPluginServerEclipse {
     private static final Logger LOGGER = LoggerFactory.getLogger(Jetty9PluginServer.class);
 
@@ -25,8 +32,21 @@ public class Jetty9PluginServer implements JettyPluginServerEclipse {
 
     private RequestLog requestLog;
 
+    private boolean requestStatistics;
+    private RequestStatisticsHandler requestStatisticsHandler;
+
+    private boolean gracefulStop;
+    private GracefulStopHandler gracefulStopHandler;
+
+    private Jetty9Compression compression;
+    private CompressionHandler compressionHandler;
+
     public Jetty9PluginServer() {
-        this.server = new Server();
+        this(null);
+    }
+
+    public Jetty9PluginServer(ThreadPool threadPool) {
+        this.server = threadPool == null ? new Server() : new Server(threadPool);
         this.server.setStopAtShutdown(true);
         Resource.setDefaultUseCaches(true);
     }
@@ -94,17 +114,68 @@ public class Jetty9PluginServer implements JettyPluginServerEclipse {
         this.contexts = (ContextHandlerCollection) server.getChildHandlerByClass(ContextHandlerCollection.class);
         if (this.contexts == null) {
             this.contexts = new ContextHandlerCollection();
+            Handler contextsHandler = this.contexts;
+            if (this.compression != null) {
+                this.compressionHandler = new CompressionHandler(this.compression.getMinSize(), this.compression.getLevel(),
+                        this.compression.getMimeTypes(), this.compression.getExcludedMimeTypes(),
+                        this.compression.getDeflaterPoolSize());
+                this.compressionHandler.setHandler(this.contexts);
+                contextsHandler = this.compressionHandler;
+            }
             this.handlers = (HandlerCollection) server.getChildHandlerByClass(HandlerCollection.class);
             if (this.handlers == null) {
                 this.handlers = new HandlerCollection();
                 this.server.setHandler(handlers);
-                this.handlers.setHandlers(new Handler[]{this.contexts, this.defaultHandler, this.requestLogHandler});
+                this.handlers.setHandlers(new Handler[]{contextsHandler, this.defaultHandler, this.requestLogHandler});
             } else {
-                this.handlers.addHandler(this.contexts);
+                this.handlers.addHandler(contextsHandler);
             }
+        } else if (this.compression != null) {
+            LOGGER.warn("The contexts are set up by jetty.xml, responses are not compressed");
+        }
+
+        if (this.requestStatistics) {
+            this.requestStatisticsHandler = new RequestStatisticsHandler();
+            this.requestStatisticsHandler.setHandler(this.server.getHandler());
+            this.server.setHandler(this.requestStatisticsHandler);
+        }
+
+        if (this.gracefulStop) {
+            this.gracefulStopHandler = new GracefulStopHandler();
+            this.gracefulStopHandler.setHandler(this.server.getHandler());
+            this.server.setHandler(this.gracefulStopHandler);
         }
     }
 
+    @Override
+    public void setRequestStatistics(boolean requestStatistics) {
+        this.requestStatistics = requestStatistics;
+    }
+
+    @Override
+    public void setGracefulStop(boolean gracefulStop) {
+        this.gracefulStop = gracefulStop;
+    }
+
+    @Override
+    public void setCompression(Jetty9Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Returns the handler compressing responses, or null if they are not compressed.
+     */
+    public CompressionHandler getCompressionHandler() {
+        return this.compressionHandler;
+    }
+
+    /**
+     * Returns the handler collecting request statistics, or null if they are not collected.
+     */
+    public RequestStatisticsHandler getRequestStatisticsHandler() {
+        return this.requestStatisticsHandler;
+    }
+
     @Override
     public void addWebApplication(WebAppContext webapp) throws Exception {
         contexts.addHandler(webapp);
@@ -116,13 +187,80 @@ public class Jetty9PluginServer implements JettyPluginServerEclipse {
         this.server.start();
     }
 
+    /**
+     * Stops the server. With a graceful stop timeout the connectors stop accepting first, and the requests in flight
+     * get up to the timeout to finish before the server is stopped.
+     */
+    @Override
+    public StopResult stop(long gracefulTimeoutMillis) throws Exception {
+        long start = System.nanoTime();
+        List<Integer> ports = new ArrayList<Integer>();
+        for (Connector connector : this.server.getConnectors()) {
+            if (connector instanceof NetworkConnector && ((NetworkConnector) connector).getLocalPort() > 0) {
+                ports.add(((NetworkConnector) connector).getLocalPort());
+            }
+        }
+
+        boolean graceful = this.gracefulStopHandler != null && gracefulTimeoutMillis > 0 && this.server.isStarted();
+        long drained = 0;
+        long aborted = 0;
+        if (graceful) {
+            for (Connector connector : this.server.getConnectors()) {
+                if (connector instanceof NetworkConnector) {
+                    ((NetworkConnector) connector).close();
+                }
+            }
+            long inFlight = this.gracefulStopHandler.shutdown();
+            LOGGER.info("Waiting up to " + gracefulTimeoutMillis + " ms for " + inFlight + " requests to finish");
+            aborted = this.gracefulStopHandler.awaitDrained(gracefulTimeoutMillis);
+            drained = Math.max(0, inFlight - aborted);
+        }
+        this.server.stop();
+
+        StopResult result = new StopResult(graceful, drained, aborted, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), ports);
+        LOGGER.info(result.toString());
+        return result;
+    }
+
     @Override
     public Object createDefaultConnector(int port) throws Exception {
-        ServerConnector defaultConnector = new ServerConnector(this.server);
-        defaultConnector.setPort(port);
-        defaultConnector.setIdleTimeout(DEFAULT_MAX_IDLE_TIME);
+        return createConnector(null, port);
+    }
+
+    @Override
+    public Object createConnector(Jetty9Connector settings, int port) throws Exception {
+        if (settings == null) {
+            settings = new Jetty9Connector("default");
+        }
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        if (settings.getOutputBufferSize() != null) {
+            httpConfig.setOutputBufferSize(settings.getOutputBufferSize());
+        }
+        if (settings.getRequestHeaderSize() != null) {
+            httpConfig.setRequestHeaderSize(settings.getRequestHeaderSize());
+        }
+        if (settings.getResponseHeaderSize() != null) {
+            httpConfig.setResponseHeaderSize(settings.getResponseHeaderSize());
+        }
+
+        int acceptors = settings.getAcceptors() == null ? -1 : settings.getAcceptors();
+        int selectors = settings.getSelectors() == null ? -1 : settings.getSelectors();
+        ServerConnector connector = new ServerConnector(this.server, null, null, null, acceptors, selectors,
+                new HttpConnectionFactory(httpConfig));
+        connector.setPort(port);
+        connector.setHost(settings.getHost());
+        connector.setIdleTimeout(settings.getIdleTimeout() == null ? DEFAULT_MAX_IDLE_TIME : settings.getIdleTimeout());
+        if (settings.getAcceptQueueSize() != null) {
+            connector.setAcceptQueueSize(settings.getAcceptQueueSize());
+        }
+        if (settings.getSoLingerTime() != null) {
+            connector.setSoLingerTime(settings.getSoLingerTime());
+        }
 
-        return defaultConnector;
+        LOGGER.info("Connector " + settings.getName() + " on " + (settings.getHost() == null ? "*" : settings.getHost()) + ":" + port
+                + " with " + connector.getAcceptors() + " acceptors and " + connector.getSelectorManager().getSelectorCount()
+                + " selectors for " + Runtime.getRuntime().availableProcessors() + " cores");
+        return connector;
     }
 
     @Override
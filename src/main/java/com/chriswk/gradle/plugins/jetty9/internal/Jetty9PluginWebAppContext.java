@@ -1,22 +1,52 @@
 package com.chriswk.gradle.plugins.jetty9.internal;
 
 import org.eclipse.jetty.plus.webapp.EnvConfiguration;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.MultiException;
 import org.eclipse.jetty.webapp.*;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class Jetty9PluginWebAppContext extends WebAppContext {
+    private static final String START_CONTEXT_PHASE = "Start webapp context";
+    private static final String PRE_CONFIGURE_PHASE = "Pre-configure webapp (class loader, descriptors, jar scan)";
+    private static final String CONFIGURE_PHASE = "Configuration chain";
+    private static final String DESCRIPTORS_PHASE = "Apply descriptors and start listeners";
+    private static final String SERVLET_INIT_PHASE = "Initialize servlets";
+    private static final String SERVLET_PHASE = "Initialize servlet ";
+
     private List<File> classpathFiles;
+    private StartupTimer startupTimer;
+    private ClassLoader dependencyClassLoader;
     private File jettyEnvXmlFile;
     private File webXmlFile;
+    private boolean parallelServletInit;
     private WebInfConfiguration webInfConfig = new WebInfConfiguration();
+    private WebXmlConfiguration webXmlConfig = new WebXmlConfiguration();
+    private CachingMetaInfConfiguration metaInfConfig = new CachingMetaInfConfiguration();
+    private FragmentConfiguration fragmentConfig = new FragmentConfiguration();
     private EnvConfiguration envConfig = new EnvConfiguration();
     private Jetty9Configuration gradleConfig = new Jetty9Configuration();
     private JettyWebXmlConfiguration jettyWebConfig = new JettyWebXmlConfiguration();
     private TagLibConfiguration tagConfig = new TagLibConfiguration();
     private Configuration[] configs = new Configuration[]{
-            webInfConfig, envConfig, gradleConfig, jettyWebConfig, tagConfig
+            webInfConfig, webXmlConfig, metaInfConfig, fragmentConfig, envConfig, gradleConfig, jettyWebConfig, tagConfig
     };
 
     public Jetty9PluginWebAppContext() {
@@ -32,6 +62,50 @@ public class Jetty9PluginWebAppContext extends WebAppContext {
         return this.classpathFiles;
     }
 
+    /**
+     * Sets a long-lived class loader holding the dependency jars. When set, each start of the webapp creates a fresh
+     * webapp class loader for the classpath files on top of it instead of reloading the dependencies as well.
+     */
+    public void setDependencyClassLoader(ClassLoader dependencyClassLoader) {
+        this.dependencyClassLoader = dependencyClassLoader;
+    }
+
+    public ClassLoader getDependencyClassLoader() {
+        return this.dependencyClassLoader;
+    }
+
+    /**
+     * Sets the cache consulted when scanning jars for web fragments, META-INF/resources and TLDs.
+     */
+    public void setJarScanCache(JarScanCache jarScanCache) {
+        metaInfConfig.setJarScanCache(jarScanCache);
+    }
+
+    /**
+     * Scan jars for web fragments, META-INF/resources and TLDs in parallel.
+     */
+    public void setParallelJarScanning(boolean parallelJarScanning) {
+        metaInfConfig.setParallel(parallelJarScanning);
+    }
+
+    /**
+     * Initialize the load-on-startup servlets that share a load-on-startup value concurrently.
+     */
+    public void setParallelServletInit(boolean parallelServletInit) {
+        this.parallelServletInit = parallelServletInit;
+    }
+
+    /**
+     * Sets the timer the phases of the next start of the webapp are recorded with.
+     */
+    public void setStartupTimer(StartupTimer startupTimer) {
+        this.startupTimer = startupTimer;
+    }
+
+    public StartupTimer getStartupTimer() {
+        return this.startupTimer;
+    }
+
     public void setWebXmlFile(File webXmlFile) {
         this.webXmlFile = webXmlFile;
     }
@@ -44,26 +118,210 @@ public class Jetty9PluginWebAppContext extends WebAppContext {
         return this.jettyEnvXmlFile;
     }
 
-    public void configure() {
-        setConfigurations(configs);
+    public void doStart() throws Exception {
         gradleConfig.setClassPathConfiguration(classpathFiles);
         gradleConfig.setWebXml(webXmlFile);
+        if (this.webXmlFile != null && this.webXmlFile.exists()) {
+            setDescriptor(this.webXmlFile.getCanonicalPath());
+        }
+        if (this.jettyEnvXmlFile != null) {
+            envConfig.setJettyEnvXml(this.jettyEnvXmlFile.toURI().toURL());
+        }
+        if (this.dependencyClassLoader != null) {
+            setClassLoader(new WebAppClassLoader(this.dependencyClassLoader, this));
+        }
+        super.doStart();
+    }
+
+    public void doStop() throws Exception {
+        super.doStop();
+    }
+
+    @Override
+    public void preConfigure() throws Exception {
+        begin(PRE_CONFIGURE_PHASE);
+        try {
+            super.preConfigure();
+        } finally {
+            end(PRE_CONFIGURE_PHASE);
+        }
+    }
+
+    @Override
+    public void configure() throws Exception {
+        begin(CONFIGURE_PHASE);
+        try {
+            super.configure();
+        } finally {
+            end(CONFIGURE_PHASE);
+        }
+        // WebAppContext.startContext() goes on with the descriptors and the context listeners, ended by the servlet init
+        begin(DESCRIPTORS_PHASE);
+    }
+
+    @Override
+    protected void startContext() throws Exception {
+        begin(START_CONTEXT_PHASE);
+        try {
+            super.startContext();
+        } finally {
+            end(START_CONTEXT_PHASE);
+        }
+    }
+
+    @Override
+    protected ServletHandler newServletHandler() {
+        return new ServletHandler() {
+            @Override
+            public void initialize() throws Exception {
+                end(DESCRIPTORS_PHASE);
+                begin(SERVLET_INIT_PHASE);
+                try {
+                    initializeLoadOnStartupServlets(this);
+                    super.initialize();
+                } finally {
+                    end(SERVLET_INIT_PHASE);
+                }
+            }
+
+            @Override
+            public void doHandle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                RequestStatisticsHandler.servletEntered(baseRequest);
+                super.doHandle(target, baseRequest, request, response);
+            }
+        };
+    }
+
+    /**
+     * Starts the filters and then the load-on-startup servlets in load-on-startup order, timing each servlet, before
+     * Jetty starts whatever else the handler holds. With parallel servlet init the servlets sharing a load-on-startup
+     * value are initialized on a pool of up to one thread per core, and the next group only starts once all of them
+     * are done. The pool threads get the webapp class loader as context class loader.
+     */
+    private void initializeLoadOnStartupServlets(ServletHandler handler) throws Exception {
+        MultiException failures = new MultiException();
+        for (FilterHolder filter : handler.getFilters() == null ? new FilterHolder[0] : handler.getFilters()) {
+            try {
+                filter.start();
+            } catch (Exception e) {
+                failures.add(e);
+            }
+        }
+        List<List<ServletHolder>> groups = getLoadOnStartupGroups(handler.getServlets());
+        ExecutorService pool = null;
         try {
-            if (this.jettyEnvXmlFile != null) {
-                envConfig.setJettyEnvXml(this.jettyEnvXmlFile.toURI().toURL());
+            for (List<ServletHolder> group : groups) {
+                if (parallelServletInit && group.size() > 1) {
+                    if (pool == null) {
+                        pool = Executors.newFixedThreadPool(Math.min(getLargestSize(groups), Runtime.getRuntime().availableProcessors()),
+                                new ThreadFactory() {
+                                    public Thread newThread(Runnable runnable) {
+                                        return new Thread(runnable, "Jetty9PluginServletInit");
+                                    }
+                                });
+                    }
+                    initializeParallel(group, pool, failures);
+                } else {
+                    for (ServletHolder servlet : group) {
+                        try {
+                            initialize(servlet, null);
+                        } catch (Exception e) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
         }
+        // a failed holder would be started again by ServletHandler.initialize()
+        failures.ifExceptionThrow();
+    }
 
+    private void initializeParallel(List<ServletHolder> group, ExecutorService pool, MultiException failures)
+            throws InterruptedException {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(group.size());
+        for (final ServletHolder servlet : group) {
+            tasks.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    initialize(servlet, contextClassLoader);
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            }
+        }
     }
 
-    public void doStart() throws Exception {
-        super.doStart();
+    private void initialize(ServletHolder servlet, ClassLoader contextClassLoader) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        if (contextClassLoader != null) {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+        long start = System.nanoTime();
+        try {
+            servlet.start();
+        } finally {
+            thread.setContextClassLoader(original);
+            if (startupTimer != null) {
+                startupTimer.record(SERVLET_PHASE + servlet.getName(), start, System.nanoTime() - start);
+            }
+        }
     }
 
-    public void doStop() throws Exception {
-        super.doStop();
+    /**
+     * Returns the servlets Jetty initializes on startup, those with a positive load-on-startup value, grouped by that
+     * value in ascending order. Servlets of a JSP file whose class is only resolved by the handler are left to it.
+     */
+    private static List<List<ServletHolder>> getLoadOnStartupGroups(ServletHolder[] servlets) {
+        List<List<ServletHolder>> groups = new ArrayList<List<ServletHolder>>();
+        if (servlets == null) {
+            return groups;
+        }
+        ServletHolder[] sorted = servlets.clone();
+        Arrays.sort(sorted);
+        List<ServletHolder> group = null;
+        for (ServletHolder servlet : sorted) {
+            if (servlet.getInitOrder() <= 0 || (servlet.getClassName() == null && servlet.getForcedPath() != null)) {
+                continue;
+            }
+            if (group == null || group.get(0).getInitOrder() != servlet.getInitOrder()) {
+                group = new ArrayList<ServletHolder>();
+                groups.add(group);
+            }
+            group.add(servlet);
+        }
+        return groups;
+    }
+
+    private static int getLargestSize(List<List<ServletHolder>> groups) {
+        int largest = 1;
+        for (List<ServletHolder> group : groups) {
+            largest = Math.max(largest, group.size());
+        }
+        return largest;
+    }
+
+    private void begin(String phase) {
+        if (startupTimer != null) {
+            startupTimer.begin(phase);
+        }
+    }
+
+    private void end(String phase) {
+        if (startupTimer != null) {
+            startupTimer.end(phase);
+        }
     }
 
 }
@@ -1,5 +1,7 @@
 package com.chriswk.gradle.plugins.jetty9.internal;
 
+import com.chriswk.gradle.plugins.jetty9.Jetty9Compression;
+import com.chriswk.gradle.plugins.jetty9.Jetty9Connector;
 import org.eclipse.jetty.webapp.WebAppContext;
 
 public interface JettyPluginServerEclipse extends Proxy {
@@ -12,13 +14,23 @@ public interface JettyPluginServerEclipse extends Proxy {
     public void setLoginServices(Object[] services) throws Exception;
     public Object[] getLoginServices();
 
+    public void setRequestStatistics(boolean requestStatistics);
+
+    public void setGracefulStop(boolean gracefulStop);
+
+    public void setCompression(Jetty9Compression compression);
+
     public void configureHandlers() throws Exception;
 
     public void addWebApplication(WebAppContext webapp) throws Exception;
 
     public void start() throws Exception;
 
+    public StopResult stop(long gracefulTimeoutMillis) throws Exception;
+
     public Object createDefaultConnector(int port) throws Exception;
 
+    public Object createConnector(Jetty9Connector settings, int port) throws Exception;
+
     public void join() throws Exception;
 }
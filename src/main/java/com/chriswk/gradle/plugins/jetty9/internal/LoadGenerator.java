@@ -0,0 +1,501 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop HTTP load generator. A fixed number of keep-alive connections are driven from a single selector thread,
+ * each connection sends its next GET as soon as the previous response is complete. The urls are requested round robin.
+ * Latencies of requests started after the warm-up are recorded per url and overall. A connection that cannot be
+ * established is counted as a connect error and tried again after a backoff that doubles with each failed attempt.
+ */
+public class LoadGenerator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MIN_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final InetSocketAddress address;
+    private final List<String> paths;
+    private final ByteBuffer[] requests;
+    private final int connections;
+
+    private final LatencyHistogram overall = new LatencyHistogram();
+    private final LatencyHistogram[] perPath;
+    private final long[] errorsPerPath;
+    private long errors;
+    private long connectErrors;
+    private int nextPath;
+    private final List<Connection> reconnects = new ArrayList<Connection>();
+
+    private Selector selector;
+    private long measureStart;
+    private boolean running;
+
+    public LoadGenerator(String host, int port, List<String> paths, int connections) {
+        this.address = new InetSocketAddress(host, port);
+        this.paths = new ArrayList<String>(paths);
+        this.connections = connections;
+        this.requests = new ByteBuffer[paths.size()];
+        this.perPath = new LatencyHistogram[paths.size()];
+        this.errorsPerPath = new long[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            String request = "GET " + paths.get(i) + " HTTP/1.1\r\nHost: " + host + ":" + port + "\r\nAccept: */*\r\n"
+                    + "User-Agent: jetty9Bench\r\n\r\n";
+            requests[i] = ByteBuffer.wrap(request.getBytes(ASCII)).asReadOnlyBuffer();
+            perPath[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Runs the warm-up followed by the measurement and returns the results of the measurement.
+     */
+    public Result run(long warmupMillis, long durationMillis) throws IOException {
+        selector = Selector.open();
+        try {
+            long now = System.nanoTime();
+            long measureEnd = now + TimeUnit.MILLISECONDS.toNanos(warmupMillis + durationMillis);
+            measureStart = now + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+            running = true;
+            for (int i = 0; i < connections; i++) {
+                connect(new Connection());
+            }
+            boolean warm = warmupMillis <= 0;
+            while ((now = System.nanoTime()) < measureEnd) {
+                if (!warm && now >= measureStart) {
+                    LOGGER.info("Warm-up finished, measuring for {} s", TimeUnit.MILLISECONDS.toSeconds(durationMillis));
+                    warm = true;
+                }
+                long wakeUp = Math.min(warm ? measureEnd : measureStart, reconnect(now));
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wakeUp - now)));
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle((Connection) key.attachment(), key);
+                }
+                selector.selectedKeys().clear();
+            }
+            running = false;
+            return new Result(paths, overall, perPath, errorsPerPath, errors, connectErrors, System.nanoTime() - measureStart);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly((Connection) key.attachment());
+            }
+            selector.close();
+        }
+    }
+
+    private void connect(Connection connection) {
+        connection.request = null;
+        boolean connected;
+        try {
+            SocketChannel channel = SocketChannel.open();
+            connection.channel = channel;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connected = channel.connect(address);
+            connection.key = channel.register(selector, connected ? 0 : SelectionKey.OP_CONNECT, connection);
+        } catch (IOException e) {
+            connectFailed(connection, e);
+            return;
+        }
+        if (connected) {
+            connected(connection);
+        }
+    }
+
+    private void connected(Connection connection) {
+        connection.connectFailures = 0;
+        try {
+            send(connection);
+        } catch (IOException e) {
+            LOGGER.debug("Connection failed, reconnecting", e);
+            fail(connection);
+        }
+    }
+
+    /**
+     * Counts the failed attempt and schedules the next one after the backoff of the connection.
+     */
+    private void connectFailed(Connection connection, IOException e) {
+        LOGGER.debug("Could not connect", e);
+        if (System.nanoTime() >= measureStart) {
+            connectErrors++;
+        }
+        closeQuietly(connection);
+        if (!running) {
+            return;
+        }
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(connection.connectFailures, 10));
+        connection.connectFailures++;
+        connection.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+        reconnects.add(connection);
+    }
+
+    /**
+     * Connects the connections whose backoff is over and returns when the next one is due, Long.MAX_VALUE if none is.
+     */
+    private long reconnect(long now) {
+        if (reconnects.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        List<Connection> due = new ArrayList<Connection>();
+        for (Iterator<Connection> iterator = reconnects.iterator(); iterator.hasNext(); ) {
+            Connection connection = iterator.next();
+            if (connection.retryAt <= now) {
+                iterator.remove();
+                due.add(connection);
+            }
+        }
+        for (Connection connection : due) {
+            connect(connection);
+        }
+        long next = Long.MAX_VALUE;
+        for (Connection connection : reconnects) {
+            next = Math.min(next, connection.retryAt);
+        }
+        return next;
+    }
+
+    private void handle(Connection connection, SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isConnectable()) {
+            try {
+                connection.channel.finishConnect();
+            } catch (IOException e) {
+                connectFailed(connection, e);
+                return;
+            }
+            connected(connection);
+            return;
+        }
+        try {
+            if (key.isWritable()) {
+                write(connection);
+            } else if (key.isReadable()) {
+                read(connection);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Connection failed, reconnecting", e);
+            fail(connection);
+        }
+    }
+
+    private void send(Connection connection) throws IOException {
+        connection.path = nextPath;
+        nextPath = (nextPath + 1) % requests.length;
+        connection.request = requests[connection.path].duplicate();
+        connection.response.reset();
+        connection.start = System.nanoTime();
+        write(connection);
+    }
+
+    private void write(Connection connection) throws IOException {
+        connection.channel.write(connection.request);
+        connection.key.interestOps(connection.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer buffer = connection.buffer;
+        buffer.clear();
+        int read = connection.channel.read(buffer);
+        if (read < 0) {
+            if (connection.response.endOfInput()) {
+                complete(connection);
+            } else {
+                fail(connection);
+            }
+            return;
+        }
+        buffer.flip();
+        if (connection.response.parse(buffer)) {
+            complete(connection);
+        }
+    }
+
+    private void complete(Connection connection) throws IOException {
+        long latency = System.nanoTime() - connection.start;
+        if (connection.start >= measureStart) {
+            overall.record(latency);
+            perPath[connection.path].record(latency);
+            if (connection.response.status >= 400) {
+                errors++;
+                errorsPerPath[connection.path]++;
+            }
+        }
+        if (!running) {
+            return;
+        }
+        if (connection.response.close) {
+            closeQuietly(connection);
+            connect(connection);
+        } else {
+            send(connection);
+        }
+    }
+
+    private void fail(Connection connection) {
+        if (connection.start >= measureStart && connection.request != null) {
+            errors++;
+            errorsPerPath[connection.path]++;
+        }
+        closeQuietly(connection);
+        if (running) {
+            connect(connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            if (connection.key != null) {
+                connection.key.cancel();
+            }
+            if (connection.channel != null) {
+                connection.channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Exception when closing connection", e);
+        }
+    }
+
+    private static class Connection {
+        private SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ResponseParser response = new ResponseParser();
+        private ByteBuffer request;
+        private int path;
+        private long start;
+        private int connectFailures;
+        private long retryAt;
+    }
+
+    /**
+     * Incremental parser for HTTP/1.x responses, just enough to find where a response ends on a keep-alive
+     * connection: Content-Length, chunked transfer encoding, bodiless status codes and read until close.
+     */
+    static class ResponseParser {
+        private static final int STATUS_LINE = 0;
+        private static final int HEADER = 1;
+        private static final int BODY_LENGTH = 2;
+        private static final int CHUNK_SIZE = 3;
+        private static final int CHUNK_DATA = 4;
+        private static final int CHUNK_DATA_END = 5;
+        private static final int TRAILER = 6;
+        private static final int BODY_EOF = 7;
+        private static final int DONE = 8;
+
+        private final StringBuilder line = new StringBuilder();
+        private int state;
+        private long remaining;
+        private long contentLength;
+        private boolean chunked;
+        int status;
+        boolean close;
+
+        void reset() {
+            line.setLength(0);
+            state = STATUS_LINE;
+            remaining = 0;
+            contentLength = -1;
+            chunked = false;
+            status = 0;
+            close = false;
+        }
+
+        /**
+         * Consumes the given bytes and returns true once the response is complete.
+         */
+        boolean parse(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining() && state != DONE) {
+                if (state == BODY_LENGTH || state == CHUNK_DATA || state == BODY_EOF) {
+                    int skip = state == BODY_EOF ? buffer.remaining() : (int) Math.min(remaining, buffer.remaining());
+                    buffer.position(buffer.position() + skip);
+                    remaining -= skip;
+                    if (remaining == 0 && state == BODY_LENGTH) {
+                        state = DONE;
+                    } else if (remaining == 0 && state == CHUNK_DATA) {
+                        state = CHUNK_DATA_END;
+                    }
+                    continue;
+                }
+                char c = (char) (buffer.get() & 0xff);
+                if (c == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                    }
+                    processLine();
+                    line.setLength(0);
+                } else {
+                    line.append(c);
+                }
+            }
+            return state == DONE;
+        }
+
+        /**
+         * Returns true if the connection closing completes the response.
+         */
+        boolean endOfInput() {
+            return state == BODY_EOF;
+        }
+
+        private void processLine() throws IOException {
+            switch (state) {
+                case STATUS_LINE:
+                    if (line.length() == 0) {
+                        return;
+                    }
+                    String[] statusLine = line.toString().split(" ");
+                    if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) {
+                        throw new IOException("Invalid status line: " + line);
+                    }
+                    status = Integer.parseInt(statusLine[1]);
+                    close = statusLine[0].equals("HTTP/1.0");
+                    state = HEADER;
+                    break;
+                case HEADER:
+                    if (line.length() == 0) {
+                        endOfHeaders();
+                    } else {
+                        header();
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    int end = line.indexOf(";");
+                    remaining = Long.parseLong((end < 0 ? line.toString() : line.substring(0, end)).trim(), 16);
+                    state = remaining == 0 ? TRAILER : CHUNK_DATA;
+                    break;
+                case CHUNK_DATA_END:
+                    state = CHUNK_SIZE;
+                    break;
+                case TRAILER:
+                    if (line.length() == 0) {
+                        state = DONE;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected line in state " + state);
+            }
+        }
+
+        private void header() {
+            int colon = line.indexOf(":");
+            if (colon < 0) {
+                return;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+            String value = line.substring(colon + 1).trim().toLowerCase(Locale.ENGLISH);
+            if (name.equals("content-length")) {
+                contentLength = Long.parseLong(value);
+            } else if (name.equals("transfer-encoding")) {
+                chunked = value.contains("chunked");
+            } else if (name.equals("connection")) {
+                if (value.contains("close")) {
+                    close = true;
+                } else if (value.contains("keep-alive")) {
+                    close = false;
+                }
+            }
+        }
+
+        private void endOfHeaders() {
+            if (status >= 100 && status < 200) {
+                // interim response, the real one follows
+                state = STATUS_LINE;
+                contentLength = -1;
+                chunked = false;
+            } else if (status == 204 || status == 304 || contentLength == 0) {
+                state = DONE;
+            } else if (chunked) {
+                state = CHUNK_SIZE;
+            } else if (contentLength > 0) {
+                remaining = contentLength;
+                state = BODY_LENGTH;
+            } else {
+                close = true;
+                state = BODY_EOF;
+            }
+        }
+    }
+
+    /**
+     * Outcome of a run: latency histograms and error counts overall and per url.
+     */
+    public static class Result {
+        private final List<String> paths;
+        private final LatencyHistogram overall;
+        private final LatencyHistogram[] perPath;
+        private final long[] errorsPerPath;
+        private final long errors;
+        private final long connectErrors;
+        private final long durationNanos;
+
+        Result(List<String> paths, LatencyHistogram overall, LatencyHistogram[] perPath, long[] errorsPerPath, long errors,
+               long connectErrors, long durationNanos) {
+            this.paths = paths;
+            this.overall = overall;
+            this.perPath = perPath;
+            this.errorsPerPath = errorsPerPath;
+            this.errors = errors;
+            this.connectErrors = connectErrors;
+            this.durationNanos = durationNanos;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public LatencyHistogram getOverall() {
+            return overall;
+        }
+
+        public LatencyHistogram getLatencies(int pathIndex) {
+            return perPath[pathIndex];
+        }
+
+        public long getErrors(int pathIndex) {
+            return errorsPerPath[pathIndex];
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Returns the number of connections that could not be established during the measurement.
+         */
+        public long getConnectErrors() {
+            return connectErrors;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public double getThroughput() {
+            return durationNanos <= 0 ? 0 : overall.getCount() * 1e9 / durationNanos;
+        }
+
+        public double getThroughput(int pathIndex) {
+            return durationNanos <= 0 ? 0 : perPath[pathIndex].getCount() * 1e9 / durationNanos;
+        }
+    }
+}
@@ -1,26 +1,83 @@
 package com.chriswk.gradle.plugins.jetty9.internal;
 
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.NetworkConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.webapp.WebAppContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+/**
+ * Control channel of a running server. Listens on the loopback interface and serves any number of clients from one
+ * selector thread. A client sends the key and a command on separate lines, and gets a single line JSON reply before
+ * the connection is closed:
+ * <pre>
+ * {"command": "status", "ok": true, "result": {...}}
+ * {"command": "restart", "ok": false, "error": "..."}
+ * </pre>
+ * The commands are stop, restart, deploy, status, stats, compression, threads and gc. They run one at a time on a
+ * separate thread, so a restart does not hold up the replies to other clients' queries.
+ */
 public class Monitor extends Thread {
     private static final Logger LOGGER = LoggerFactory.getLogger(Monitor.class);
 
-    private String key;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_REQUEST_BYTES = 1024;
 
-    ServerSocket serverSocket;
-    private final Server server;
+    /**
+     * Redeploys the webapp as described by the properties file whose path follows the command.
+     */
+    public static final String DEPLOY_COMMAND = "deploy";
 
-    public Monitor(int port, String key, Server server) throws IOException {
-        this.server = server;
+    /**
+     * Keys of the properties describing the webapp to deploy.
+     */
+    public static final String DEPLOYMENT_CONTEXT_PATH = "contextPath";
+    public static final String DEPLOYMENT_WEB_APP_SOURCE_DIRECTORY = "webAppSourceDirectory";
+    public static final String DEPLOYMENT_WEB_XML = "webXml";
+    public static final String DEPLOYMENT_JETTY_ENV_XML = "jettyEnvXml";
+    public static final String DEPLOYMENT_CLASSPATH = "classpath";
+
+    private final String key;
+    private final Target task;
+    private final long startMillis = System.currentTimeMillis();
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService commands;
+    private final Queue<Reply> replies = new ConcurrentLinkedQueue<Reply>();
+    private volatile boolean running = true;
+
+    public Monitor(int port, String key, Target task) throws IOException {
         if (port <= 0) {
             throw new IllegalStateException("Bad stop port");
         }
@@ -29,68 +86,358 @@ public class Monitor extends Thread {
         }
 
         this.key = key;
+        this.task = task;
         setDaemon(true);
-        setName("StopJetty9PluginMonitor");
-        serverSocket = new ServerSocket(port, 1, InetAddress.getByName("127.0.0.1"));
-        serverSocket.setReuseAddress(true);
+        setName("Jetty9PluginMonitor");
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        commands = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Jetty9PluginMonitor command");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     public void run() {
-        while (serverSocket != null) {
-            Socket socket = null;
-            try {
-                socket = serverSocket.accept();
-                socket.setSoLinger(false, 0);
-                LineNumberReader lin = new LineNumberReader(new InputStreamReader(socket.getInputStream()));
-
-                String key = lin.readLine();
-                if (!this.key.equals(key)) {
-                    continue;
-                }
-                String cmd = lin.readLine();
-                if ("stop".equals(cmd)) {
-                    try {
-                        socket.close();
-                    } catch (Exception e) {
-                        LOGGER.debug("Exception when stopping server", e);
-                    }
-                    try {
-                        socket.close();
-                    } catch (Exception e) {
-                        LOGGER.debug("Exception when stopping server", e);
+        try {
+            while (running) {
+                selector.select();
+                Reply reply;
+                while ((reply = replies.poll()) != null) {
+                    if (reply.channel.isOpen()) {
+                        reply.channel.register(selector, SelectionKey.OP_WRITE, reply);
                     }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey selected = keys.next();
+                    keys.remove();
                     try {
-                        serverSocket.close();
-                    } catch (Exception e) {
-                        LOGGER.debug("Exception when stopping server", e);
+                        if (!selected.isValid()) {
+                            continue;
+                        }
+                        if (selected.isAcceptable()) {
+                            accept();
+                        } else if (selected.isReadable()) {
+                            read(selected);
+                        } else if (selected.isWritable()) {
+                            write(selected);
+                        }
+                    } catch (IOException e) {
+                        LOGGER.debug("Exception on monitor connection", e);
+                        close(selected.channel());
                     }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Exception during monitoring Server", e);
+        } finally {
+            shutdown();
+        }
+    }
 
-                    serverSocket = null;
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(MAX_REQUEST_BYTES));
+    }
 
-                    try {
-                        LOGGER.info("Stopping server due to received '{}' command...", cmd);
-                        server.stop();
-                    } catch (Exception e) {
-                        LOGGER.error("Exception when stopping server", e);
-                    }
+    private void read(SelectionKey selected) throws IOException {
+        SocketChannel channel = (SocketChannel) selected.channel();
+        ByteBuffer buffer = (ByteBuffer) selected.attachment();
+        int read = channel.read(buffer);
+        String[] lines = lines(buffer);
+        if (lines == null) {
+            if (read < 0 || !buffer.hasRemaining()) {
+                close(channel);
+            }
+            return;
+        }
+        selected.interestOps(0);
+        if (!key.equals(lines[0])) {
+            LOGGER.warn("Monitor command with an invalid key ignored");
+            replies.add(new Reply(channel, null, error(lines[1], "Invalid key")));
+            selector.wakeup();
+            return;
+        }
+        execute(channel, lines[1]);
+    }
 
-                    //We've stopped the server. No point hanging around any more...
-                    return;
-                } else {
-                    LOGGER.info("Unsupported monitor operation");
-                }
-            } catch (Exception e) {
-                LOGGER.error("Exception during monitoring Server", e);
-            } finally {
-                if (socket != null) {
-                    try {
-                        socket.close();
-                    } catch (Exception e) {
-                        LOGGER.debug("Exception when stopping server", e);
+    /**
+     * Returns the key and command if both lines have been received.
+     */
+    private static String[] lines(ByteBuffer buffer) {
+        String received = new String(buffer.array(), 0, buffer.position(), UTF_8);
+        int first = received.indexOf('\n');
+        int second = first < 0 ? -1 : received.indexOf('\n', first + 1);
+        if (second < 0) {
+            return null;
+        }
+        return new String[]{received.substring(0, first).trim(), received.substring(first + 1, second).trim()};
+    }
+
+    private void execute(final SocketChannel channel, final String command) {
+        LOGGER.info("Received monitor command '{}'", command);
+        commands.execute(new Runnable() {
+            public void run() {
+                Runnable after = null;
+                String reply;
+                try {
+                    if ("stop".equals(command)) {
+                        // reply once the server is stopped, so the client knows its ports are free
+                        LOGGER.info("Stopping server due to received 'stop' command...");
+                        reply = ok(command, task.stopServer().toJson());
+                        after = new Runnable() {
+                            public void run() {
+                                close();
+                            }
+                        };
+                    } else if ("restart".equals(command)) {
+                        task.restartWebApp(false);
+                        reply = ok(command, status());
+                    } else if (command.startsWith(DEPLOY_COMMAND + " ")) {
+                        if (task instanceof WarmTarget) {
+                            ((WarmTarget) task).deployWarm(loadDeployment(new File(command.substring(DEPLOY_COMMAND.length() + 1))));
+                            reply = ok(DEPLOY_COMMAND, status());
+                        } else {
+                            reply = error(DEPLOY_COMMAND, "This server cannot take over the webapp of another run, stop it first");
+                        }
+                    } else if ("status".equals(command)) {
+                        reply = ok(command, status());
+                    } else if ("stats".equals(command)) {
+                        RequestStatisticsHandler statistics = getPluginServer() == null ? null : getPluginServer().getRequestStatisticsHandler();
+                        reply = statistics == null ? error(command, "Request statistics are not enabled, set requestStatistics = true") : ok(command, statistics.toJson());
+                    } else if ("compression".equals(command)) {
+                        CompressionHandler compression = getPluginServer() == null ? null : getPluginServer().getCompressionHandler();
+                        reply = compression == null ? error(command, "Compression is not enabled, configure it with compression { }") : ok(command, compression.toJson());
+                    } else if ("threads".equals(command)) {
+                        reply = ok(command, threads());
+                    } else if ("gc".equals(command)) {
+                        reply = ok(command, gc());
+                    } else {
+                        LOGGER.info("Unsupported monitor operation '{}'", command);
+                        reply = error(command, "Unsupported command, use one of stop, restart, deploy, status, stats, compression, threads or gc");
                     }
+                } catch (Exception e) {
+                    LOGGER.error("Exception executing monitor command '" + command + "'", e);
+                    reply = error(command, String.valueOf(e));
                 }
-                socket = null;
+                replies.add(new Reply(channel, after, reply));
+                selector.wakeup();
             }
+        });
+    }
+
+    private void write(SelectionKey selected) throws IOException {
+        Reply reply = (Reply) selected.attachment();
+        try {
+            reply.channel.write(reply.buffer);
+            if (reply.buffer.hasRemaining()) {
+                return;
+            }
+        } catch (IOException e) {
+            // clients that do not wait for the reply have gone already, the command still counts
+            LOGGER.debug("Could not write monitor reply", e);
+        }
+        close(reply.channel);
+        if (reply.after != null) {
+            commands.execute(reply.after);
+        }
+    }
+
+    /**
+     * Stops the monitor once the pending replies have been written.
+     */
+    private void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void shutdown() {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Exception when closing the monitor", e);
+        }
+        for (SelectionKey registered : selector.keys()) {
+            close(registered.channel());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.debug("Exception when closing the monitor", e);
+        }
+        commands.shutdown();
+    }
+
+    private static void close(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Exception when closing monitor connection", e);
         }
     }
+
+    private static Properties loadDeployment(File file) throws IOException {
+        Properties deployment = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            deployment.load(in);
+        } finally {
+            in.close();
+        }
+        return deployment;
+    }
+
+    /**
+     * Returns the classpath entries of a deployment.
+     */
+    public static List<File> getDeploymentClasspath(Properties deployment) {
+        List<File> classpath = new ArrayList<File>();
+        for (String path : deployment.getProperty(DEPLOYMENT_CLASSPATH, "").split(File.pathSeparator)) {
+            if (path.length() > 0) {
+                classpath.add(new File(path));
+            }
+        }
+        return classpath;
+    }
+
+    private Server getServer() {
+        return (Server) task.getServer().getProxiedObject();
+    }
+
+    private Jetty9PluginServer getPluginServer() {
+        return task.getServer() instanceof Jetty9PluginServer ? (Jetty9PluginServer) task.getServer() : null;
+    }
+
+    private String status() {
+        Server server = getServer();
+        StringBuilder json = new StringBuilder("{\"state\": \"").append(server.getState()).append("\"");
+        json.append(", \"uptimeMillis\": ").append(System.currentTimeMillis() - startMillis);
+        json.append(", \"ports\": [");
+        boolean first = true;
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof NetworkConnector) {
+                json.append(first ? "" : ", ").append(((NetworkConnector) connector).getLocalPort());
+                first = false;
+            }
+        }
+        json.append("]");
+        WebAppContext webApp = task.getWebAppConfig();
+        if (webApp != null) {
+            json.append(", \"webApp\": {\"contextPath\": \"").append(escape(webApp.getContextPath()))
+                    .append("\", \"state\": \"").append(webApp.getState()).append("\"}");
+        } else {
+            // a server running the webapps of several tasks
+            json.append(", \"webApps\": [");
+            first = true;
+            for (Handler handler : server.getChildHandlersByClass(WebAppContext.class)) {
+                WebAppContext context = (WebAppContext) handler;
+                json.append(first ? "" : ", ").append("{\"contextPath\": \"").append(escape(context.getContextPath()))
+                        .append("\", \"state\": \"").append(context.getState()).append("\"}");
+                first = false;
+            }
+            json.append("]");
+        }
+        return json.append("}").toString();
+    }
+
+    private String threads() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        StringBuilder json = new StringBuilder("{\"jvm\": {\"live\": ").append(threadBean.getThreadCount())
+                .append(", \"daemon\": ").append(threadBean.getDaemonThreadCount())
+                .append(", \"peak\": ").append(threadBean.getPeakThreadCount()).append("}");
+        ThreadPool pool = getServer().getThreadPool();
+        json.append(", \"pool\": {\"type\": \"").append(pool.getClass().getSimpleName())
+                .append("\", \"threads\": ").append(pool.getThreads())
+                .append(", \"idle\": ").append(pool.getIdleThreads())
+                .append(", \"lowOnThreads\": ").append(pool.isLowOnThreads()).append("}");
+        return json.append("}").toString();
+    }
+
+    private String gc() {
+        MemoryUsage before = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long collections = collectionCount();
+        long start = System.nanoTime();
+        System.gc();
+        long millis = (System.nanoTime() - start) / 1000000;
+        MemoryUsage after = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return new StringBuilder("{\"millis\": ").append(millis)
+                .append(", \"collections\": ").append(collectionCount() - collections)
+                .append(", \"heapUsedBefore\": ").append(before.getUsed())
+                .append(", \"heapUsedAfter\": ").append(after.getUsed())
+                .append(", \"heapCommitted\": ").append(after.getCommitted())
+                .append(", \"heapMax\": ").append(after.getMax()).append("}").toString();
+    }
+
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static String ok(String command, String result) {
+        return "{\"command\": \"" + escape(command) + "\", \"ok\": true" + (result == null ? "" : ", \"result\": " + result) + "}";
+    }
+
+    private static String error(String command, String message) {
+        return "{\"command\": \"" + escape(command) + "\", \"ok\": false, \"error\": \"" + escape(message) + "\"}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * A reply waiting to be written, and what to do once it has been.
+     */
+    private static class Reply {
+        private final SocketChannel channel;
+        private final Runnable after;
+        private final ByteBuffer buffer;
+
+        private Reply(SocketChannel channel, Runnable after, String reply) {
+            this.channel = channel;
+            this.after = after;
+            this.buffer = ByteBuffer.wrap((reply + "\n").getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * What the monitor controls: a run task, or the server a run task forked into its own JVM.
+     */
+    public interface Target {
+        StopResult stopServer() throws Exception;
+
+        void restartWebApp(boolean reconfigureScanner) throws Exception;
+
+        JettyPluginServerEclipse getServer();
+
+        WebAppContext getWebAppConfig();
+    }
+
+    /**
+     * A target that can take over the webapp of a later run, as described by the deployment of a deploy command.
+     */
+    public interface WarmTarget extends Target {
+        void deployWarm(Properties deployment) throws Exception;
+    }
 }
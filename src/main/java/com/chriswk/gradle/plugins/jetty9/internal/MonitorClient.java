@@ -0,0 +1,118 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends a command to the {@link Monitor} of a running server and returns its JSON reply.
+ */
+public class MonitorClient {
+    private static final Pattern PORTS = Pattern.compile("\"ports\": \\[([0-9, ]*)\\]");
+
+    private final int port;
+    private final String key;
+    private final int timeoutMillis;
+
+    public MonitorClient(int port, String key, int timeoutMillis) {
+        this.port = port;
+        this.key = key;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sends the command and waits for the reply.
+     *
+     * @throws java.net.ConnectException if no server is listening on the port
+     */
+    public String send(String command) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            OutputStream out = socket.getOutputStream();
+            out.write((key + "\r\n" + command + "\r\n").getBytes("UTF-8"));
+            out.flush();
+            String reply = new LineNumberReader(new InputStreamReader(socket.getInputStream(), "UTF-8")).readLine();
+            if (reply == null) {
+                throw new IOException("The server closed the connection without replying to '" + command + "'");
+            }
+            return reply;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Waits until nothing accepts connections on the loopback interface at the monitor port and the given ports any more.
+     *
+     * @return whether all ports were released before the timeout
+     */
+    public boolean awaitPortsReleased(List<Integer> ports, long timeoutMillis) throws InterruptedException {
+        List<Integer> remaining = new ArrayList<Integer>(ports);
+        remaining.add(port);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            for (Iterator<Integer> i = remaining.iterator(); i.hasNext(); ) {
+                if (!isListening(i.next())) {
+                    i.remove();
+                }
+            }
+            if (remaining.isEmpty()) {
+                return true;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private boolean isListening(int port) {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), timeoutMillis);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Returns the ports listed in a stop reply.
+     */
+    public static List<Integer> getPorts(String reply) {
+        List<Integer> ports = new ArrayList<Integer>();
+        Matcher matcher = PORTS.matcher(reply);
+        if (matcher.find()) {
+            for (String port : matcher.group(1).split(",")) {
+                if (port.trim().length() > 0) {
+                    ports.add(Integer.valueOf(port.trim()));
+                }
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * Returns whether a reply reports success.
+     */
+    public static boolean isOk(String reply) {
+        return reply.contains("\"ok\": true");
+    }
+}
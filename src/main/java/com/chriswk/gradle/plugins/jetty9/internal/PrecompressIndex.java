@@ -0,0 +1,147 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the precompressed directory, kept in that directory. It records for each asset path the size and content
+ * hash of the source the copy was made from, and whether a copy was kept at all, so assets that do not get smaller are
+ * not compressed again on every run.
+ */
+public class PrecompressIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrecompressIndex.class);
+
+    public static final String FILE_NAME = ".precompress-index";
+
+    private static final int VERSION = 1;
+
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private boolean dirty;
+
+    private PrecompressIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Loads the index of the given precompressed directory, or starts an empty one if there is none or it cannot be
+     * read.
+     */
+    public static PrecompressIndex load(File directory) {
+        PrecompressIndex index = new PrecompressIndex(new File(directory, FILE_NAME));
+        if (!index.indexFile.isFile()) {
+            return index;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index.indexFile)));
+            try {
+                if (in.readInt() != VERSION) {
+                    return index;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = in.readUTF();
+                    index.entries.put(path, new Entry(in.readLong(), in.readLong(), in.readBoolean()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read precompress index " + index.indexFile + ", starting a new one", e);
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the entry of the given asset path, relative to the webapp directory with '/' separators, or null.
+     */
+    public synchronized Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public synchronized void put(String path, long size, long hash, boolean compressed) {
+        Entry previous = entries.put(path, new Entry(size, hash, compressed));
+        if (previous == null || !previous.matches(size, hash) || previous.compressed != compressed) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Drops the entries of all paths but the given ones.
+     */
+    public synchronized void retainAll(Collection<String> paths) {
+        if (entries.keySet().retainAll(paths)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the index if it changed since it was loaded or last saved.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        indexFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().hash);
+                out.writeBoolean(entry.getValue().compressed);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile)) {
+                throw new IOException("Could not rename " + tmpFile + " to " + indexFile);
+            }
+        }
+        dirty = false;
+    }
+
+    public static class Entry {
+        private final long size;
+        private final long hash;
+        private final boolean compressed;
+
+        private Entry(long size, long hash, boolean compressed) {
+            this.size = size;
+            this.hash = hash;
+            this.compressed = compressed;
+        }
+
+        /**
+         * Returns whether the entry was made from a source with the given size and {@link ClasspathSnapshot#hash}.
+         */
+        public boolean matches(long size, long hash) {
+            return this.size == size && this.hash == hash;
+        }
+
+        /**
+         * Returns whether a compressed copy was kept, false if it was not smaller than its source.
+         */
+        public boolean isCompressed() {
+            return compressed;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.resource.ResourceCollection;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The resource base of a webapp whose static assets have gzip compressed copies in a separate directory, so the
+ * default servlet finds the copy of /app.js at /app.js.gz. A copy only shows when the {@link PrecompressIndex} records
+ * the size and content hash of the current asset, so an asset that changed after it was compressed is served
+ * uncompressed instead of from an outdated copy. An asset is only hashed again when its size or modification time
+ * changes.
+ */
+public class PrecompressedResources extends ResourceCollection {
+    private static final String SUFFIX = ".gz";
+    private static final String DEFAULT_SERVLET_GZIP = "org.eclipse.jetty.servlet.Default.gzip";
+    private static final String DEFAULT_SERVLET_ETAGS = "org.eclipse.jetty.servlet.Default.etags";
+
+    private final Resource sources;
+    private final File precompressedDir;
+    private final String precompressedPrefix;
+    private final ConcurrentMap<String, Verified> verified = new ConcurrentHashMap<String, Verified>();
+    private PrecompressIndex index;
+    private long indexStamp = Long.MIN_VALUE;
+
+    public PrecompressedResources(Resource sources, Resource precompressed) throws IOException {
+        super(sources, precompressed);
+        this.sources = sources;
+        this.precompressedDir = precompressed.getFile();
+        this.precompressedPrefix = precompressedDir.getPath() + File.separator;
+    }
+
+    /**
+     * Serves the webapp from the sources directory, with the gzip compressed copies of the precompressed directory.
+     */
+    public static void serve(WebAppContext webApp, File sources, File precompressed) throws IOException {
+        webApp.setBaseResource(new PrecompressedResources(Resource.newResource(sources.getCanonicalFile()),
+                Resource.newResource(precompressed.getCanonicalFile())));
+        // the default servlet looks for <path>.gz, sets Vary and gives each variant its own ETag
+        webApp.setInitParameter(DEFAULT_SERVLET_GZIP, "true");
+        if (webApp.getInitParameter(DEFAULT_SERVLET_ETAGS) == null) {
+            webApp.setInitParameter(DEFAULT_SERVLET_ETAGS, "true");
+        }
+    }
+
+    @Override
+    public Resource addPath(String path) throws IOException, MalformedURLException {
+        Resource resource = super.addPath(path);
+        if (resource == null || !resource.exists() || resource.getFile() == null
+                || !resource.getFile().getPath().startsWith(precompressedPrefix)) {
+            return resource;
+        }
+        if (!path.endsWith(SUFFIX)) {
+            // only the copies are served from the precompressed directory, not its index
+            return sources.addPath(path);
+        }
+        String assetPath = path.substring(0, path.length() - SUFFIX.length());
+        File source = sources.addPath(assetPath).getFile();
+        if (source == null || !isFresh(assetPath.replaceFirst("^/+", ""), source)) {
+            return sources.addPath(path);
+        }
+        return resource;
+    }
+
+    private boolean isFresh(String path, File source) {
+        long size = source.length();
+        long lastModified = source.lastModified();
+        Verified known = verified.get(path);
+        if (known == null || known.size != size || known.lastModified != lastModified) {
+            if (!source.isFile()) {
+                return false;
+            }
+            try {
+                known = new Verified(size, lastModified, ClasspathSnapshot.hash(source));
+            } catch (IOException e) {
+                return false;
+            }
+            verified.put(path, known);
+        }
+        PrecompressIndex.Entry entry = index().get(path);
+        return entry != null && entry.isCompressed() && entry.matches(size, known.hash);
+    }
+
+    /**
+     * Returns the index, reloaded when the precompress task rewrote it.
+     */
+    private synchronized PrecompressIndex index() {
+        File indexFile = new File(precompressedDir, PrecompressIndex.FILE_NAME);
+        long stamp = indexFile.lastModified() * 31 + indexFile.length();
+        if (index == null || stamp != indexStamp) {
+            index = PrecompressIndex.load(precompressedDir);
+            indexStamp = stamp;
+        }
+        return index;
+    }
+
+    private static class Verified {
+        private final long size;
+        private final long lastModified;
+        private final long hash;
+
+        private Verified(long size, long lastModified, long hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
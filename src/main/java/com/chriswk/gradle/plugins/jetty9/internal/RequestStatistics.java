@@ -0,0 +1,89 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import java.util.Locale;
+
+/**
+ * Request counters and latency histogram for one context, servlet or the whole server. Updated concurrently by the
+ * server's threads without locking or allocating.
+ */
+public class RequestStatistics {
+    private static final String[] STATUS_CLASSES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final StripedCounter requests = new StripedCounter();
+    private final StripedCounter active = new StripedCounter();
+    private final StripedCounter requestBytes = new StripedCounter();
+    private final StripedCounter responseBytes = new StripedCounter();
+    private final StripedCounter[] statusClasses = new StripedCounter[STATUS_CLASSES.length];
+    private final ConcurrentLatencyHistogram latencies = new ConcurrentLatencyHistogram();
+
+    public RequestStatistics() {
+        for (int i = 0; i < statusClasses.length; i++) {
+            statusClasses[i] = new StripedCounter();
+        }
+    }
+
+    public void requestStarted() {
+        active.increment();
+    }
+
+    public void requestCompleted(long nanos, int status, long requestContentLength, long responseContentLength) {
+        active.decrement();
+        requests.increment();
+        if (requestContentLength > 0) {
+            requestBytes.add(requestContentLength);
+        }
+        if (responseContentLength > 0) {
+            responseBytes.add(responseContentLength);
+        }
+        int statusClass = status / 100;
+        statusClasses[statusClass >= 1 && statusClass <= 5 ? statusClass : 0].increment();
+        latencies.record(nanos);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getActive() {
+        return active.sum();
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies.snapshot();
+    }
+
+    /**
+     * Appends the statistics as the members of a JSON object, without the braces.
+     */
+    void appendJson(StringBuilder json) {
+        json.append("\"requests\": ").append(getRequests())
+                .append(", \"active\": ").append(getActive())
+                .append(", \"requestBytes\": ").append(getRequestBytes())
+                .append(", \"responseBytes\": ").append(getResponseBytes())
+                .append(", \"status\": {");
+        for (int i = 1; i <= STATUS_CLASSES.length; i++) {
+            int statusClass = i % STATUS_CLASSES.length;
+            json.append("\"").append(STATUS_CLASSES[statusClass]).append("\": ").append(statusClasses[statusClass].sum());
+            json.append(i < STATUS_CLASSES.length ? ", " : "}");
+        }
+        LatencyHistogram histogram = getLatencies();
+        json.append(", \"latencyMillis\": {\"mean\": ").append(millis((long) histogram.getMean()))
+                .append(", \"p50\": ").append(millis(histogram.getPercentile(50)))
+                .append(", \"p90\": ").append(millis(histogram.getPercentile(90)))
+                .append(", \"p99\": ").append(millis(histogram.getPercentile(99)))
+                .append(", \"p999\": ").append(millis(histogram.getPercentile(99.9)))
+                .append(", \"max\": ").append(millis(histogram.getMax())).append("}");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,229 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.HttpChannelState;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.server.UserIdentity;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects request statistics for the server, per context and per servlet. Sits around the server's handlers and times
+ * each request until its response is complete, including asynchronous requests. The context and servlet of a request are
+ * reported from inside the plugin's webapp contexts through {@link #servletEntered(Request)}, which also counts the
+ * request as active for them; requests to other contexts, and requests no context handled, count towards an "unmapped"
+ * context. A request whose handling throws is counted with status 500, which is what the client gets.
+ * <p/>
+ * The per-request path only does map lookups on existing strings and updates striped counters, it does not allocate,
+ * except for the completion listener of a request that goes asynchronous.
+ */
+public class RequestStatisticsHandler extends HandlerWrapper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestStatisticsHandler.class);
+
+    public static final String UNMAPPED = "(unmapped)";
+
+    private static final ThreadLocal<Target> TARGET = new ThreadLocal<Target>() {
+        @Override
+        protected Target initialValue() {
+            return new Target();
+        }
+    };
+
+    private final RequestStatistics total = new RequestStatistics();
+    private final ConcurrentMap<String, ContextStatistics> contexts = new ConcurrentHashMap<String, ContextStatistics>();
+
+    /**
+     * Called by a plugin webapp context once the servlet of the request is known.
+     */
+    public static void servletEntered(Request baseRequest) {
+        Target target = TARGET.get();
+        if (target.handler == null || target.context != null || baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+            return;
+        }
+        UserIdentity.Scope scope = baseRequest.getUserIdentityScope();
+        target.entered(target.handler.getContext(baseRequest.getContextPath()),
+                scope instanceof ServletHolder ? ((ServletHolder) scope).getName() : null);
+    }
+
+    @Override
+    public void handle(String path, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        HttpChannelState state = baseRequest.getHttpChannelState();
+        if (!state.isInitial()) {
+            // redispatch of an asynchronous request, timed by its completion listener
+            super.handle(path, baseRequest, request, response);
+            return;
+        }
+
+        long start = System.nanoTime();
+        total.requestStarted();
+        Target target = TARGET.get();
+        target.handler = this;
+        boolean failed = true;
+        try {
+            super.handle(path, baseRequest, request, response);
+            failed = false;
+        } finally {
+            if (target.context == null) {
+                target.entered(getContext(null), null);
+            }
+            RequestStatistics context = target.context.statistics;
+            RequestStatistics servlet = target.servlet;
+            target.clear();
+            if (!failed && state.isSuspended()) {
+                state.addListener(new CompletionListener(start, context, servlet));
+            } else {
+                completed(baseRequest, start, context, servlet, failed);
+            }
+        }
+    }
+
+    private void completed(Request baseRequest, long start, RequestStatistics context, RequestStatistics servlet, boolean failed) {
+        long nanos = System.nanoTime() - start;
+        Response baseResponse = baseRequest.getResponse();
+        // a status that was never set goes out as 200, an exception as 500
+        int status = failed ? 500 : baseResponse.getStatus() == 0 ? 200 : baseResponse.getStatus();
+        long requestBytes = baseRequest.getContentLength();
+        // content sent straight from a buffer or file, like static resources, is not counted, only its length is set
+        long responseBytes = Math.max(baseResponse.getContentCount(),
+                baseResponse.getHttpFields().getLongField(HttpHeader.CONTENT_LENGTH.asString()));
+        total.requestCompleted(nanos, status, requestBytes, responseBytes);
+        context.requestCompleted(nanos, status, requestBytes, responseBytes);
+        servlet.requestCompleted(nanos, status, requestBytes, responseBytes);
+    }
+
+    private ContextStatistics getContext(String contextPath) {
+        String key = contextPath == null ? UNMAPPED : contextPath.isEmpty() ? "/" : contextPath;
+        ContextStatistics context = contexts.get(key);
+        if (context == null) {
+            contexts.putIfAbsent(key, new ContextStatistics());
+            context = contexts.get(key);
+        }
+        return context;
+    }
+
+    public RequestStatistics getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns all statistics as a JSON object.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"total\": {");
+        total.appendJson(json);
+        json.append("}, \"contexts\": [");
+        boolean firstContext = true;
+        for (Map.Entry<String, ContextStatistics> context : contexts.entrySet()) {
+            json.append(firstContext ? "" : ", ").append("{\"contextPath\": \"").append(escape(context.getKey())).append("\", ");
+            context.getValue().statistics.appendJson(json);
+            json.append(", \"servlets\": [");
+            boolean firstServlet = true;
+            for (Map.Entry<String, RequestStatistics> servlet : context.getValue().servlets.entrySet()) {
+                json.append(firstServlet ? "" : ", ").append("{\"servlet\": \"").append(escape(servlet.getKey())).append("\", ");
+                servlet.getValue().appendJson(json);
+                json.append("}");
+                firstServlet = false;
+            }
+            json.append("]}");
+            firstContext = false;
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        LatencyHistogram latencies = total.getLatencies();
+        LOGGER.info(String.format("Served %d requests, %d bytes, latency p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                total.getRequests(), total.getResponseBytes(), latencies.getPercentile(50) / 1e6,
+                latencies.getPercentile(99) / 1e6, latencies.getMax() / 1e6));
+        for (Map.Entry<String, ContextStatistics> context : contexts.entrySet()) {
+            RequestStatistics statistics = context.getValue().statistics;
+            LatencyHistogram contextLatencies = statistics.getLatencies();
+            LOGGER.info(String.format("  %s: %d requests, latency p50 %.3f ms, p99 %.3f ms", context.getKey(),
+                    statistics.getRequests(), contextLatencies.getPercentile(50) / 1e6, contextLatencies.getPercentile(99) / 1e6));
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Where the request on the current thread was dispatched to.
+     */
+    private static class Target {
+        private RequestStatisticsHandler handler;
+        private ContextStatistics context;
+        private RequestStatistics servlet;
+
+        private void entered(ContextStatistics context, String servletName) {
+            this.context = context;
+            this.servlet = context.getServlet(servletName);
+            context.statistics.requestStarted();
+            servlet.requestStarted();
+        }
+
+        private void clear() {
+            handler = null;
+            context = null;
+            servlet = null;
+        }
+    }
+
+    private static class ContextStatistics {
+        private final RequestStatistics statistics = new RequestStatistics();
+        private final ConcurrentMap<String, RequestStatistics> servlets = new ConcurrentHashMap<String, RequestStatistics>();
+
+        private RequestStatistics getServlet(String servletName) {
+            String key = servletName == null ? UNMAPPED : servletName;
+            RequestStatistics servlet = servlets.get(key);
+            if (servlet == null) {
+                servlets.putIfAbsent(key, new RequestStatistics());
+                servlet = servlets.get(key);
+            }
+            return servlet;
+        }
+    }
+
+    private class CompletionListener implements AsyncListener {
+        private final long start;
+        private final RequestStatistics context;
+        private final RequestStatistics servlet;
+
+        private CompletionListener(long start, RequestStatistics context, RequestStatistics servlet) {
+            this.start = start;
+            this.context = context;
+            this.servlet = servlet;
+        }
+
+        public void onComplete(AsyncEvent event) throws IOException {
+            HttpChannelState state = (HttpChannelState) event.getAsyncContext();
+            completed(state.getBaseRequest(), start, context, servlet, false);
+        }
+
+        public void onTimeout(AsyncEvent event) throws IOException {
+        }
+
+        public void onError(AsyncEvent event) throws IOException {
+        }
+
+        public void onStartAsync(AsyncEvent event) throws IOException {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
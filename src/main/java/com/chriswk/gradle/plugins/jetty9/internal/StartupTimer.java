@@ -0,0 +1,230 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.gradle.logging.ProgressLogger;
+import org.gradle.logging.ProgressLoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Times the phases of a server start or webapp restart with the monotonic clock. Phases nest, and each one is shown as
+ * a progress operation below the one that is running, so the build output shows where startup time goes. The timings
+ * are written to startup.json and appended to startup-history.csv.
+ */
+public class StartupTimer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTimer.class);
+
+    public static final String REPORT_FILE = "startup.json";
+    public static final String HISTORY_FILE = "startup-history.csv";
+
+    private final String event;
+    private final ProgressLoggerFactory progressLoggerFactory;
+    private final long startNanos = System.nanoTime();
+    private final Date startTime = new Date();
+    private final List<Phase> phases = new ArrayList<Phase>();
+    private final LinkedList<Phase> running = new LinkedList<Phase>();
+    private long totalNanos = -1;
+
+    /**
+     * @param event what is being timed, for example "start" or "restart"
+     * @param progressLoggerFactory used to show the phases as progress operations, may be null
+     */
+    public StartupTimer(String event, ProgressLoggerFactory progressLoggerFactory) {
+        this.event = event;
+        this.progressLoggerFactory = progressLoggerFactory;
+    }
+
+    /**
+     * Starts a phase nested in the currently running one.
+     */
+    public synchronized void begin(String name) {
+        Phase phase = new Phase(name, running.size(), System.nanoTime() - startNanos);
+        if (progressLoggerFactory != null) {
+            phase.progressLogger = progressLoggerFactory.newOperation(StartupTimer.class);
+            phase.progressLogger.setDescription(name);
+            phase.progressLogger.setShortDescription(name);
+            phase.progressLogger.started();
+        }
+        phases.add(phase);
+        running.addLast(phase);
+    }
+
+    /**
+     * Ends the named phase, along with any phase nested in it that is still running. Does nothing if the phase is not
+     * running, so it can safely be called from finally blocks.
+     */
+    public synchronized void end(String name) {
+        boolean isRunning = false;
+        for (Phase phase : running) {
+            if (phase.name.equals(name)) {
+                isRunning = true;
+            }
+        }
+        if (!isRunning) {
+            return;
+        }
+        long now = System.nanoTime() - startNanos;
+        Phase phase;
+        do {
+            phase = running.removeLast();
+            phase.nanos = now - phase.offsetNanos;
+            if (phase.progressLogger != null) {
+                phase.progressLogger.completed();
+            }
+        } while (!phase.name.equals(name));
+    }
+
+    /**
+     * Adds a phase timed elsewhere, like on another thread, nested in the currently running one.
+     *
+     * @param start the start of the phase, from {@link System#nanoTime()}
+     */
+    public synchronized void record(String name, long start, long nanos) {
+        Phase phase = new Phase(name, running.size(), start - startNanos);
+        phase.nanos = nanos;
+        phases.add(phase);
+    }
+
+    /**
+     * Ends all running phases and stops the clock.
+     */
+    public synchronized void finish() {
+        while (!running.isEmpty()) {
+            end(running.getLast().name);
+        }
+        if (totalNanos < 0) {
+            totalNanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<Phase>(phases));
+    }
+
+    public synchronized long getTotalNanos() {
+        return totalNanos < 0 ? System.nanoTime() - startNanos : totalNanos;
+    }
+
+    /**
+     * Finishes timing, logs the phases and writes the report and history files to the given directory.
+     */
+    public void report(File reportDir) {
+        finish();
+        StringBuilder summary = new StringBuilder("Jetty 9 ").append(event).append(" took ").append(millis(getTotalNanos())).append(" ms");
+        for (Phase phase : getPhases()) {
+            summary.append("\n  ");
+            for (int i = 0; i < phase.depth; i++) {
+                summary.append("  ");
+            }
+            summary.append(phase.name).append(": ").append(millis(phase.nanos)).append(" ms");
+        }
+        LOGGER.info(summary.toString());
+
+        if (reportDir == null) {
+            return;
+        }
+        try {
+            if (!reportDir.isDirectory() && !reportDir.mkdirs()) {
+                throw new IOException("Could not create " + reportDir);
+            }
+            write(new File(reportDir, REPORT_FILE), toJson(), false);
+            File history = new File(reportDir, HISTORY_FILE);
+            write(history, history.isFile() ? toCsv() : "timestamp,event,phase,depth,millis\n" + toCsv(), true);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write startup timings to " + reportDir, e);
+        }
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"timestamp\": \"").append(timestamp()).append("\",\n");
+        json.append("  \"event\": \"").append(event).append("\",\n");
+        json.append("  \"totalMillis\": ").append(millis(getTotalNanos())).append(",\n");
+        json.append("  \"phases\": [");
+        List<Phase> phases = getPhases();
+        for (int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"phase\": \"").append(phase.name.replace("\"", "\\\"")).append("\", \"depth\": ").append(phase.depth)
+                    .append(", \"offsetMillis\": ").append(millis(phase.offsetNanos)).append(", \"millis\": ").append(millis(phase.nanos)).append("}");
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    String toCsv() {
+        String timestamp = timestamp();
+        StringBuilder csv = new StringBuilder();
+        csv.append(timestamp).append(',').append(event).append(",total,0,").append(millis(getTotalNanos())).append('\n');
+        for (Phase phase : getPhases()) {
+            csv.append(timestamp).append(',').append(event).append(",\"").append(phase.name.replace("\"", "\"\"")).append("\",")
+                    .append(phase.depth + 1).append(',').append(millis(phase.nanos)).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private String timestamp() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(startTime);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1e6);
+    }
+
+    private static void write(File file, String content, boolean append) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * A timed phase, with its nesting depth and its start relative to the start of the timer.
+     */
+    public static class Phase {
+        private final String name;
+        private final int depth;
+        private final long offsetNanos;
+        private long nanos;
+        private ProgressLogger progressLogger;
+
+        private Phase(String name, int depth, long offsetNanos) {
+            this.name = name;
+            this.depth = depth;
+            this.offsetNanos = offsetNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+}
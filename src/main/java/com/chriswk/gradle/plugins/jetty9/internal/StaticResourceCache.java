@@ -0,0 +1,356 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import org.eclipse.jetty.http.HttpContent;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.server.ResourceCache;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the static files of a webapp in memory for the default servlet, which picks it up from the context attribute
+ * named {@link #ATTRIBUTE}. Files up to a size limit are read into heap or direct buffers, larger ones are memory-mapped.
+ * Buffered and mapped bytes have their own limits, and the least recently used entries are evicted when the cache holds
+ * too many files or bytes. A mapped file is unmapped once no request uses its evicted entry any more.
+ * <p/>
+ * Unlike Jetty's own {@link ResourceCache}, which checks the file of an entry on every request, entries are trusted
+ * until {@link #invalidate(Collection)} is called for their file, so a hit costs a map lookup. As long as nothing watches
+ * the files for changes, set {@link #setValidating(boolean)} to check the size and modification time on every hit.
+ */
+public class StaticResourceCache extends ResourceCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaticResourceCache.class);
+
+    public static final String ATTRIBUTE = StaticResourceCache.class.getName();
+
+    /**
+     * The default servlet init parameter, set on the context, that names the attribute holding the cache.
+     */
+    public static final String INIT_PARAMETER = "org.eclipse.jetty.servlet.Default.resourceCache";
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private final ContextHandler context;
+    private final long maxCacheSize;
+    private final long maxMappedSize;
+    private final int maxCachedFiles;
+    private final int maxCachedFileSize;
+    private final boolean direct;
+    private final boolean mapLargeFiles;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    /**
+     * The entries from least to most recently used. Guarded by itself, as are all changes to the entries.
+     */
+    private final LinkedHashMap<String, Entry> recency = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final AtomicLong cachedSize = new AtomicLong();
+    private final AtomicLong mappedSize = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile boolean validating = true;
+
+    public StaticResourceCache(final ContextHandler context, long maxCacheSize, long maxMappedSize, int maxCachedFiles,
+                               int maxCachedFileSize, boolean direct, boolean mapLargeFiles) {
+        super(null, new ResourceFactory() {
+            public Resource getResource(String path) {
+                try {
+                    return context.getResource(path);
+                } catch (MalformedURLException e) {
+                    return null;
+                }
+            }
+        }, context.getMimeTypes(), false, true);
+        this.context = context;
+        this.maxCacheSize = maxCacheSize;
+        this.maxMappedSize = maxMappedSize;
+        this.maxCachedFiles = maxCachedFiles;
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.direct = direct;
+        this.mapLargeFiles = mapLargeFiles;
+    }
+
+    /**
+     * Sets whether every hit checks that the file is unchanged. Only turn it off while something calls
+     * {@link #invalidate(Collection)} for changed files.
+     */
+    public void setValidating(boolean validating) {
+        this.validating = validating;
+    }
+
+    public boolean isValidating() {
+        return validating;
+    }
+
+    @Override
+    public HttpContent lookup(String pathInContext) throws IOException {
+        Entry entry = entries.get(pathInContext);
+        if (entry != null) {
+            if (!validating || entry.isValid()) {
+                synchronized (recency) {
+                    recency.get(pathInContext);
+                }
+                hits.incrementAndGet();
+                return entry;
+            }
+            remove(pathInContext, entry);
+        }
+        misses.incrementAndGet();
+
+        long loadGeneration = generation.get();
+        Resource resource = context.getResource(pathInContext);
+        if (resource == null || !resource.exists()) {
+            return null;
+        }
+        String contentType = context.getMimeTypes().getMimeByExtension(resource.toString());
+        File file = resource.getFile();
+        boolean cacheable = file != null && !resource.isDirectory()
+                && (resource.length() <= maxCachedFileSize || (mapLargeFiles && resource.length() <= Math.min(maxMappedSize, Integer.MAX_VALUE)));
+        if (!cacheable) {
+            return new HttpContent.ResourceAsHttpContent(resource, contentType, true);
+        }
+
+        entry = load(resource, file.getCanonicalFile(), contentType);
+        if (pathInContext.endsWith(GZIP_SUFFIX)) {
+            // a precompressed variant is only valid as long as the file it was compressed from is unchanged
+            Resource source = context.getResource(pathInContext.substring(0, pathInContext.length() - GZIP_SUFFIX.length()));
+            if (source != null && source.getFile() != null) {
+                entry.source = source.getFile();
+                entry.sourceLastModified = source.lastModified();
+            }
+        }
+        synchronized (recency) {
+            Entry existing = entries.putIfAbsent(pathInContext, entry);
+            if (existing != null) {
+                return existing;
+            }
+            recency.put(pathInContext, entry);
+            (entry.heap ? cachedSize : mappedSize).addAndGet(entry.length);
+            if (generation.get() != loadGeneration) {
+                // a change may have been reported while the file was read
+                remove(pathInContext, entry);
+            } else {
+                evict();
+            }
+        }
+        return entry;
+    }
+
+    private Entry load(Resource resource, File file, String contentType) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            if (length > maxCachedFileSize) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                return new Entry(resource, file, contentType, length, mapped, false);
+            }
+            ByteBuffer buffer = direct ? ByteBuffer.allocateDirect((int) length) : ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read fully
+            }
+            buffer.flip();
+            return new Entry(resource, file, contentType, buffer.remaining(), buffer.asReadOnlyBuffer(), true);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Drops the entries of the given files, and of all files below the given directories, along with the entries of
+     * their precompressed .gz variants, which are checked against their file when they are loaded again.
+     */
+    public void invalidate(Collection<String> paths) throws IOException {
+        generation.incrementAndGet();
+        List<String> canonicalPaths = new ArrayList<String>(paths.size());
+        for (String path : paths) {
+            canonicalPaths.add(new File(path).getCanonicalPath());
+        }
+        int removed = 0;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            String path = entry.getValue().file.getPath();
+            for (String changed : canonicalPaths) {
+                if (path.equals(changed) || path.startsWith(changed + File.separator)) {
+                    if (remove(entry.getKey(), entry.getValue())) {
+                        removed++;
+                    }
+                    Entry variant = entries.get(entry.getKey() + GZIP_SUFFIX);
+                    if (variant != null && remove(entry.getKey() + GZIP_SUFFIX, variant)) {
+                        removed++;
+                    }
+                    break;
+                }
+            }
+        }
+        LOGGER.debug("Invalidated {} cached static resources, {}", removed, this);
+    }
+
+    @Override
+    public void flushCache() {
+        generation.incrementAndGet();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache is within its limits again. Called with the lock held.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> candidates = recency.entrySet().iterator();
+        while (candidates.hasNext() && (entries.size() > maxCachedFiles || cachedSize.get() > maxCacheSize
+                || mappedSize.get() > maxMappedSize)) {
+            Map.Entry<String, Entry> candidate = candidates.next();
+            candidates.remove();
+            if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                (candidate.getValue().heap ? cachedSize : mappedSize).addAndGet(-candidate.getValue().length);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean remove(String pathInContext, Entry entry) {
+        synchronized (recency) {
+            if (!entries.remove(pathInContext, entry)) {
+                return false;
+            }
+            recency.remove(pathInContext);
+            (entry.heap ? cachedSize : mappedSize).addAndGet(-entry.length);
+            return true;
+        }
+    }
+
+    @Override
+    public int getCachedSize() {
+        return (int) Math.min(Integer.MAX_VALUE, cachedSize.get());
+    }
+
+    @Override
+    public int getCachedFiles() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of bytes of the memory-mapped entries.
+     */
+    public long getMappedSize() {
+        return mappedSize.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StaticResourceCache[files=" + entries.size() + ", bytes=" + cachedSize.get() + ", mapped=" + mappedSize.get() + ", hits=" + hits.get()
+                + ", misses=" + misses.get() + ", evictions=" + evictions.get() + "]";
+    }
+
+    /**
+     * A cached file. Requests get their own view of the buffer, so they can be served concurrently.
+     */
+    private static class Entry implements HttpContent {
+        private final Resource resource;
+        private final File file;
+        private final String contentType;
+        private final long length;
+        private final long lastModified;
+        private final String lastModifiedHeader;
+        private final String etag;
+        private final ByteBuffer buffer;
+        private final boolean heap;
+        private File source;
+        private long sourceLastModified;
+
+        private Entry(Resource resource, File file, String contentType, long length, ByteBuffer buffer, boolean heap) {
+            this.resource = resource;
+            this.file = file;
+            this.contentType = contentType;
+            this.length = length;
+            this.lastModified = resource.lastModified();
+            this.lastModifiedHeader = HttpFields.formatDate(lastModified);
+            this.etag = resource.getWeakETag();
+            this.buffer = buffer;
+            this.heap = heap;
+        }
+
+        private boolean isValid() {
+            return file.lastModified() == lastModified && file.length() == length
+                    && (source == null || source.lastModified() == sourceLastModified);
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getLastModified() {
+            return lastModifiedHeader;
+        }
+
+        public ByteBuffer getIndirectBuffer() {
+            return buffer.isDirect() ? null : buffer.duplicate();
+        }
+
+        public ByteBuffer getDirectBuffer() {
+            return buffer.isDirect() ? buffer.duplicate() : null;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        public long getContentLength() {
+            return length;
+        }
+
+        public InputStream getInputStream() throws IOException {
+            return resource.getInputStream();
+        }
+
+        public ReadableByteChannel getReadableByteChannel() throws IOException {
+            return resource.getReadableByteChannel();
+        }
+
+        public void release() {
+            // the buffer stays cached
+        }
+
+        @Override
+        public String toString() {
+            return "StaticResourceCache.Entry[" + file + ", " + length + " bytes]";
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import java.util.List;
+
+/**
+ * What happened when the server was stopped: how many in-flight requests were drained or aborted, how long it took and
+ * which ports were released.
+ */
+public class StopResult {
+    private final boolean graceful;
+    private final long drained;
+    private final long aborted;
+    private final long millis;
+    private final List<Integer> ports;
+
+    public StopResult(boolean graceful, long drained, long aborted, long millis, List<Integer> ports) {
+        this.graceful = graceful;
+        this.drained = drained;
+        this.aborted = aborted;
+        this.millis = millis;
+        this.ports = ports;
+    }
+
+    public boolean isGraceful() {
+        return graceful;
+    }
+
+    public long getDrained() {
+        return drained;
+    }
+
+    public long getAborted() {
+        return aborted;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public List<Integer> getPorts() {
+        return ports;
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"graceful\": ").append(graceful)
+                .append(", \"drained\": ").append(drained)
+                .append(", \"aborted\": ").append(aborted)
+                .append(", \"millis\": ").append(millis)
+                .append(", \"ports\": [");
+        for (int i = 0; i < ports.size(); i++) {
+            json.append(i == 0 ? "" : ", ").append(ports.get(i));
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return (graceful ? "Stopped gracefully in " : "Stopped in ") + millis + " ms, " + drained + " requests drained, "
+                + aborted + " aborted";
+    }
+}
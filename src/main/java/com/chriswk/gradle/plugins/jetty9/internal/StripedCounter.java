@@ -0,0 +1,61 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells so threads updating it concurrently rarely touch the same cache line. Each thread
+ * adds to the cell picked by its id, reading sums up all cells. Neither allocates.
+ */
+public class StripedCounter {
+    /**
+     * Longs per cell, so neighbouring cells sit on different 64 byte cache lines.
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes(64);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        cells.getAndIncrement(cell());
+    }
+
+    public void decrement() {
+        cells.getAndDecrement(cell());
+    }
+
+    public void add(long value) {
+        cells.getAndAdd(cell(), value);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    private static int cell() {
+        return stripe(STRIPES) * PADDING;
+    }
+
+    /**
+     * Returns the stripe of the current thread, out of the given power of two.
+     */
+    static int stripe(int stripes) {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash >>> 16) & (stripes - 1);
+    }
+
+    /**
+     * Returns the number of stripes for the available processors, a power of two of at most the given maximum.
+     */
+    static int stripes(int max) {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < max) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,77 @@
+package com.chriswk.gradle.plugins.jetty9.internal;
+
+import com.chriswk.gradle.plugins.jetty9.Jetty9ThreadPool;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.gradle.api.InvalidUserDataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the server's thread pool from the thread pool settings of the task.
+ */
+public final class ThreadPools {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThreadPools.class);
+
+    private ThreadPools() {
+    }
+
+    /**
+     * Returns the thread pool for the given settings, or null if Jetty's default pool should be used.
+     */
+    public static ThreadPool create(Jetty9ThreadPool settings) {
+        if (settings == null) {
+            return null;
+        }
+        if (settings.isVirtualThreads()) {
+            LOGGER.info("Using a virtual thread per task executor");
+            return new ExecutorThreadPool(newVirtualThreadPerTaskExecutor());
+        }
+        if (settings.getMinThreads() == null && settings.getMaxThreads() == null
+                && settings.getIdleTimeout() == null && settings.getMaxQueued() == null) {
+            return null;
+        }
+
+        QueuedThreadPool threadPool = new QueuedThreadPool();
+        if (settings.getMaxThreads() != null) {
+            threadPool.setMaxThreads(settings.getMaxThreads());
+        }
+        if (settings.getMinThreads() != null) {
+            threadPool.setMinThreads(settings.getMinThreads());
+        }
+        if (threadPool.getMinThreads() > threadPool.getMaxThreads()) {
+            throw new InvalidUserDataException("minThreads " + threadPool.getMinThreads() + " is larger than maxThreads " + threadPool.getMaxThreads());
+        }
+        if (settings.getIdleTimeout() != null) {
+            threadPool.setIdleTimeout(settings.getIdleTimeout());
+        }
+        if (settings.getMaxQueued() != null) {
+            int capacity = settings.getMaxQueued();
+            int initialCapacity = Math.min(capacity, Math.max(threadPool.getMinThreads(), 8));
+            threadPool.setQueue(new BlockingArrayQueue<Runnable>(initialCapacity, initialCapacity, capacity));
+        }
+        LOGGER.info("Using a thread pool of {} to {} threads, idle timeout {} ms, queue {}", threadPool.getMinThreads(),
+                threadPool.getMaxThreads(), threadPool.getIdleTimeout(), settings.getMaxQueued() == null ? "unbounded" : settings.getMaxQueued());
+        return threadPool;
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor() reflectively so the plugin still runs on JDKs without it.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new InvalidUserDataException("virtualThreads requires a JDK with virtual threads, running on " + System.getProperty("java.version"));
+        } catch (Exception e) {
+            throw new InvalidUserDataException("Could not create a virtual thread executor", e);
+        }
+    }
+}
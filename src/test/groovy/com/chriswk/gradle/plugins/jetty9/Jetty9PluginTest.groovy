@@ -6,7 +6,10 @@ import org.gradle.testfixtures.ProjectBuilder
 import org.junit.Test
 
 import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.hasItem
 import static org.hamcrest.Matchers.instanceOf
+import static org.hamcrest.Matchers.not
+import static org.hamcrest.Matchers.nullValue
 import static org.junit.Assert.assertThat
 import static org.junit.Assert.assertTrue
 
@@ -33,10 +36,49 @@ class Jetty9PluginTest {
 
 //        assertThat(task, dependsOn(WarPlugin.WAR_TASK_NAME))
         assertThat(task.httpPort, equalTo(project.httpPort))
+        assertThat(task.webApp, equalTo(project.tasks[WarPlugin.WAR_TASK_NAME].archivePath))
 
         task = project.tasks[Jetty9Plugin.JETTY9_STOP]
         assertThat(task, instanceOf(Jetty9Stop))
         assertThat(task.stopPort, equalTo(project.stopPort))
+
+        task = project.tasks[Jetty9Plugin.JETTY9_BENCH]
+        assertThat(task, instanceOf(Jetty9Bench))
+        assertThat(task.httpPort, equalTo(project.httpPort))
+        assertThat(task.reportDir, equalTo(new File(project.buildDir, 'reports/jetty9Bench')))
+
+        task = project.tasks[Jetty9Plugin.JETTY9_RESTART]
+        assertThat(task, instanceOf(Jetty9Command))
+        assertThat(task.command, equalTo('restart'))
+        assertThat(task.stopPort, equalTo(project.stopPort))
+
+        task = project.tasks[Jetty9Plugin.JETTY9_STATUS]
+        assertThat(task, instanceOf(Jetty9Command))
+        assertThat(task.command, equalTo('status'))
+        assertThat(task.stopKey, equalTo(project.stopKey))
+
+        task = project.tasks[Jetty9Plugin.JETTY9_PRECOMPRESS]
+        assertThat(task, instanceOf(Jetty9Precompress))
+        assertThat(task.webAppDir, equalTo(project.webAppDir))
+        assertThat(task.destinationDir, equalTo(new File(project.buildDir, 'precompressed/jetty9Precompress')))
+        assertThat(project.tasks[Jetty9Plugin.JETTY9_RUN].precompressedDirectory, nullValue())
+        assertThat(project.tasks[Jetty9Plugin.JETTY9_RUN].taskDependencies.getDependencies(null), not(hasItem(task)))
+
+        project.tasks[Jetty9Plugin.JETTY9_RUN].precompress = true
+        assertThat(project.tasks[Jetty9Plugin.JETTY9_RUN].precompressedDirectory, equalTo(task.destinationDir))
+        assertThat(project.tasks[Jetty9Plugin.JETTY9_RUN].taskDependencies.getDependencies(null), hasItem(task))
+    }
+
+    @Test
+    public void aggregatePluginRunsTheWebAppsOfAllProjects() {
+        def child = ProjectBuilder.builder().withName('child').withParent(project).build()
+        new Jetty9Plugin().apply(child)
+        new Jetty9AggregatePlugin().apply(project)
+
+        def task = project.tasks[Jetty9AggregatePlugin.JETTY9_RUN_ALL]
+        assertThat(task, instanceOf(Jetty9RunAll))
+        assertThat(task.httpPort, equalTo(project.httpPort))
+        assertThat(task.webApps as List, equalTo([child.tasks[Jetty9Plugin.JETTY9_RUN]]))
     }
 
     @Test
@@ -50,6 +92,9 @@ class Jetty9PluginTest {
         task = project.tasks.add('customWar', Jetty9RunWar)
 //        assertThat(task, dependsOn(WarPlugin.WAR_TASK_NAME))
         assertThat(task.httpPort, equalTo(project.httpPort))
+
+        task = project.tasks.add('customCommand', Jetty9Command)
+        assertThat(task.stopPort, equalTo(project.stopPort))
     }
 
 
@@ -0,0 +1,44 @@
+package com.chriswk.gradle.plugins.jetty9
+
+import org.junit.Test
+
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+class Jetty9RunWarTest {
+    @Test
+    public void classesJarsAndTldsRequireRestart() {
+        assertTrue(Jetty9RunWar.requiresRestart('WEB-INF/classes/com/example/App.class'))
+        assertTrue(Jetty9RunWar.requiresRestart('WEB-INF/classes/templates/page.html'))
+        assertTrue(Jetty9RunWar.requiresRestart('WEB-INF/lib/library.jar'))
+        assertTrue(Jetty9RunWar.requiresRestart('tags/custom.tld'))
+    }
+
+    @Test
+    public void descriptorsAndConfigurationInWebInfAndMetaInfRequireRestart() {
+        assertTrue(Jetty9RunWar.requiresRestart('WEB-INF/web.xml'))
+        assertTrue(Jetty9RunWar.requiresRestart('WEB-INF/spring/context.xml'))
+        assertTrue(Jetty9RunWar.requiresRestart('WEB-INF/app.properties'))
+        assertTrue(Jetty9RunWar.requiresRestart('WEB-INF/config/settings'))
+        assertTrue(Jetty9RunWar.requiresRestart('META-INF/context.xml'))
+        assertTrue(Jetty9RunWar.requiresRestart('META-INF/services/javax.servlet.ServletContainerInitializer'))
+        assertTrue(Jetty9RunWar.requiresRestart('WEB-INF/tags/custom.tag'))
+    }
+
+    @Test
+    public void jspsAndStaticFilesInWebInfAndMetaInfDoNotRequireRestart() {
+        assertFalse(Jetty9RunWar.requiresRestart('WEB-INF/views/index.jsp'))
+        assertFalse(Jetty9RunWar.requiresRestart('WEB-INF/views/layout.JSPX'))
+        assertFalse(Jetty9RunWar.requiresRestart('WEB-INF/views/header.jspf'))
+        assertFalse(Jetty9RunWar.requiresRestart('WEB-INF/static/app.css'))
+        assertFalse(Jetty9RunWar.requiresRestart('META-INF/resources/logo.png'))
+    }
+
+    @Test
+    public void filesOutsideWebInfAndMetaInfDoNotRequireRestart() {
+        assertFalse(Jetty9RunWar.requiresRestart('index.jsp'))
+        assertFalse(Jetty9RunWar.requiresRestart('js/app.js'))
+        assertFalse(Jetty9RunWar.requiresRestart('config.xml'))
+        assertFalse(Jetty9RunWar.requiresRestart('WEB-INF.html'))
+    }
+}
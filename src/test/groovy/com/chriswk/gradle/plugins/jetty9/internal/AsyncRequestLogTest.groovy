@@ -0,0 +1,142 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.eclipse.jetty.server.Request
+import org.eclipse.jetty.server.RequestLog
+import org.eclipse.jetty.server.Response
+import org.eclipse.jetty.server.Server
+import org.eclipse.jetty.server.ServerConnector
+import org.eclipse.jetty.server.handler.AbstractHandler
+import org.eclipse.jetty.server.handler.RequestLogHandler
+import org.eclipse.jetty.util.component.AbstractLifeCycle
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+import static org.hamcrest.Matchers.equalTo
+import static org.junit.Assert.assertThat
+
+class AsyncRequestLogTest {
+    private static final String USER_AGENT = 'AsyncRequestLogTest/1.0 (round trip)'
+
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+
+    private final Server server = new Server(0)
+    private final TeeRequestLog tee = new TeeRequestLog()
+    private AsyncRequestLog textLog
+    private AsyncRequestLog binaryLog
+
+    @After
+    public void stopServer() {
+        server.stop()
+    }
+
+    @Test
+    public void binaryLogReadsBackAsTheTextLogAcrossSessions() {
+        File textFile = new File(tmpDir.root, 'requests.log')
+        File binaryFile = new File(tmpDir.root, 'requests.bin')
+        startServer()
+        String longQuery = 'q=' + ('x' * 3000)
+
+        startLogs(textFile, binaryFile)
+        request('/index.html', null, 'http://localhost/')
+        request('/index.html', null, 'http://localhost/')
+        request('/search', 'q=jetty', null)
+        request('/search', longQuery, null)
+        request('/search', longQuery, null)
+        stopLogs()
+
+        // a new session starts with an empty dictionary, so the same strings are written out again
+        startLogs(textFile, binaryFile)
+        request('/index.html', null, 'http://localhost/')
+        request('/search', 'q=jetty', null)
+        stopLogs()
+
+        List<String> expected = textFile.readLines()
+        List<String> actual = toNcsa(binaryFile).readLines()
+        assertThat(actual.size(), equalTo(7))
+        assertThat(expected.size(), equalTo(7))
+        actual.eachWithIndex { String line, int i ->
+            String expectedLine = withoutLatency(expected[i])
+            if (expectedLine.contains(longQuery)) {
+                // fields longer than 2048 bytes are truncated, and never become dictionary references
+                expectedLine = expectedLine.replace('?' + longQuery, '?' + longQuery.substring(0, 2048))
+            }
+            assertThat(withoutLatency(line), equalTo(expectedLine))
+        }
+        assertThat(actual[2].contains('"-" "' + USER_AGENT + '"'), equalTo(true))
+
+        // written in full once per session, referenced from the dictionary otherwise
+        assertThat(occurrences(binaryFile, USER_AGENT), equalTo(2))
+        assertThat(occurrences(binaryFile, 'http://localhost/'), equalTo(2))
+        assertThat(occurrences(binaryFile, longQuery.substring(0, 2048)), equalTo(2))
+    }
+
+    private void startServer() {
+        RequestLogHandler logHandler = new RequestLogHandler()
+        logHandler.requestLog = tee
+        logHandler.handler = new AbstractHandler() {
+            void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) {
+                response.contentType = 'text/plain'
+                response.writer.print('hello')
+                baseRequest.handled = true
+            }
+        }
+        server.handler = logHandler
+        server.start()
+    }
+
+    private void startLogs(File textFile, File binaryFile) {
+        textLog = new AsyncRequestLog(textFile, true, 64, true, false)
+        binaryLog = new AsyncRequestLog(binaryFile, true, 64, true, true)
+        textLog.start()
+        binaryLog.start()
+        tee.logs = [textLog, binaryLog]
+    }
+
+    private void stopLogs() {
+        textLog.stop()
+        binaryLog.stop()
+    }
+
+    private void request(String path, String query, String referer) {
+        int port = ((ServerConnector) server.connectors[0]).localPort
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:${port}${path}${query == null ? '' : '?' + query}").openConnection()
+        connection.setRequestProperty('User-Agent', USER_AGENT)
+        if (referer != null) {
+            connection.setRequestProperty('Referer', referer)
+        }
+        assertThat(connection.inputStream.text, equalTo('hello'))
+    }
+
+    private static String toNcsa(File binaryFile) {
+        StringBuilder text = new StringBuilder()
+        AsyncRequestLog.toNcsa(binaryFile, text)
+        text.toString()
+    }
+
+    private static String withoutLatency(String line) {
+        line.substring(0, line.lastIndexOf(' '))
+    }
+
+    private static int occurrences(File file, String text) {
+        new String(file.bytes, 'ISO-8859-1').count(text)
+    }
+
+    /**
+     * Hands every request to both logs, so the binary log can be compared with the text log of the same requests.
+     */
+    private static class TeeRequestLog extends AbstractLifeCycle implements RequestLog {
+        volatile List<RequestLog> logs = []
+
+        void log(Request request, Response response) {
+            for (RequestLog log : logs) {
+                log.log(request, response)
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.eclipse.jetty.util.Scanner
+import org.junit.Test
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+import static org.hamcrest.Matchers.equalTo
+import static org.junit.Assert.assertThat
+
+class ChangeBatcherTest {
+    private final List<List<String>> batches = new CopyOnWriteArrayList<List<String>>()
+    private final Scanner.BulkListener recorder = new Scanner.BulkListener() {
+        void filesChanged(List<String> changes) {
+            batches.add(changes)
+        }
+    }
+
+    @Test
+    public void mergesBurstOfChangesIntoOneBatch() {
+        ChangeBatcher batcher = new ChangeBatcher(recorder, 200, 5000)
+        batcher.start()
+
+        batcher.filesChanged(['A.class'])
+        batcher.filesChanged(['B.class', 'A.class'])
+        batcher.filesChanged(['C.class'])
+        Thread.sleep(600)
+
+        assertThat(batches.size(), equalTo(1))
+        assertThat(batches[0], equalTo(['A.class', 'B.class', 'C.class']))
+    }
+
+    @Test
+    public void deliversBatchAfterMaximumWaitWhileChangesKeepArriving() {
+        ChangeBatcher batcher = new ChangeBatcher(recorder, 200, 400)
+        batcher.start()
+
+        10.times {
+            batcher.filesChanged(["${it}.class".toString()])
+            Thread.sleep(100)
+        }
+        Thread.sleep(400)
+
+        assertThat(batches.size() > 1, equalTo(true))
+        assertThat(batches.flatten().size(), equalTo(10))
+    }
+
+    @Test
+    public void closeEndsTheThreadAndDropsPendingChanges() {
+        ChangeBatcher batcher = new ChangeBatcher(recorder, 200, 5000)
+        batcher.start()
+
+        batcher.filesChanged(['A.class'])
+        batcher.close()
+        batcher.join(1000)
+        Thread.sleep(300)
+
+        assertThat(batcher.alive, equalTo(false))
+        assertThat(batches.size(), equalTo(0))
+    }
+}
@@ -0,0 +1,48 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.hamcrest.Matchers.empty
+import static org.hamcrest.Matchers.equalTo
+import static org.junit.Assert.assertThat
+
+class ClasspathSnapshotTest {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+
+    @Test
+    public void ignoresFilesRewrittenWithIdenticalContent() {
+        File classes = tmpDir.newFolder('classes')
+        File clazz = new File(classes, 'A.class')
+        clazz.text = 'original'
+        ClasspathSnapshot snapshot = ClasspathSnapshot.load(new File(tmpDir.root, 'snapshot.bin'))
+        snapshot.refresh([classes])
+
+        clazz.text = 'original'
+        clazz.setLastModified(clazz.lastModified() + 2000)
+
+        assertThat(snapshot.update([clazz.canonicalPath]), empty())
+    }
+
+    @Test
+    public void reportsChangedAddedAndRemovedFilesAcrossRuns() {
+        File classes = tmpDir.newFolder('classes')
+        File changed = new File(classes, 'A.class')
+        File removed = new File(classes, 'B.class')
+        changed.text = 'original'
+        removed.text = 'removed'
+        File index = new File(tmpDir.root, 'snapshot.bin')
+        ClasspathSnapshot.load(index).refresh([classes])
+
+        changed.text = 'modified'
+        removed.delete()
+        File added = new File(classes, 'C.class')
+        added.text = 'added'
+
+        ClasspathSnapshot snapshot = ClasspathSnapshot.load(index)
+        Set<String> result = snapshot.update([changed, removed, added]*.canonicalPath)
+        assertThat(result, equalTo([changed, removed, added]*.canonicalPath as Set))
+    }
+}
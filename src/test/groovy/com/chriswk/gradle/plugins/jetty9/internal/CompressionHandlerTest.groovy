@@ -0,0 +1,154 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.eclipse.jetty.server.Request
+import org.eclipse.jetty.server.Server
+import org.eclipse.jetty.server.ServerConnector
+import org.eclipse.jetty.server.handler.AbstractHandler
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.util.zip.GZIPInputStream
+
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.not
+import static org.hamcrest.Matchers.nullValue
+import static org.junit.Assert.assertThat
+
+class CompressionHandlerTest {
+    private static final String LARGE = ('All work and no play makes Jack a dull boy. ' * 120)
+
+    private final Server server = new Server(0)
+
+    @Before
+    public void startServer() {
+        CompressionHandler compression = new CompressionHandler(1024, 6, ['text/*'], ['text/csv'], 2)
+        compression.handler = new AbstractHandler() {
+            void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) {
+                baseRequest.handled = true
+                response.contentType = target == '/excluded' ? 'text/csv' : 'text/plain'
+                response.characterEncoding = 'UTF-8'
+                switch (target) {
+                    case '/small':
+                        response.outputStream.write('small'.getBytes('UTF-8'))
+                        break
+                    case '/large':
+                    case '/excluded':
+                        response.outputStream.write(LARGE.getBytes('UTF-8'))
+                        break
+                    case '/flush':
+                        response.writer.print('first')
+                        response.flushBuffer()
+                        response.writer.print(' second')
+                        break
+                    case '/reset-small':
+                        // more than the writer buffers, so compression starts without committing the response
+                        response.writer.print(LARGE * 2)
+                        response.resetBuffer()
+                        response.writer.print('small')
+                        break
+                    case '/reset-large':
+                        response.outputStream.write(LARGE.getBytes('UTF-8'))
+                        response.resetBuffer()
+                        response.outputStream.write(LARGE.reverse().getBytes('UTF-8'))
+                        break
+                    case '/length-small':
+                        response.setHeader('Content-Length', '5')
+                        response.outputStream.write('small'.getBytes('UTF-8'))
+                        break
+                    case '/length-large':
+                        response.setHeader('Content-Length', String.valueOf(LARGE.length()))
+                        response.outputStream.write(LARGE.getBytes('UTF-8'))
+                        break
+                }
+            }
+        }
+        server.handler = compression
+        server.start()
+    }
+
+    @After
+    public void stopServer() {
+        server.stop()
+    }
+
+    @Test
+    public void compressesResponsesOfAtLeastTheMinimumSize() {
+        Map<String, Object> response = get('/large')
+        assertThat(response.encoding, equalTo('gzip'))
+        assertThat(response.vary, equalTo('Accept-Encoding'))
+        assertThat(response.body, equalTo(LARGE))
+    }
+
+    @Test
+    public void sendsResponsesBelowTheMinimumSizeAsTheyAre() {
+        Map<String, Object> response = get('/small')
+        assertThat(response.encoding, nullValue())
+        assertThat(response.length, equalTo('5'))
+        assertThat(response.body, equalTo('small'))
+    }
+
+    @Test
+    public void compressesResponsesFlushedBeforeReachingTheMinimumSize() {
+        Map<String, Object> response = get('/flush')
+        assertThat(response.encoding, equalTo('gzip'))
+        assertThat(response.body, equalTo('first second'))
+    }
+
+    @Test
+    public void dropsCompressionWhenTheBufferIsResetForASmallResponse() {
+        Map<String, Object> response = get('/reset-small')
+        assertThat(response.encoding, nullValue())
+        assertThat(response.body, equalTo('small'))
+    }
+
+    @Test
+    public void compressesOnlyTheContentWrittenAfterAReset() {
+        Map<String, Object> response = get('/reset-large')
+        assertThat(response.encoding, equalTo('gzip'))
+        assertThat(response.body, equalTo(LARGE.reverse()))
+    }
+
+    @Test
+    public void honoursContentLengthSetAsAHeader() {
+        Map<String, Object> small = get('/length-small')
+        assertThat(small.encoding, nullValue())
+        assertThat(small.length, equalTo('5'))
+        assertThat(small.body, equalTo('small'))
+
+        Map<String, Object> large = get('/length-large')
+        assertThat(large.encoding, equalTo('gzip'))
+        assertThat(large.length, not(equalTo(String.valueOf(LARGE.length()))))
+        assertThat(large.body, equalTo(LARGE))
+    }
+
+    @Test
+    public void sendsExcludedMimeTypesAsTheyAre() {
+        Map<String, Object> response = get('/excluded')
+        assertThat(response.encoding, nullValue())
+        assertThat(response.length, equalTo(String.valueOf(LARGE.length())))
+        assertThat(response.body, equalTo(LARGE))
+    }
+
+    @Test
+    public void treatsAnUnparsableQualityAsAccepting() {
+        Map<String, Object> response = get('/large', 'gzip;q=high')
+        assertThat(response.encoding, equalTo('gzip'))
+        assertThat(response.body, equalTo(LARGE))
+
+        assertThat(get('/large', 'gzip;q=0').encoding, nullValue())
+    }
+
+    private Map<String, Object> get(String path, String acceptEncoding = 'gzip') {
+        int port = ((ServerConnector) server.connectors[0]).localPort
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:${port}${path}").openConnection()
+        connection.setRequestProperty('Accept-Encoding', acceptEncoding)
+        assertThat(connection.responseCode, equalTo(200))
+        String encoding = connection.getHeaderField('Content-Encoding')
+        InputStream body = encoding == 'gzip' ? new GZIPInputStream(connection.inputStream) : connection.inputStream
+        [encoding: encoding, length: connection.getHeaderField('Content-Length'), vary: connection.getHeaderField('Vary'),
+                body: body.getText('UTF-8')]
+    }
+}
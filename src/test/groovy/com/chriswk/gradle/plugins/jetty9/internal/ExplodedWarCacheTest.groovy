@@ -0,0 +1,146 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.empty
+import static org.hamcrest.Matchers.equalTo
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertThat
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+class ExplodedWarCacheTest {
+    private static final long ENTRY_TIME = 1356998400000L
+
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+
+    @Test
+    public void deploysUnchangedWarWithoutExtractingIt() {
+        File war = writeWar(['index.html': 'index', 'WEB-INF/web.xml': '<web-app/>'])
+        File cacheDir = tmpDir.newFolder('cache')
+        new ExplodedWarCache(cacheDir).update(war)
+        File index = new File(cacheDir, 'webapp/index.html')
+        index.setLastModified(ENTRY_TIME - 60000)
+
+        ExplodedWarCache cache = new ExplodedWarCache(cacheDir)
+        assertThat(cache.diff(war), empty())
+        cache.update(war)
+
+        assertThat(index.text, equalTo('index'))
+        assertThat(index.lastModified(), equalTo(ENTRY_TIME - 60000))
+    }
+
+    @Test
+    public void ignoresWarRewrittenWithTheSameContent() {
+        File war = writeWar(['index.html': 'index', 'WEB-INF/web.xml': '<web-app/>'])
+        File cacheDir = tmpDir.newFolder('cache')
+        new ExplodedWarCache(cacheDir).update(war)
+        File index = new File(cacheDir, 'webapp/index.html')
+        index.setLastModified(ENTRY_TIME - 60000)
+
+        // same entries with other timestamps, so the war itself differs
+        writeWar(['index.html': 'index', 'WEB-INF/web.xml': '<web-app/>'], ENTRY_TIME + 60000)
+        ExplodedWarCache cache = new ExplodedWarCache(cacheDir)
+        assertThat(cache.diff(war), empty())
+        cache.update(war)
+
+        assertThat(index.lastModified(), equalTo(ENTRY_TIME - 60000))
+    }
+
+    @Test
+    public void writesOnlyChangedEntries() {
+        File war = writeWar(['index.html': 'index', 'app.js': 'app v1'])
+        File cacheDir = tmpDir.newFolder('cache')
+        ExplodedWarCache cache = new ExplodedWarCache(cacheDir)
+        cache.update(war)
+        File index = new File(cacheDir, 'webapp/index.html')
+        index.setLastModified(ENTRY_TIME - 60000)
+
+        // same size and war timestamp, only the content differs
+        long lastModified = war.lastModified()
+        writeWar(['index.html': 'index', 'app.js': 'app v2'])
+        war.setLastModified(lastModified)
+
+        assertThat(cache.diff(war), equalTo(['app.js'] as Set))
+        cache.update(war)
+        assertThat(new File(cacheDir, 'webapp/app.js').text, equalTo('app v2'))
+        assertThat(index.lastModified(), equalTo(ENTRY_TIME - 60000))
+    }
+
+    @Test
+    public void deletesRemovedEntriesAndTheirEmptyDirectories() {
+        File war = writeWar(['WEB-INF/web.xml': '<web-app/>', 'WEB-INF/views/old/page.jsp': 'page', 'css/site.css': 'css'])
+        File cacheDir = tmpDir.newFolder('cache')
+        ExplodedWarCache cache = new ExplodedWarCache(cacheDir)
+        cache.update(war)
+
+        writeWar(['WEB-INF/web.xml': '<web-app/>', 'css/site.css': 'css'])
+        assertThat(cache.diff(war), equalTo(['WEB-INF/views/old/page.jsp'] as Set))
+        cache.update(war)
+
+        File webapp = cache.directory
+        assertFalse(new File(webapp, 'WEB-INF/views').exists())
+        assertTrue(new File(webapp, 'WEB-INF/web.xml').isFile())
+        assertTrue(new File(webapp, 'css/site.css').isFile())
+    }
+
+    @Test
+    public void extractsAgainWhenTheIndexIsCorruptOrMissing() {
+        File war = writeWar(['index.html': 'index'])
+        File cacheDir = tmpDir.newFolder('cache')
+        new ExplodedWarCache(cacheDir).update(war)
+        File stale = new File(cacheDir, 'webapp/stale.html')
+        stale.text = 'stale'
+
+        new File(cacheDir, 'index.bin').bytes = [0, 0, 0, 2, 1, 2, 3] as byte[]
+        ExplodedWarCache cache = new ExplodedWarCache(cacheDir)
+        assertThat(cache.diff(war), equalTo(['index.html'] as Set))
+        cache.update(war)
+        assertFalse(stale.exists())
+        assertThat(new File(cacheDir, 'webapp/index.html').text, equalTo('index'))
+
+        stale.text = 'stale'
+        assertTrue(new File(cacheDir, 'index.bin').delete())
+        new ExplodedWarCache(cacheDir).update(war)
+        assertFalse(stale.exists())
+        assertThat(new File(cacheDir, 'webapp/index.html').text, equalTo('index'))
+    }
+
+    @Test
+    public void rejectsEntriesOutsideOfTheWebapp() {
+        File war = writeWar(['index.html': 'index', '../escaped.txt': 'escaped'])
+        File cacheDir = tmpDir.newFolder('cache')
+        try {
+            new ExplodedWarCache(cacheDir).update(war)
+            fail('expected the war to be rejected')
+        } catch (IOException e) {
+            assertThat(e.message, containsString('is outside of the webapp'))
+        }
+        assertFalse(new File(cacheDir, 'escaped.txt').exists())
+        assertFalse(new File(cacheDir, 'index.bin').exists())
+    }
+
+    private File writeWar(Map<String, String> content, long time = ENTRY_TIME) {
+        File war = new File(tmpDir.root, 'app.war')
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))
+        try {
+            content.each { name, text ->
+                ZipEntry entry = new ZipEntry(name)
+                entry.time = time
+                out.putNextEntry(entry)
+                out.write(text.getBytes('UTF-8'))
+                out.closeEntry()
+            }
+        } finally {
+            out.close()
+        }
+        war
+    }
+}
@@ -0,0 +1,38 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import com.chriswk.gradle.plugins.jetty9.Jetty9AsyncRequestLog
+import com.chriswk.gradle.plugins.jetty9.Jetty9StaticCache
+import org.junit.Test
+
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.nullValue
+import static org.junit.Assert.assertThat
+
+class ForkedServerTest {
+    @Test
+    public void passesSettingsBeansThroughProperties() {
+        Jetty9AsyncRequestLog requestLog = new Jetty9AsyncRequestLog(file: new File('/tmp/logs/requests.bin'),
+                append: false, bufferSize: 512, overflow: 'block', format: 'binary')
+        Jetty9StaticCache staticCache = new Jetty9StaticCache(maxCacheSize: 1024, direct: true)
+        Properties settings = new Properties()
+        ForkedServer.storeSettings(settings, ForkedServer.ASYNC_REQUEST_LOG, requestLog)
+        ForkedServer.storeSettings(settings, ForkedServer.STATIC_CACHE, staticCache)
+
+        Jetty9AsyncRequestLog loadedLog = ForkedServer.loadSettings(settings, ForkedServer.ASYNC_REQUEST_LOG, new Jetty9AsyncRequestLog())
+        assertThat(loadedLog.file, equalTo(requestLog.file))
+        assertThat(loadedLog.append, equalTo(false))
+        assertThat(loadedLog.bufferSize, equalTo(512))
+        assertThat(loadedLog.overflow, equalTo('block'))
+        assertThat(loadedLog.format, equalTo('binary'))
+
+        Jetty9StaticCache loadedCache = ForkedServer.loadSettings(settings, ForkedServer.STATIC_CACHE, new Jetty9StaticCache())
+        assertThat(loadedCache.maxCacheSize, equalTo(1024L))
+        assertThat(loadedCache.direct, equalTo(true))
+        assertThat(loadedCache.maxCachedFiles, equalTo(staticCache.maxCachedFiles))
+    }
+
+    @Test
+    public void loadsNothingForSettingsThatWereNotStored() {
+        assertThat(ForkedServer.loadSettings(new Properties(), ForkedServer.ASYNC_REQUEST_LOG, new Jetty9AsyncRequestLog()), nullValue())
+    }
+}
@@ -0,0 +1,34 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.junit.Test
+
+import static org.hamcrest.Matchers.closeTo
+import static org.hamcrest.Matchers.equalTo
+import static org.junit.Assert.assertThat
+
+class LatencyHistogramTest {
+    @Test
+    public void reportsPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram()
+        (1..100000).each { histogram.record(it * 1000L) }
+
+        assertThat(histogram.count, equalTo(100000L))
+        assertThat(histogram.min, equalTo(1000L))
+        assertThat(histogram.max, equalTo(100000000L))
+        assertThat(histogram.getPercentile(50) as double, closeTo(50000000d, 50000000d * 0.035d))
+        assertThat(histogram.getPercentile(99) as double, closeTo(99000000d, 99000000d * 0.035d))
+        assertThat(histogram.getPercentile(99.9) as double, closeTo(99900000d, 99900000d * 0.035d))
+        assertThat(histogram.getPercentile(100), equalTo(100000000L))
+    }
+
+    @Test
+    public void bucketsCoverEveryValueWithoutGaps() {
+        long previous = -1
+        for (int index = 0; index < 36 * 32; index++) {
+            long highest = LatencyHistogram.highestValueOf(index)
+            assertThat(LatencyHistogram.indexOf(previous + 1), equalTo(index))
+            assertThat(LatencyHistogram.indexOf(highest), equalTo(index))
+            previous = highest
+        }
+    }
+}
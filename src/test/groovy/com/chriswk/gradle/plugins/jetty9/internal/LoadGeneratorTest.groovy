@@ -0,0 +1,25 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.junit.Test
+
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.greaterThan
+import static org.hamcrest.Matchers.lessThan
+import static org.junit.Assert.assertThat
+
+class LoadGeneratorTest {
+    @Test
+    public void countsFailedConnectsAndBacksOff() {
+        ServerSocket socket = new ServerSocket(0)
+        int port = socket.localPort
+        socket.close()
+
+        LoadGenerator.Result result = new LoadGenerator('127.0.0.1', port, ['/'], 2).run(0, 500)
+
+        assertThat(result.overall.count, equalTo(0L))
+        assertThat(result.errors, equalTo(0L))
+        // 10, 20, 40, 80, 160 ms apart, so a handful of attempts per connection
+        assertThat(result.connectErrors, greaterThan(1L))
+        assertThat(result.connectErrors, lessThan(20L))
+    }
+}
@@ -0,0 +1,66 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.eclipse.jetty.util.resource.Resource
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.hamcrest.Matchers.equalTo
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertThat
+
+class PrecompressedResourcesTest {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+
+    private File sources
+    private File precompressed
+    private File asset
+
+    @Before
+    public void setUp() {
+        sources = tmpDir.newFolder('sources')
+        precompressed = tmpDir.newFolder('precompressed')
+        asset = new File(sources, 'app.js')
+        asset.text = 'app v1'
+        new File(precompressed, 'app.js.gz').text = 'compressed'
+    }
+
+    @Test
+    public void servesCopyRecordedForTheCurrentAsset() {
+        index(true)
+
+        assertThat(resources().addPath('/app.js.gz').file, equalTo(new File(precompressed, 'app.js.gz').canonicalFile))
+    }
+
+    @Test
+    public void ignoresCopyWhenTheAssetChangedWithItsTimestamp() {
+        index(true)
+        long lastModified = asset.lastModified()
+        asset.text = 'app v2'
+        asset.setLastModified(lastModified)
+
+        assertFalse(resources().addPath('/app.js.gz').exists())
+    }
+
+    @Test
+    public void ignoresCopyOfIncompressibleAssetAndTheIndex() {
+        index(false)
+        PrecompressedResources resources = resources()
+
+        assertFalse(resources.addPath('/app.js.gz').exists())
+        assertFalse(resources.addPath('/' + PrecompressIndex.FILE_NAME).exists())
+    }
+
+    private void index(boolean compressed) {
+        PrecompressIndex index = PrecompressIndex.load(precompressed)
+        index.put('app.js', asset.length(), ClasspathSnapshot.hash(asset), compressed)
+        index.save()
+    }
+
+    private PrecompressedResources resources() {
+        new PrecompressedResources(Resource.newResource(sources.canonicalFile),
+                Resource.newResource(precompressed.canonicalFile))
+    }
+}
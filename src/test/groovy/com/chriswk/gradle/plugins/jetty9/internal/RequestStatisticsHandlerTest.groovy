@@ -0,0 +1,86 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.eclipse.jetty.server.Request
+import org.eclipse.jetty.server.Server
+import org.eclipse.jetty.server.ServerConnector
+import org.eclipse.jetty.server.handler.AbstractHandler
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.equalTo
+import static org.junit.Assert.assertThat
+
+class RequestStatisticsHandlerTest {
+    private final Server server = new Server(0)
+    private final RequestStatisticsHandler statistics = new RequestStatisticsHandler()
+    private volatile String statisticsDuringRequest
+
+    @Before
+    public void startServer() {
+        statistics.handler = new AbstractHandler() {
+            void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) {
+                if (target == '/fail') {
+                    throw new IllegalStateException('failed on purpose')
+                }
+                RequestStatisticsHandler.servletEntered(baseRequest)
+                statisticsDuringRequest = statistics.toJson()
+                baseRequest.handled = true
+                response.writer.print('ok')
+            }
+        }
+        server.handler = statistics
+        server.start()
+    }
+
+    @After
+    public void stopServer() {
+        server.stop()
+    }
+
+    @Test
+    public void countsTheRequestAsActiveForItsContextAndServletWhileItIsHandled() {
+        assertThat(get('/active'), equalTo(200))
+
+        assertThat(statisticsDuringRequest, containsString('"contextPath": "(unmapped)", "requests": 0, "active": 1'))
+        assertThat(statisticsDuringRequest, containsString('"servlet": "(unmapped)", "requests": 0, "active": 1'))
+        assertThat(statistics.total.requests, equalTo(1L))
+        assertThat(statistics.total.active, equalTo(0L))
+        assertThat(statistics.toJson(), containsString('"contextPath": "(unmapped)", "requests": 1, "active": 0'))
+    }
+
+    @Test
+    public void countsARequestWhoseHandlingThrowsAsServerError() {
+        assertThat(get('/fail'), equalTo(500))
+        assertThat(get('/active'), equalTo(200))
+
+        assertThat(statistics.total.requests, equalTo(2L))
+        assertThat(statistics.total.active, equalTo(0L))
+        assertThat(statistics.toJson(), containsString('"status": {"1xx": 0, "2xx": 1, "3xx": 0, "4xx": 0, "5xx": 1, "other": 0}'))
+    }
+
+    @Test
+    public void recordsLatenciesFromManyThreads() {
+        ConcurrentLatencyHistogram histogram = new ConcurrentLatencyHistogram()
+        List<Thread> threads = (1..8).collect { int i ->
+            Thread.start {
+                1000.times { histogram.record(1000L * i) }
+            }
+        }
+        threads*.join()
+
+        LatencyHistogram snapshot = histogram.snapshot()
+        assertThat(snapshot.count, equalTo(8000L))
+        assertThat(snapshot.getPercentile(50), equalTo(LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(4000))))
+    }
+
+    private int get(String path) {
+        int port = ((ServerConnector) server.connectors[0]).localPort
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:${port}${path}").openConnection()
+        connection.responseCode
+    }
+}
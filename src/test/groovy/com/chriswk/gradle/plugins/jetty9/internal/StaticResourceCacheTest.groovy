@@ -0,0 +1,68 @@
+package com.chriswk.gradle.plugins.jetty9.internal
+
+import org.eclipse.jetty.server.handler.ContextHandler
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.nullValue
+import static org.hamcrest.Matchers.sameInstance
+import static org.junit.Assert.assertThat
+
+class StaticResourceCacheTest {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+
+    private ContextHandler context
+
+    @Before
+    public void setUp() {
+        File webAppDir = tmpDir.newFolder('webapp')
+        ['a.txt', 'b.txt', 'c.txt'].each { new File(webAppDir, it).text = 'x' * 10 }
+        new File(webAppDir, 'large.txt').text = 'x' * 100
+        context = new ContextHandler()
+        context.resourceBase = webAppDir.canonicalPath
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() {
+        StaticResourceCache cache = new StaticResourceCache(context, 1024, 1024, 2, 64, false, true)
+        def a = cache.lookup('/a.txt')
+        cache.lookup('/b.txt')
+        assertThat(cache.lookup('/a.txt'), sameInstance(a))
+
+        cache.lookup('/c.txt')
+
+        assertThat(cache.cachedFiles, equalTo(2))
+        assertThat(cache.evictions, equalTo(1L))
+        assertThat(cache.lookup('/a.txt'), sameInstance(a))
+        assertThat(cache.hits, equalTo(2L))
+    }
+
+    @Test
+    public void countsMappedFilesAgainstTheirOwnLimit() {
+        StaticResourceCache cache = new StaticResourceCache(context, 1024, 150, 16, 64, false, true)
+        cache.lookup('/large.txt')
+        assertThat(cache.mappedSize, equalTo(100L))
+        assertThat(cache.cachedSize, equalTo(0))
+
+        // a second mapped file would exceed the limit, so the first one is evicted
+        File other = new File(context.baseResource.file, 'other.txt')
+        other.text = 'y' * 100
+        cache.lookup('/other.txt')
+
+        assertThat(cache.mappedSize, equalTo(100L))
+        assertThat(cache.cachedFiles, equalTo(1))
+        assertThat(cache.evictions, equalTo(1L))
+    }
+
+    @Test
+    public void servesFilesLargerThanTheMappedLimitFromDisk() {
+        StaticResourceCache cache = new StaticResourceCache(context, 1024, 50, 16, 64, false, true)
+
+        assertThat(cache.lookup('/large.txt').indirectBuffer, nullValue())
+        assertThat(cache.cachedFiles, equalTo(0))
+    }
+}